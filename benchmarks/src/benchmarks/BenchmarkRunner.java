@@ -0,0 +1,37 @@
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point for the benchmark jar. Runs every benchmark in this module (or
+ * whatever subset the usual JMH command line selects) with the GC profiler
+ * attached, so each run reports throughput, average latency and allocation
+ * rate side by side.
+ *
+ * Usage: java -jar target/benchmarks.jar [JMH options] [benchmark regex]
+ */
+public final class BenchmarkRunner
+{
+    public static void main(final String [] args) throws RunnerException,
+            CommandLineOptionException
+    {
+        final CommandLineOptions commandLine = new CommandLineOptions(args);
+        final OptionsBuilder builder = new OptionsBuilder();
+        if(commandLine.getIncludes().isEmpty())
+        {
+            builder.include("benchmarks\\..*Benchmark");
+        }
+        final Options options = builder.parent(commandLine).addProfiler(GCProfiler.class).build();
+        new Runner(options).run();
+    }
+
+    private BenchmarkRunner()
+    {
+    }
+}
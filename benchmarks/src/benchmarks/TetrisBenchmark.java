@@ -0,0 +1,81 @@
+package benchmarks;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import tetris.TetrisAction;
+import tetris.TetrisRules;
+import tetris.TetrisState;
+import core.Player;
+import core.Policy;
+import core.automators.LocalAutomator;
+import core.policies.RandomPolicy;
+
+/**
+ * Hot paths of TetrisRules, measured from the opening position.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TetrisBenchmark
+{
+    @Param({ "SHAPE_CELLS", "ROW_MASKS" })
+    public TetrisRules.BoardEngine engine;
+
+    private TetrisRules rules_;
+    private Map<Player, Policy<TetrisState, TetrisAction>> policies_;
+    private TetrisState state_;
+    private Player currentPlayer_;
+
+    @Setup
+    public void setup()
+    {
+        rules_ = new TetrisRules(engine);
+        policies_ = new HashMap<>();
+        policies_.put(new Player("Player 1"), new RandomPolicy<>());
+
+        state_ = rules_.generateInitialState(policies_.keySet());
+        currentPlayer_ = rules_.getCurrentPlayer(state_);
+    }
+
+    @Benchmark
+    public TetrisState transition()
+    {
+        return rules_.transition(state_, TetrisAction.WAIT);
+    }
+
+    @Benchmark
+    public Collection<TetrisAction> getAvailableActions()
+    {
+        return rules_.getAvailableActions(currentPlayer_, state_);
+    }
+
+    @Benchmark
+    public TetrisState copyState()
+    {
+        return rules_.copyState(state_);
+    }
+
+    @Benchmark
+    public TetrisState playGameToCompletion()
+    {
+        return new LocalAutomator<>(rules_, policies_).playGameToCompletion();
+    }
+}
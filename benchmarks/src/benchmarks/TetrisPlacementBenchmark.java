@@ -0,0 +1,73 @@
+package benchmarks;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import tetris.TetrisPlacement;
+import tetris.TetrisPlacementRules;
+import tetris.TetrisState;
+import core.Player;
+import core.Policy;
+import core.automators.LocalAutomator;
+import core.policies.RandomPolicy;
+
+/**
+ * Hot paths of TetrisPlacementRules, measured from the opening position.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TetrisPlacementBenchmark
+{
+    private TetrisPlacementRules rules_;
+    private Map<Player, Policy<TetrisState, TetrisPlacement>> policies_;
+    private TetrisState state_;
+    private Player currentPlayer_;
+    private TetrisPlacement placement_;
+
+    @Setup
+    public void setup()
+    {
+        rules_ = new TetrisPlacementRules();
+        policies_ = new HashMap<>();
+        policies_.put(new Player("Player 1"), new RandomPolicy<>());
+
+        state_ = rules_.generateInitialState(policies_.keySet());
+        currentPlayer_ = rules_.getCurrentPlayer(state_);
+        placement_ = rules_.getAvailableActions(currentPlayer_, state_).iterator().next();
+    }
+
+    @Benchmark
+    public TetrisState transition()
+    {
+        return rules_.transition(state_, placement_);
+    }
+
+    @Benchmark
+    public Collection<TetrisPlacement> getAvailableActions()
+    {
+        return rules_.getAvailableActions(currentPlayer_, state_);
+    }
+
+    @Benchmark
+    public TetrisState playGameToCompletion()
+    {
+        return new LocalAutomator<>(rules_, policies_).playGameToCompletion();
+    }
+}
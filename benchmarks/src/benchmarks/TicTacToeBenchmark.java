@@ -0,0 +1,81 @@
+package benchmarks;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import tictactoe.TicTacToeAction;
+import tictactoe.TicTacToeRules;
+import tictactoe.TicTacToeState;
+import utils.Vector2;
+import core.Player;
+import core.Policy;
+import core.automators.LocalAutomator;
+import core.policies.RandomPolicy;
+
+/**
+ * Hot paths of TicTacToeRules, measured from the opening position.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TicTacToeBenchmark
+{
+    private TicTacToeRules rules_;
+    private Map<Player, Policy<TicTacToeState, TicTacToeAction>> policies_;
+    private TicTacToeState state_;
+    private Player currentPlayer_;
+    private TicTacToeAction action_;
+
+    @Setup
+    public void setup()
+    {
+        rules_ = new TicTacToeRules();
+        policies_ = new HashMap<>();
+        policies_.put(new Player("Player 1"), new RandomPolicy<>());
+        policies_.put(new Player("Player 2"), new RandomPolicy<>());
+
+        state_ = rules_.generateInitialState(policies_.keySet());
+        currentPlayer_ = rules_.getCurrentPlayer(state_);
+        action_ = new TicTacToeAction(new Vector2(1, 1), state_.getMarkForPlayer(currentPlayer_));
+    }
+
+    @Benchmark
+    public TicTacToeState transition()
+    {
+        return rules_.transition(state_, action_);
+    }
+
+    @Benchmark
+    public Collection<TicTacToeAction> getAvailableActions()
+    {
+        return rules_.getAvailableActions(currentPlayer_, state_);
+    }
+
+    @Benchmark
+    public TicTacToeState copyState()
+    {
+        return rules_.copyState(state_);
+    }
+
+    @Benchmark
+    public TicTacToeState playGameToCompletion()
+    {
+        return new LocalAutomator<>(rules_, policies_).playGameToCompletion();
+    }
+}
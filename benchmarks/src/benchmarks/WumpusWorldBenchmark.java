@@ -0,0 +1,82 @@
+package benchmarks;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import wumpusworld.WumpusWorldAction;
+import wumpusworld.WumpusWorldRules;
+import wumpusworld.states.WumpusWorldState;
+import core.Player;
+import core.Policy;
+import core.automators.LocalAutomator;
+import core.policies.RandomPolicy;
+
+/**
+ * Hot paths of WumpusWorldRules on the default-sized dungeon, measured from
+ * the opening position. Full games include dungeon generation, as that is
+ * part of what it costs to start a game.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WumpusWorldBenchmark
+{
+    private WumpusWorldRules rules_;
+    private Map<Player, Policy<WumpusWorldState, WumpusWorldAction>> policies_;
+    private WumpusWorldState state_;
+    private Player currentPlayer_;
+    private WumpusWorldAction action_;
+
+    @Setup
+    public void setup()
+    {
+        rules_ = new WumpusWorldRules();
+        policies_ = new HashMap<>();
+        policies_.put(new Player("Dungeon Explorer"), new RandomPolicy<>());
+
+        state_ = rules_.generateInitialState(policies_.keySet());
+        currentPlayer_ = rules_.getCurrentPlayer(state_);
+        /* Turning in place never ends the game, so it is always a valid move */
+        action_ = new WumpusWorldAction(currentPlayer_, WumpusWorldAction.Action.TURN_LEFT);
+    }
+
+    @Benchmark
+    public WumpusWorldState transition()
+    {
+        return rules_.transition(state_, action_);
+    }
+
+    @Benchmark
+    public Collection<WumpusWorldAction> getAvailableActions()
+    {
+        return rules_.getAvailableActions(currentPlayer_, state_);
+    }
+
+    @Benchmark
+    public WumpusWorldState copyState()
+    {
+        return rules_.copyState(state_);
+    }
+
+    @Benchmark
+    public WumpusWorldState playGameToCompletion()
+    {
+        return new LocalAutomator<>(rules_, policies_).playGameToCompletion();
+    }
+}
@@ -4,25 +4,63 @@ import java.util.List;
 import java.util.Set;
 
 import utils.ClosedRange;
+import utils.RandomStream;
 import utils.Validate;
+import core.sinks.DiscardingEventSink;
 
 public abstract class Automator<S, A, R extends Rules<S, A>>
 {
     protected final R rules_;
     protected S currentState_;
+    /* Where the game's events are reported */
+    protected final GameEventSink events_;
 
     protected Automator(final R rules, final Set<Player> players)
+    {
+        this(rules, players, new RandomStream());
+    }
+
+    /**
+     * @param rules
+     *            Rules of the game to play
+     * @param players
+     *            Players taking part in the game
+     * @param random
+     *            Source of randomness for the game; the same seed always sets
+     *            up the same initial state
+     */
+    protected Automator(final R rules, final Set<Player> players, final RandomStream random)
+    {
+        this(rules, players, random, DiscardingEventSink.INSTANCE);
+    }
+
+    /**
+     * @param rules
+     *            Rules of the game to play
+     * @param players
+     *            Players taking part in the game
+     * @param random
+     *            Source of randomness for the game; the same seed always sets
+     *            up the same initial state
+     * @param events
+     *            Sink to report the game's events to
+     */
+    protected Automator(final R rules, final Set<Player> players, final RandomStream random,
+            final GameEventSink events)
     {
         Validate.notNull(rules, "Cannot create an Automator with a null Rule set");
         Validate.notEmpty(players, "Cannot create an Automator with a null/empty player collection");
         final ClosedRange<Integer> possiblePlayerCounts = rules.numberOfPlayers();
         Validate.isTrue(
                 possiblePlayerCounts.isValueWithin(players.size()),
-                String.format("Cannot create a game for %s, %d is not within %s", players,
-                        players.size(), possiblePlayerCounts));
+                () -> String.format("Cannot create a game for %s, %d is not within %s",
+                        players, players.size(), possiblePlayerCounts));
+        Validate.notNull(random, "Cannot create an Automator with a null RandomStream");
+        Validate.notNull(events, "Cannot create an Automator with a null GameEventSink");
         rules_ = rules;
+        events_ = events;
 
-        final S initialState = rules.generateInitialState(players);
+        final S initialState = rules.generateInitialState(players, random);
         currentState_ = initialState;
     }
 
@@ -32,8 +70,19 @@ public abstract class Automator<S, A, R extends Rules<S, A>>
 
     public abstract S playGameToCompletion();
 
+    /**
+     * @return Read-only view of the game's current state (see
+     *         Rules.readOnlyView(...)); costs nothing for most games, but must
+     *         not be modified
+     */
     public abstract S currentState();
 
+    /**
+     * @return Deep copy of the game's current state, for callers that want a
+     *         state of their own to modify
+     */
+    public abstract S currentStateSnapshot();
+
     public abstract S currentStateFilteredForPlayer(final Player player);
     
     public abstract List<A> getActionsTaken();
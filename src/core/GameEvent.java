@@ -0,0 +1,76 @@
+package core;
+
+import utils.Validate;
+
+/**
+ * Something that happened in a game, as reported to a GameEventSink. Automators
+ * report actions taken and game overs; Rules only report events particular to
+ * their game (eg cleared lines), so that giving both the same sink reports
+ * everything once. Events are immutable, so sinks may hold on to them or hand
+ * them to other threads.
+ */
+public final class GameEvent
+{
+    public enum Type
+    {
+        /* A player took an action; the detail is the action */
+        ACTION_TAKEN,
+        /* Lines were cleared from the board; the detail is how many */
+        LINES_CLEARED,
+        /* A new piece came into play; the detail is the piece */
+        PIECE_SPAWNED,
+        /* The game ended; the detail is the final Scores, if known */
+        TERMINAL
+    }
+
+    private final Type type_;
+    private final Player player_;
+    private final Object detail_;
+
+    /**
+     * @param type
+     *            What happened
+     * @param player
+     *            Player the event concerns, or null if none in particular
+     * @param detail
+     *            What the event concerns, as described for each Type; may be
+     *            null
+     */
+    public GameEvent(final Type type, final Player player, final Object detail)
+    {
+        Validate.notNull(type, "Cannot create a GameEvent without a type");
+        type_ = type;
+        player_ = player;
+        detail_ = detail;
+    }
+
+    public Type getType()
+    {
+        return type_;
+    }
+
+    public Player getPlayer()
+    {
+        return player_;
+    }
+
+    public Object getDetail()
+    {
+        return detail_;
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder builder = new StringBuilder(type_.toString());
+        if(player_ != null)
+        {
+            builder.append(' ').append(player_);
+        }
+        if(detail_ != null)
+        {
+            builder.append(": ").append(detail_);
+        }
+        return builder.toString();
+    }
+}
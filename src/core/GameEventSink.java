@@ -0,0 +1,30 @@
+package core;
+
+/**
+ * Receives the events of games as they are played, eg to log them. Rules and
+ * Automators that accept a sink report to it from whichever thread plays the
+ * game, so sinks shared between games must be thread-safe.
+ *
+ * Emitters should ask isListening() before building an event, so that games
+ * played without a listener pay nothing for the events they would have sent.
+ */
+public interface GameEventSink
+{
+    /**
+     * Receives an event. This is called on the game's thread, in the middle
+     * of play, so should return quickly.
+     *
+     * @param event
+     *            What happened
+     */
+    public void accept(final GameEvent event);
+
+    /**
+     * @return False if this sink discards every event, so there is no point
+     *         emitting any
+     */
+    public default boolean isListening()
+    {
+        return true;
+    }
+}
@@ -1,6 +1,5 @@
 package core;
 
-import java.util.Objects;
 import java.util.UUID;
 
 /**
@@ -60,7 +59,7 @@ public class Player implements Comparable<Player>
     @Override
     public int hashCode()
     {
-        return Objects.hash(id_);
+        return id_.hashCode();
     }
 
     @Override
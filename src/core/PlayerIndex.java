@@ -0,0 +1,312 @@
+package core;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import utils.Validate;
+
+/**
+ * Numbers the players of one game densely, from 0 to size() - 1, in the order
+ * they were given. States keep per-player data (scores, marks, player
+ * states) in arrays indexed by these numbers rather than in maps keyed by
+ * Player, so copying a state copies (or shares) a short array instead of
+ * rebuilding a HashMap.
+ *
+ * An index is created along with a game's initial state and shared by every
+ * state of that game. It is immutable.
+ */
+public final class PlayerIndex
+{
+    private final Player [] players_;
+
+    /**
+     * @param players
+     *            Players taking part in the game, numbered in iteration
+     *            order. Must not be empty, contain nulls or repeat players.
+     */
+    public PlayerIndex(final Collection<Player> players)
+    {
+        Validate.notEmpty(players, "Cannot index a null/empty collection of players");
+        players_ = players.toArray(new Player [players.size()]);
+        for(int index = 0; index < players_.length; ++index)
+        {
+            Validate.notNull(players_[index], "Cannot index a null player");
+            for(int other = 0; other < index; ++other)
+            {
+                final int player = index;
+                Validate.isFalse(players_[other].equals(players_[index]),
+                        () -> String.format("%s appears more than once", players_[player]));
+            }
+        }
+    }
+
+    /**
+     * @return Number of players
+     */
+    public int size()
+    {
+        return players_.length;
+    }
+
+    /**
+     * @param index
+     *            Number of a player, from 0 to size() - 1
+     * @return The player with that number
+     */
+    public Player get(final int index)
+    {
+        return players_[index];
+    }
+
+    /**
+     * Looks a player up. Games have only a handful of players, so this scans
+     * them (by identity first) rather than hashing.
+     *
+     * @param player
+     *            Player to look up
+     * @return Number of $player, or -1 if they do not take part in the game
+     */
+    public int indexOf(final Object player)
+    {
+        for(int index = 0; index < players_.length; ++index)
+        {
+            if(players_[index] == player)
+            {
+                return index;
+            }
+        }
+        if(!(player instanceof Player))
+        {
+            return -1;
+        }
+        for(int index = 0; index < players_.length; ++index)
+        {
+            if(players_[index].equals(player))
+            {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return Every player, in index order; read-only
+     */
+    public List<Player> players()
+    {
+        return Collections.unmodifiableList(Arrays.asList(players_));
+    }
+
+    /**
+     * Presents per-player values as a map, without copying them. Players
+     * whose value is null are left out.
+     *
+     * The view reads $values as they are whenever it is used, so states that
+     * hand views out should replace their arrays rather than write to them
+     * once shared (copy-on-write), which makes every view a snapshot.
+     *
+     * @param values
+     *            Value for every player, by index; size() long
+     * @return Read-only map view of $values
+     */
+    public <V> Map<Player, V> asMap(final V [] values)
+    {
+        Validate.isTrue(values.length == players_.length,
+                "Cannot map a value array that does not match the players");
+        return new ArrayMap<V>(players_, values);
+    }
+
+    /**
+     * Presents per-player scores as a map of Scores, without copying them.
+     * Scores are boxed when read; the same copy-on-write advice as for
+     * asMap(...) applies.
+     *
+     * @param scores
+     *            Score for every player, by index; size() long
+     * @return Read-only map view of $scores
+     */
+    public Map<Player, Score> asScores(final double [] scores)
+    {
+        Validate.isTrue(scores.length == players_.length,
+                "Cannot map a score array that does not match the players");
+        return new ScoreMap(players_, scores);
+    }
+
+    @Override
+    public String toString()
+    {
+        return Arrays.toString(players_);
+    }
+
+    /* Map view over an array of values, skipping nulls */
+    private static final class ArrayMap<V> extends AbstractMap<Player, V>
+    {
+        private final Player [] players_;
+        private final V [] values_;
+
+        ArrayMap(final Player [] players, final V [] values)
+        {
+            players_ = players;
+            values_ = values;
+        }
+
+        @Override
+        public V get(final Object key)
+        {
+            for(int index = 0; index < players_.length; ++index)
+            {
+                if(players_[index] == key || players_[index].equals(key))
+                {
+                    return values_[index];
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean containsKey(final Object key)
+        {
+            return get(key) != null;
+        }
+
+        @Override
+        public Set<Map.Entry<Player, V>> entrySet()
+        {
+            return new AbstractSet<Map.Entry<Player, V>>()
+            {
+                @Override
+                public Iterator<Map.Entry<Player, V>> iterator()
+                {
+                    return new Iterator<Map.Entry<Player, V>>()
+                    {
+                        private int next_ = skipNulls(0);
+
+                        @Override
+                        public boolean hasNext()
+                        {
+                            return next_ < players_.length;
+                        }
+
+                        @Override
+                        public Map.Entry<Player, V> next()
+                        {
+                            if(!hasNext())
+                            {
+                                throw new NoSuchElementException();
+                            }
+                            final int index = next_;
+                            next_ = skipNulls(index + 1);
+                            return new SimpleImmutableEntry<>(players_[index], values_[index]);
+                        }
+                    };
+                }
+
+                @Override
+                public int size()
+                {
+                    int size = 0;
+                    for(final V value : values_)
+                    {
+                        size += (value == null) ? 0 : 1;
+                    }
+                    return size;
+                }
+            };
+        }
+
+        private int skipNulls(int index)
+        {
+            while(index < values_.length && values_[index] == null)
+            {
+                ++index;
+            }
+            return index;
+        }
+    }
+
+    /* Map view over an array of scores, boxing them as they are read */
+    private static final class ScoreMap extends AbstractMap<Player, Score>
+    {
+        private final Player [] players_;
+        private final double [] scores_;
+
+        ScoreMap(final Player [] players, final double [] scores)
+        {
+            players_ = players;
+            scores_ = scores;
+        }
+
+        @Override
+        public Score get(final Object key)
+        {
+            for(int index = 0; index < players_.length; ++index)
+            {
+                if(players_[index] == key || players_[index].equals(key))
+                {
+                    return new Score(scores_[index]);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean containsKey(final Object key)
+        {
+            return get(key) != null;
+        }
+
+        @Override
+        public int size()
+        {
+            return players_.length;
+        }
+
+        @Override
+        public Set<Map.Entry<Player, Score>> entrySet()
+        {
+            return new AbstractSet<Map.Entry<Player, Score>>()
+            {
+                @Override
+                public Iterator<Map.Entry<Player, Score>> iterator()
+                {
+                    return new Iterator<Map.Entry<Player, Score>>()
+                    {
+                        private int next_ = 0;
+
+                        @Override
+                        public boolean hasNext()
+                        {
+                            return next_ < players_.length;
+                        }
+
+                        @Override
+                        public Map.Entry<Player, Score> next()
+                        {
+                            if(!hasNext())
+                            {
+                                throw new NoSuchElementException();
+                            }
+                            final int index = next_++;
+                            return new SimpleImmutableEntry<>(players_[index], new Score(
+                                    scores_[index]));
+                        }
+                    };
+                }
+
+                @Override
+                public int size()
+                {
+                    return players_.length;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package core;
+
+/**
+ * Optional extension of Rules for games that can apply actions to a state in
+ * place and take them back again, which is much cheaper than copying the
+ * state for every action when searching through many of them (eg in tree
+ * search policies).
+ *
+ * Rules.transition remains the safe way of moving a game on; automators
+ * should keep using it, since it never touches the states it is given.
+ *
+ * @param <S>
+ *            State type of the Rules
+ * @param <A>
+ *            Action type of the Rules
+ * @param <U>
+ *            Undo token type: whatever the Rules need to take an action back
+ */
+public interface ReversibleRules<S, A, U> extends Rules<S, A>
+{
+    /**
+     * Applies an action to a state in place. The resulting state is the same
+     * as transition($state, $action) would have returned.
+     *
+     * @param state
+     *            State to modify
+     * @param action
+     *            Action to apply
+     * @return Token that undo(...) needs to take the action back
+     */
+    public U apply(final S state, final A action);
+
+    /**
+     * Takes back an action applied by apply(...), restoring the state to what
+     * it was before. Actions must be undone in the reverse order to which they
+     * were applied, each exactly once.
+     *
+     * @param state
+     *            State that the action was applied to
+     * @param undo
+     *            Token returned when the action was applied
+     */
+    public void undo(final S state, final U undo);
+}
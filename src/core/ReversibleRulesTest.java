@@ -0,0 +1,98 @@
+package core;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Function;
+
+import utils.Validate;
+
+/**
+ * Checks that a game's ReversibleRules step states in place exactly as
+ * transition(...) steps copies of them, and that undoing the steps puts every
+ * state back. Shared by the games' own tests, which know how to describe
+ * their states.
+ */
+public final class ReversibleRulesTest
+{
+    private ReversibleRulesTest()
+    {
+    }
+
+    /**
+     * Plays a game with a policy, applying every action in place and checking
+     * the result against transition(...), then undoes every action in turn,
+     * checking each state on the way back.
+     *
+     * @param rules
+     *            Rules of the game
+     * @param state
+     *            State to play from; put back as it was once the check passes
+     * @param policy
+     *            Policy choosing every player's actions
+     * @param describe
+     *            Describes everything about a state that a step may change;
+     *            states are the same when their descriptions are
+     * @param maxActions
+     *            Number of actions to stop after, if the game has not ended
+     * @return Number of actions applied and undone
+     * @throws IllegalArgumentException
+     *             describing the first step that did not match
+     */
+    public static <S, A, U> int playAndUndo(final ReversibleRules<S, A, U> rules, final S state,
+            final Policy<S, A> policy, final Function<S, String> describe, final int maxActions)
+    {
+        final Deque<U> undos = new ArrayDeque<U>();
+        final Deque<String> descriptions = new ArrayDeque<String>();
+        final Deque<Long> hashes = new ArrayDeque<Long>();
+
+        while(!rules.isTerminal(state) && undos.size() < maxActions)
+        {
+            final int step = undos.size();
+            final Player player = rules.getCurrentPlayer(state);
+            final A action = policy.chooseAction(state, rules.getAvailableActions(player, state));
+            final String description = describe.apply(state);
+
+            final S expected = rules.transition(state, action);
+            Validate.isTrue(describe.apply(state).equals(description),
+                    () -> String.format("transition(...) changed its state at step %d", step));
+
+            descriptions.push(description);
+            hashes.push(hashOf(rules, state));
+            undos.push(rules.apply(state, action));
+
+            Validate.isTrue(describe.apply(state).equals(describe.apply(expected)), () -> String
+                    .format("apply(...) disagrees with transition(...) at step %d, %s:%n%s%n%s",
+                            step, action, describe.apply(state), describe.apply(expected)));
+            Validate.isTrue(hashOf(rules, state) == hashOf(rules, expected),
+                    () -> String.format("apply(...) hashes differently at step %d", step));
+            Validate.isTrue(rules.isTerminal(state) == rules.isTerminal(expected),
+                    () -> String.format("apply(...) ends the game differently at step %d", step));
+            Validate.isTrue(rules.scores(state).equals(rules.scores(expected)),
+                    () -> String.format("apply(...) scores differently at step %d", step));
+        }
+
+        final int actions = undos.size();
+        while(!undos.isEmpty())
+        {
+            rules.undo(state, undos.pop());
+            final int step = undos.size();
+            Validate.isTrue(describe.apply(state).equals(descriptions.pop()),
+                    () -> String.format("undo(...) did not restore the state before step %d", step));
+            Validate.isTrue(hashOf(rules, state) == hashes.pop(),
+                    () -> String.format("undo(...) did not restore the hash before step %d", step));
+        }
+        return actions;
+    }
+
+    /* Rules that do not hash states hash them all alike */
+    private static <S> long hashOf(final Rules<S, ?> rules, final S state)
+    {
+        if(rules instanceof StateHashing)
+        {
+            @SuppressWarnings("unchecked")
+            final StateHashing<S> hashing = (StateHashing<S>) rules;
+            return hashing.stateHash(state);
+        }
+        return 0L;
+    }
+}
@@ -5,6 +5,7 @@ import java.util.Map;
 import java.util.Set;
 
 import utils.ClosedRange;
+import utils.RandomStream;
 
 /**
  * Rules holds the transition model and other game-specific logic for
@@ -30,6 +31,28 @@ public interface Rules<S, A>
      */
     public S copyState(final S state);
 
+    /**
+     * Provides a read-only view of a state, for callers that only look at it
+     * (eg an Automator reporting the state of its game after every action).
+     * Unlike copyState(...), the view may share anything with $state, or be
+     * $state itself: callers must not modify it, and should ask for a copy if
+     * they want a state of their own. Since transition(...) never modifies
+     * the states it is given, a view of a state that is only ever
+     * transitioned stays valid.
+     *
+     * By default this is a copy, which is always safe; Rules whose states are
+     * never modified in place by their transitions should return the state
+     * itself, so that views cost nothing.
+     *
+     * @param state
+     *            State to view
+     * @return A state equal to $state, that must not be modified
+     */
+    public default S readOnlyView(final S state)
+    {
+        return copyState(state);
+    }
+
     /**
      * Filter a state's information to tailor it to a particular Player's view.
      * This is particularly
@@ -49,6 +72,26 @@ public interface Rules<S, A>
      */
     public S generateInitialState(final Set<Player> players);
 
+    /**
+     * Create the initial state for this game, drawing any random choices (eg
+     * the layout of a level) from the provided stream, so that the same seed
+     * always produces the same initial state.
+     *
+     * Games with random setup should override this; by default, the stream is
+     * ignored.
+     *
+     * @param players
+     *            Collection of players playing this game
+     * @param random
+     *            Source of randomness for the game's setup and, if the game
+     *            keeps one in its state, for the rest of the game
+     * @return State created under initial conditions.
+     */
+    public default S generateInitialState(final Set<Player> players, final RandomStream random)
+    {
+        return generateInitialState(players);
+    }
+
     /**
      * Calculate all the valid actions for a particular player at a particular
      * game
@@ -0,0 +1,112 @@
+package core;
+
+import utils.Validate;
+
+/**
+ * Running summary of the Scores a single Player earned over many games: games
+ * played, games won, mean and variance. Scores are folded in one at a time
+ * (Welford's method), so no individual game results are retained.
+ *
+ * Note: Not thread-safe. Accumulate per thread and combine() the results.
+ */
+public final class ScoreStatistics
+{
+    private long gamesPlayed_;
+    private long wins_;
+    private double mean_;
+    /* Sum of squared differences from the current mean */
+    private double squaredDeviations_;
+
+    public ScoreStatistics()
+    {
+    }
+
+    public ScoreStatistics(final ScoreStatistics copy)
+    {
+        Validate.notNull(copy, "Cannot create a copy of null ScoreStatistics");
+        gamesPlayed_ = copy.gamesPlayed_;
+        wins_ = copy.wins_;
+        mean_ = copy.mean_;
+        squaredDeviations_ = copy.squaredDeviations_;
+    }
+
+    /**
+     * Folds the result of a single game into these statistics
+     *
+     * @param score
+     *            Score the player finished the game with
+     * @param won
+     *            Whether or not the player won the game
+     */
+    public void add(final Score score, final boolean won)
+    {
+        Validate.notNull(score, "Cannot add a null Score to ScoreStatistics");
+        final double value = score.getValue();
+        ++gamesPlayed_;
+        if(won)
+        {
+            ++wins_;
+        }
+        final double delta = value - mean_;
+        mean_ += delta / gamesPlayed_;
+        squaredDeviations_ += delta * (value - mean_);
+    }
+
+    /**
+     * Merges another set of statistics (typically gathered on another thread)
+     * into this one.
+     *
+     * @param other
+     *            Statistics to merge in. Not modified.
+     */
+    public void combine(final ScoreStatistics other)
+    {
+        Validate.notNull(other, "Cannot combine with null ScoreStatistics");
+        if(other.gamesPlayed_ == 0)
+        {
+            return;
+        }
+        final long totalGames = gamesPlayed_ + other.gamesPlayed_;
+        final double delta = other.mean_ - mean_;
+        squaredDeviations_ += other.squaredDeviations_ + delta * delta * gamesPlayed_
+                * other.gamesPlayed_ / totalGames;
+        mean_ += delta * other.gamesPlayed_ / totalGames;
+        gamesPlayed_ = totalGames;
+        wins_ += other.wins_;
+    }
+
+    public long getGamesPlayed()
+    {
+        return gamesPlayed_;
+    }
+
+    public long getWins()
+    {
+        return wins_;
+    }
+
+    public double getMean()
+    {
+        return mean_;
+    }
+
+    /**
+     * @return Sample variance of the scores, or 0 if fewer than two games have
+     *         been played
+     */
+    public double getVariance()
+    {
+        if(gamesPlayed_ < 2)
+        {
+            return 0;
+        }
+        return squaredDeviations_ / (gamesPlayed_ - 1);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%d games, %d wins, mean %.4f, variance %.4f", gamesPlayed_, wins_,
+                getMean(), getVariance());
+    }
+}
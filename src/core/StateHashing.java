@@ -0,0 +1,23 @@
+package core;
+
+/**
+ * Optional capability of Rules that can hash their states cheaply, eg for
+ * transposition tables in search policies, caches or duplicate detection.
+ *
+ * @param <S>
+ *            State type of the Rules
+ */
+public interface StateHashing<S>
+{
+    /**
+     * Returns a 64-bit hash of a state. States that play out the same must
+     * hash the same; different states should collide with probability close
+     * to 2^-64. Hashes are maintained incrementally as states are transitioned,
+     * so this should be a constant-time lookup.
+     *
+     * @param state
+     *            State to hash
+     * @return The state's hash
+     */
+    public long stateHash(final S state);
+}
@@ -0,0 +1,310 @@
+package core.automators;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import utils.RandomStream;
+import utils.Validate;
+import utils.ValidationLevel;
+import core.Player;
+import core.Policy;
+import core.Rules;
+import core.Score;
+import core.ScoreStatistics;
+
+/**
+ * Plays many independent games in parallel, each one on a LocalAutomator, and
+ * reports aggregated Score statistics per Player. Final states are discarded
+ * as soon as they have been scored, so memory use does not grow with the
+ * number of games played.
+ *
+ * Every game is given freshly created Rules and Policies from the provided
+ * factories, so neither has to be thread-safe. For results to aggregate, the
+ * policy factory should key its maps by the same Player instances every time.
+ *
+ * Every game draws its randomness from its own stream, forked by game number
+ * from a single seed, so a seeded batch plays the same games however they
+ * are spread over threads. Policies that should be reproducible too can be
+ * built from each game's stream with the seeded constructor's policy factory.
+ *
+ * A Player is considered to have won a game when their final Score is
+ * strictly greater than every other player's. In single-player games, any
+ * positive final Score counts as a win.
+ *
+ * Games are played at ValidationLevel.FULL unless another level is given.
+ * Policies that only ever choose from getAvailableActions(...) can be trusted
+ * with BOUNDARY, which spares the Rules checking every move against the legal
+ * ones again.
+ *
+ * Note: playGames(...) should not be called concurrently on the same instance.
+ *
+ * @param <S>
+ *            State type that the Game supports
+ * @param <A>
+ *            Action type that the Game supports
+ * @param <R>
+ *            Rules for the provided State and Actions type
+ */
+public final class BatchAutomator<S, A, R extends Rules<S, A>>
+{
+    /*
+     * Split work into a few more chunks than there are threads, so a thread
+     * that draws a run of short games doesn't sit idle at the end
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final Supplier<R> rulesFactory_;
+    private final Function<RandomStream, Map<Player, Policy<S, A>>> policyFactory_;
+    private final ExecutorService executor_;
+    private final int parallelism_;
+    /* Every game's stream is forked from this one, by game number */
+    private final RandomStream random_;
+    private final long seed_;
+    /* Validation level that games are played at, on whichever thread */
+    private final ValidationLevel validation_;
+    /* Number of games handed out so far; also the number of the next game */
+    private long gamesPlayed_ = 0;
+
+    /**
+     * Creates a BatchAutomator that plays games on the common ForkJoinPool
+     *
+     * @param rulesFactory
+     *            Creates the Rules for each game
+     * @param policyFactory
+     *            Creates the player to Policy mapping for each game
+     */
+    public BatchAutomator(final Supplier<R> rulesFactory,
+            final Supplier<Map<Player, Policy<S, A>>> policyFactory)
+    {
+        this(rulesFactory, policyFactory, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a BatchAutomator that plays games on the provided executor. The
+     * executor is not shut down by this class.
+     *
+     * @param rulesFactory
+     *            Creates the Rules for each game
+     * @param policyFactory
+     *            Creates the player to Policy mapping for each game
+     * @param executor
+     *            Executor (typically a ForkJoinPool) to play games on
+     */
+    public BatchAutomator(final Supplier<R> rulesFactory,
+            final Supplier<Map<Player, Policy<S, A>>> policyFactory,
+            final ExecutorService executor)
+    {
+        this(rulesFactory, wrapPolicyFactory(policyFactory), executor, ThreadLocalRandom
+                .current().nextLong());
+    }
+
+    /**
+     * Creates a BatchAutomator whose games are all reproducible from a single
+     * seed. The executor is not shut down by this class.
+     *
+     * @param rulesFactory
+     *            Creates the Rules for each game
+     * @param policyFactory
+     *            Creates the player to Policy mapping for each game, given a
+     *            stream (forked for that game) to seed random Policies from
+     * @param executor
+     *            Executor (typically a ForkJoinPool) to play games on
+     * @param seed
+     *            Seed that every game's randomness is derived from
+     */
+    public BatchAutomator(final Supplier<R> rulesFactory,
+            final Function<RandomStream, Map<Player, Policy<S, A>>> policyFactory,
+            final ExecutorService executor, final long seed)
+    {
+        this(rulesFactory, policyFactory, executor, seed, ValidationLevel.FULL);
+    }
+
+    /**
+     * Creates a BatchAutomator whose games are all reproducible from a single
+     * seed, and are played at the given validation level. The executor is not
+     * shut down by this class.
+     *
+     * @param rulesFactory
+     *            Creates the Rules for each game
+     * @param policyFactory
+     *            Creates the player to Policy mapping for each game, given a
+     *            stream (forked for that game) to seed random Policies from
+     * @param executor
+     *            Executor (typically a ForkJoinPool) to play games on
+     * @param seed
+     *            Seed that every game's randomness is derived from
+     * @param validation
+     *            How thoroughly the Rules check every move
+     */
+    public BatchAutomator(final Supplier<R> rulesFactory,
+            final Function<RandomStream, Map<Player, Policy<S, A>>> policyFactory,
+            final ExecutorService executor, final long seed, final ValidationLevel validation)
+    {
+        Validate.notNull(rulesFactory, "Cannot create a BatchAutomator with a null Rules factory");
+        Validate.notNull(policyFactory,
+                "Cannot create a BatchAutomator with a null Policy factory");
+        Validate.notNull(executor, "Cannot create a BatchAutomator with a null executor");
+        Validate.notNull(validation,
+                "Cannot create a BatchAutomator with a null validation level");
+        rulesFactory_ = rulesFactory;
+        policyFactory_ = policyFactory;
+        executor_ = executor;
+        seed_ = seed;
+        validation_ = validation;
+        random_ = new RandomStream(seed);
+        parallelism_ = (executor instanceof ForkJoinPool) ? ((ForkJoinPool) executor)
+                .getParallelism() : Runtime.getRuntime().availableProcessors();
+    }
+
+    private static <S, A> Function<RandomStream, Map<Player, Policy<S, A>>> wrapPolicyFactory(
+            final Supplier<Map<Player, Policy<S, A>>> policyFactory)
+    {
+        Validate.notNull(policyFactory,
+                "Cannot create a BatchAutomator with a null Policy factory");
+        return random -> policyFactory.get();
+    }
+
+    /**
+     * @return Seed that every game's randomness is derived from
+     */
+    public long getSeed()
+    {
+        return seed_;
+    }
+
+    /**
+     * Plays the requested number of games to completion, blocking until all of
+     * them have finished.
+     *
+     * Game numbers carry on from previous calls, so calling this twice plays
+     * different games than calling it once with the combined count would
+     * not; both are reproducible from the seed.
+     *
+     * @param gameCount
+     *            Number of games to play. Must be positive.
+     * @return Score statistics for every Player that took part in at least one
+     *         game
+     */
+    public Map<Player, ScoreStatistics> playGames(final int gameCount)
+    {
+        Validate.isTrue(gameCount > 0, "Cannot play a non-positive number of games");
+
+        final int chunkCount = Math.min(gameCount, parallelism_ * CHUNKS_PER_THREAD);
+        final List<Future<Map<Player, ScoreStatistics>>> chunks = new ArrayList<>(chunkCount);
+        for(int chunk = 0; chunk < chunkCount; ++chunk)
+        {
+            /* Spread the remainder over the first few chunks */
+            final int gamesInChunk = gameCount / chunkCount
+                    + ((chunk < gameCount % chunkCount) ? 1 : 0);
+            chunks.add(executor_.submit(playChunk(gamesPlayed_, gamesInChunk)));
+            gamesPlayed_ += gamesInChunk;
+        }
+
+        final Map<Player, ScoreStatistics> statistics = new HashMap<>();
+        for(final Future<Map<Player, ScoreStatistics>> chunk : chunks)
+        {
+            awaitChunk(chunk).forEach(
+                    (player, chunkStatistics) -> statistics.computeIfAbsent(player,
+                            key -> new ScoreStatistics()).combine(chunkStatistics));
+        }
+        return statistics;
+    }
+
+    private Callable<Map<Player, ScoreStatistics>> playChunk(final long firstGame,
+            final int gamesInChunk)
+    {
+        return () ->
+        {
+            final Map<Player, ScoreStatistics> statistics = new HashMap<>();
+            /* Pool threads run other work too, so put their level back after */
+            final ValidationLevel previousValidation = Validate.setLevel(validation_);
+            try
+            {
+                playGamesInChunk(firstGame, gamesInChunk, statistics);
+            }
+            finally
+            {
+                Validate.setLevel(previousValidation);
+            }
+            return statistics;
+        };
+    }
+
+    private void playGamesInChunk(final long firstGame, final int gamesInChunk,
+            final Map<Player, ScoreStatistics> statistics)
+    {
+        for(int game = 0; game < gamesInChunk; ++game)
+        {
+            /* Forking doesn't touch the parent stream, so needs no locking */
+            final RandomStream gameRandom = random_.fork(firstGame + game);
+            final R rules = rulesFactory_.get();
+            final Map<Player, Policy<S, A>> policies = policyFactory_.apply(gameRandom
+                    .split());
+            final S finalState = new LocalAutomator<>(rules, policies, gameRandom)
+                    .playGameToCompletion();
+            /*
+             * Ask for every participant's score individually; some games
+             * leave players who never scored out of Rules.scores()
+             */
+            final Map<Player, Score> scores = new HashMap<>(policies.size());
+            policies.keySet().forEach(
+                    player -> scores.put(player, rules.score(finalState, player)));
+            recordGame(statistics, scores);
+        }
+    }
+
+    private static void recordGame(final Map<Player, ScoreStatistics> statistics,
+            final Map<Player, Score> scores)
+    {
+        for(final Entry<Player, Score> playerScore : scores.entrySet())
+        {
+            final Player player = playerScore.getKey();
+            final Score score = playerScore.getValue();
+            statistics.computeIfAbsent(player, key -> new ScoreStatistics()).add(score,
+                    isWinner(player, score, scores));
+        }
+    }
+
+    private static boolean isWinner(final Player player, final Score score,
+            final Map<Player, Score> scores)
+    {
+        if(scores.size() == 1)
+        {
+            return score.compareTo(new Score()) > 0;
+        }
+        return scores.entrySet().stream().filter(entry -> !entry.getKey().equals(player))
+                .allMatch(entry -> score.compareTo(entry.getValue()) > 0);
+    }
+
+    private static <T> T awaitChunk(final Future<T> chunk)
+    {
+        try
+        {
+            return chunk.get();
+        }
+        catch(final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for games to finish", e);
+        }
+        catch(final ExecutionException e)
+        {
+            if(e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("A game failed to complete", e.getCause());
+        }
+    }
+}
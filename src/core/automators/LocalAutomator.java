@@ -7,11 +7,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
+import utils.RandomStream;
 import utils.Validate;
 import core.Automator;
+import core.GameEvent;
+import core.GameEventSink;
 import core.Player;
 import core.Policy;
 import core.Rules;
+import core.sinks.DiscardingEventSink;
 
 /**
  * In-memory Automator for playing out games. This should typically be used for
@@ -32,7 +36,44 @@ public final class LocalAutomator<S, A, R extends Rules<S, A>> extends Automator
 
     public LocalAutomator(final R rules, final Map<Player, Policy<S, A>> playerPolicies)
     {
-        super(rules, playerPolicies.keySet());
+        this(rules, playerPolicies, new RandomStream());
+    }
+
+    /**
+     * Creates a LocalAutomator whose game is set up from the provided stream,
+     * so that it can be replayed. For a fully reproducible game, any random
+     * Policies should be seeded too.
+     *
+     * @param rules
+     *            Rules of the game to play
+     * @param playerPolicies
+     *            Policy for each player taking part
+     * @param random
+     *            Source of randomness for the game
+     */
+    public LocalAutomator(final R rules, final Map<Player, Policy<S, A>> playerPolicies,
+            final RandomStream random)
+    {
+        this(rules, playerPolicies, random, DiscardingEventSink.INSTANCE);
+    }
+
+    /**
+     * Creates a LocalAutomator that reports every action taken, and the end of
+     * the game, to a sink.
+     *
+     * @param rules
+     *            Rules of the game to play
+     * @param playerPolicies
+     *            Policy for each player taking part
+     * @param random
+     *            Source of randomness for the game
+     * @param events
+     *            Sink to report the game's events to
+     */
+    public LocalAutomator(final R rules, final Map<Player, Policy<S, A>> playerPolicies,
+            final RandomStream random, final GameEventSink events)
+    {
+        super(rules, playerPolicies.keySet(), random, events);
         playerPolicies_ = new HashMap<Player, Policy<S, A>>(playerPolicies);
         actionsTaken_ = new ArrayList<A>();
     }
@@ -40,7 +81,7 @@ public final class LocalAutomator<S, A, R extends Rules<S, A>> extends Automator
     @Override
     public S advanceUntilPlayerTurn(final Player player)
     {
-        Validate.isTrue(playerPolicies_.containsKey(player), String.format(
+        Validate.isTrue(playerPolicies_.containsKey(player), () -> String.format(
                 "Cannot advance a game for %s as it is not a known player (%s)", player,
                 playerPolicies_.keySet()));
         final Player currentPlayer = rules_.getCurrentPlayer(currentState_);
@@ -64,6 +105,16 @@ public final class LocalAutomator<S, A, R extends Rules<S, A>> extends Automator
         final A chosenAction = policy.chooseAction(filteredState, availableActions);
         actionsTaken_.add(chosenAction);
         currentState_ = rules_.transition(currentState_, chosenAction);
+        if(events_.isListening())
+        {
+            events_.accept(new GameEvent(GameEvent.Type.ACTION_TAKEN, currentPlayer,
+                    chosenAction));
+            if(rules_.isTerminal(currentState_))
+            {
+                events_.accept(new GameEvent(GameEvent.Type.TERMINAL, null, rules_
+                        .scores(currentState_)));
+            }
+        }
         return currentState();
     }
 
@@ -77,8 +128,19 @@ public final class LocalAutomator<S, A, R extends Rules<S, A>> extends Automator
         return currentState();
     }
 
+    /**
+     * The automator only ever replaces its state with the result of a
+     * transition, never modifying it, so views of it stay valid as the game
+     * moves on.
+     */
     @Override
     public S currentState()
+    {
+        return rules_.readOnlyView(currentState_);
+    }
+
+    @Override
+    public S currentStateSnapshot()
     {
         return rules_.copyState(currentState_);
     }
@@ -0,0 +1,492 @@
+package core.policies;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToDoubleBiFunction;
+import java.util.function.ToLongFunction;
+
+import utils.Validate;
+import core.Player;
+import core.Policy;
+import core.ReversibleRules;
+import core.Rules;
+import core.Score;
+import core.StateHashing;
+
+/**
+ * Exact minimax search with alpha-beta pruning for perfect-information games,
+ * over any Rules (given through the constructor). Terminal states are valued
+ * by Rules.scores(): the searching player's Score less the best of everyone
+ * else's. Any win is worth more than WIN_VALUE / 2 (and any loss less than
+ * minus that); among them, bigger margins come first, then quicker wins (and
+ * slower losses).
+ *
+ * The search deepens iteratively until the budget runs out, the maximum depth
+ * is reached, or the game has been solved (every line was searched to the end
+ * of the game). Moves are ordered by the best move remembered from earlier
+ * searches of the same state, then by a history heuristic of moves that caused
+ * cut-offs before. Results are kept in a fixed-size transposition table keyed
+ * by a 64-bit state hash, which is carried over between moves.
+ *
+ * States cut off at the depth limit are valued by an evaluation function (by
+ * default, the current Score difference). Evaluations must stay below
+ * WIN_VALUE / 2 in magnitude, so that they can be told apart from wins and
+ * losses.
+ *
+ * Note: Not thread-safe; use one instance per player per game.
+ *
+ * @param <S>
+ *            State type that the Game supports
+ * @param <A>
+ *            Action type that the Game supports
+ */
+public class AlphaBetaPolicy<S, A> implements Policy<S, A>
+{
+    /* 2^20 entries */
+    public static final int DEFAULT_TRANSPOSITION_TABLE_BITS = 20;
+    public static final int DEFAULT_MAX_DEPTH = 64;
+    /* Value of winning right away, less the margin of the win */
+    public static final double WIN_VALUE = 1e6;
+    /* Values at least this far from 0 are wins or losses, not evaluations */
+    private static final double DECISIVE_VALUE = WIN_VALUE / 2;
+    /* Worth of a point of winning margin; more than any difference in plies */
+    private static final double MARGIN_VALUE = 1e3;
+    /* How often (in nodes) to check the clock */
+    private static final int NODES_PER_CLOCK_CHECK = 1024;
+
+    private final Rules<S, A> rules_;
+    /* The same Rules, if they can apply and undo actions in place; else null */
+    private final ReversibleRules<S, A, Object> reversibleRules_;
+    private final SearchBudget budget_;
+    private final ToLongFunction<S> stateHash_;
+    private final ToDoubleBiFunction<S, Player> evaluation_;
+    private final int maxDepth_;
+    private final TranspositionTable<A> table_;
+    /* How often each move has caused a cut-off, weighted by depth */
+    private final Map<A, Long> history_ = new HashMap<>();
+
+    /* Per-search bookkeeping */
+    private Player rootPlayer_;
+    private long startNanos_;
+    private long nodes_;
+    private boolean aborted_;
+    /* Set whenever a line is cut off before the end of the game */
+    private boolean cutOff_;
+
+    /**
+     * Creates an AlphaBetaPolicy that values cut-off states by their current
+     * Scores, and hashes states with the Rules if they implement StateHashing.
+     * Otherwise it falls back to hashCode(), and since that is only 32 bits
+     * wide, states found in the transposition table are also checked with
+     * equals().
+     *
+     * @param rules
+     *            Rules of the game being played
+     * @param budget
+     *            How long to search for each move; iterations are nodes
+     *            searched
+     */
+    public AlphaBetaPolicy(final Rules<S, A> rules, final SearchBudget budget)
+    {
+        this(rules, budget, defaultStateHash(rules), null, DEFAULT_MAX_DEPTH,
+                DEFAULT_TRANSPOSITION_TABLE_BITS, !(rules instanceof StateHashing));
+    }
+
+    /**
+     * @param rules
+     *            Rules of the game being played
+     * @param budget
+     *            How long to search for each move; iterations are nodes
+     *            searched
+     * @param stateHash
+     *            64-bit hash of a state, used to key the transposition table.
+     *            Equal states must hash equally, and different states are
+     *            trusted not to collide.
+     * @param evaluation
+     *            Value of a non-terminal state to a player, used where the
+     *            search is cut off; null to use the current Score difference
+     * @param maxDepth
+     *            Maximum number of plies to search ahead
+     * @param transpositionTableBits
+     *            The transposition table holds 2^$transpositionTableBits
+     *            entries
+     */
+    public AlphaBetaPolicy(final Rules<S, A> rules, final SearchBudget budget,
+            final ToLongFunction<S> stateHash, final ToDoubleBiFunction<S, Player> evaluation,
+            final int maxDepth, final int transpositionTableBits)
+    {
+        this(rules, budget, stateHash, evaluation, maxDepth, transpositionTableBits, false);
+    }
+
+    private AlphaBetaPolicy(final Rules<S, A> rules, final SearchBudget budget,
+            final ToLongFunction<S> stateHash, final ToDoubleBiFunction<S, Player> evaluation,
+            final int maxDepth, final int transpositionTableBits, final boolean verifyStates)
+    {
+        Validate.notNull(rules, "Cannot search without Rules");
+        Validate.notNull(budget, "Cannot search without a SearchBudget");
+        Validate.notNull(stateHash, "Cannot search without a state hash");
+        Validate.isTrue(maxDepth > 0, "Cannot search to a non-positive depth");
+        Validate.isTrue(transpositionTableBits > 0 && transpositionTableBits <= 30,
+                "Transposition tables must hold between 2^1 and 2^30 entries");
+        rules_ = rules;
+        /* Searching in place would change states the table keeps to check against */
+        reversibleRules_ = (rules instanceof ReversibleRules && !verifyStates) ? asReversible(rules)
+                : null;
+        budget_ = budget;
+        stateHash_ = stateHash;
+        evaluation_ = (evaluation == null) ? this::scoreDifference : evaluation;
+        maxDepth_ = maxDepth;
+        table_ = new TranspositionTable<>(transpositionTableBits, verifyStates);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <S> ToLongFunction<S> defaultStateHash(final Rules<S, ?> rules)
+    {
+        if(rules instanceof StateHashing)
+        {
+            return ((StateHashing<S>) rules)::stateHash;
+        }
+        return state -> state.hashCode();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <S, A> ReversibleRules<S, A, Object> asReversible(final Rules<S, A> rules)
+    {
+        return (ReversibleRules<S, A, Object>) rules;
+    }
+
+    @Override
+    public A chooseAction(final S state, final Collection<A> actions)
+    {
+        Validate.notEmpty(actions,
+                "Policies should always have at least one action to select from.");
+        if(actions.size() == 1)
+        {
+            return actions.iterator().next();
+        }
+
+        rootPlayer_ = rules_.getCurrentPlayer(state);
+        startNanos_ = System.nanoTime();
+        nodes_ = 0;
+        aborted_ = false;
+
+        /* Never modify the caller's state, even temporarily */
+        final S root = (reversibleRules_ == null) ? state : rules_.copyState(state);
+        List<A> rootMoves = new ArrayList<>(actions);
+        A bestMove = rootMoves.get(0);
+        for(int depth = 1; depth <= maxDepth_; ++depth)
+        {
+            cutOff_ = false;
+            final A iterationBest = searchRoot(root, rootMoves, depth);
+            if(aborted_)
+            {
+                /* Partial iterations can't be trusted; keep the last full one */
+                break;
+            }
+            bestMove = iterationBest;
+            /* Search the best move first next time round */
+            rootMoves = orderMoves(rootMoves, bestMove);
+            if(!cutOff_)
+            {
+                /* Every line reached the end of the game: solved */
+                break;
+            }
+        }
+        return bestMove;
+    }
+
+    private A searchRoot(final S state, final List<A> moves, final int depth)
+    {
+        double alpha = Double.NEGATIVE_INFINITY;
+        A bestMove = moves.get(0);
+        for(final A move : moves)
+        {
+            final double value = searchChild(state, move, depth - 1, 1, alpha,
+                    Double.POSITIVE_INFINITY);
+            if(aborted_)
+            {
+                return bestMove;
+            }
+            if(value > alpha)
+            {
+                alpha = value;
+                bestMove = move;
+            }
+        }
+        return bestMove;
+    }
+
+    /**
+     * Searches the state that $move leads to from $state: in place if the
+     * Rules allow it, leaving $state as it was, otherwise on a new state
+     */
+    private double searchChild(final S state, final A move, final int depth, final int ply,
+            final double alpha, final double beta)
+    {
+        if(reversibleRules_ == null)
+        {
+            return alphaBeta(rules_.transition(state, move), depth, ply, alpha, beta);
+        }
+        final Object undo = reversibleRules_.apply(state, move);
+        final double value = alphaBeta(state, depth, ply, alpha, beta);
+        reversibleRules_.undo(state, undo);
+        return value;
+    }
+
+    private double alphaBeta(final S state, final int depth, final int ply, final double alpha,
+            final double beta)
+    {
+        if(++nodes_ >= budget_.getIterations()
+                || (nodes_ % NODES_PER_CLOCK_CHECK == 0 && budget_.isOutOfTime(startNanos_)))
+        {
+            aborted_ = true;
+            return 0;
+        }
+        if(rules_.isTerminal(state))
+        {
+            return terminalValue(state, ply);
+        }
+        if(depth == 0)
+        {
+            cutOff_ = true;
+            return evaluation_.applyAsDouble(state, rootPlayer_);
+        }
+
+        /* See if this state has already been searched deeply enough */
+        final long hash = stateHash_.applyAsLong(state);
+        final int slot = table_.find(hash, state);
+        A tableMove = null;
+        if(slot >= 0)
+        {
+            tableMove = table_.bestMove(slot);
+            final double tableValue = fromTable(table_.value(slot), ply);
+            final byte bound = table_.bound(slot);
+            if(table_.depth(slot) >= depth
+                    && (bound == TranspositionTable.EXACT
+                            || (bound == TranspositionTable.LOWER && tableValue >= beta)
+                            || (bound == TranspositionTable.UPPER && tableValue <= alpha)))
+            {
+                cutOff_ |= !table_.isComplete(slot);
+                return tableValue;
+            }
+        }
+
+        final Player player = rules_.getCurrentPlayer(state);
+        final boolean maximizing = player.equals(rootPlayer_);
+        final List<A> moves = orderMoves(rules_.getAvailableActions(player, state), tableMove);
+
+        /* Track cut-offs below this node separately, to know if it's solved */
+        final boolean cutOffAbove = cutOff_;
+        cutOff_ = false;
+        double currentAlpha = alpha;
+        double currentBeta = beta;
+        double best = maximizing ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        A bestMove = null;
+        for(final A move : moves)
+        {
+            final double value = searchChild(state, move, depth - 1, ply + 1, currentAlpha,
+                    currentBeta);
+            if(aborted_)
+            {
+                return 0;
+            }
+            if(maximizing ? value > best : value < best)
+            {
+                best = value;
+                bestMove = move;
+            }
+            if(maximizing)
+            {
+                currentAlpha = Math.max(currentAlpha, value);
+            }
+            else
+            {
+                currentBeta = Math.min(currentBeta, value);
+            }
+            if(currentAlpha >= currentBeta)
+            {
+                history_.merge(move, (long) depth * depth, Long::sum);
+                break;
+            }
+        }
+
+        final byte bound = (best <= alpha) ? TranspositionTable.UPPER
+                : (best >= beta) ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+        table_.store(hash, state, depth, toTable(best, ply), bound, !cutOff_, bestMove);
+        cutOff_ |= cutOffAbove;
+        return best;
+    }
+
+    /**
+     * @return $moves, with $firstMove (if present) first and the rest by
+     *         descending history score
+     */
+    private List<A> orderMoves(final Collection<A> moves, final A firstMove)
+    {
+        final List<A> ordered = new ArrayList<>(moves);
+        ordered.sort((first, second) ->
+        {
+            if(first.equals(firstMove) != second.equals(firstMove))
+            {
+                return first.equals(firstMove) ? -1 : 1;
+            }
+            return Long.compare(history_.getOrDefault(second, 0L),
+                    history_.getOrDefault(first, 0L));
+        });
+        return ordered;
+    }
+
+    private double terminalValue(final S state, final int ply)
+    {
+        /* Prefer big margins, then quick wins and slow losses */
+        final double difference = scoreDifference(state, rootPlayer_);
+        return Math.signum(difference) * (WIN_VALUE - ply) + difference * MARGIN_VALUE;
+    }
+
+    /*
+     * Wins and losses are valued by their distance from the root, but the
+     * table outlives the search and states recur at other plies; it keeps
+     * them by their distance from the state stored instead
+     */
+    private static double toTable(final double value, final int ply)
+    {
+        return (Math.abs(value) >= DECISIVE_VALUE) ? value + Math.signum(value) * ply : value;
+    }
+
+    private static double fromTable(final double value, final int ply)
+    {
+        return (Math.abs(value) >= DECISIVE_VALUE) ? value - Math.signum(value) * ply : value;
+    }
+
+    /**
+     * @return $player's Score less the best Score of any other player
+     */
+    private double scoreDifference(final S state, final Player player)
+    {
+        final Map<Player, Score> scores = rules_.scores(state);
+        double playerScore = 0;
+        double bestOtherScore = 0;
+        boolean otherScored = false;
+        for(final Map.Entry<Player, Score> playerScoreEntry : scores.entrySet())
+        {
+            final double value = playerScoreEntry.getValue().getValue();
+            if(playerScoreEntry.getKey().equals(player))
+            {
+                playerScore = value;
+            }
+            else if(!otherScored || value > bestOtherScore)
+            {
+                bestOtherScore = value;
+                otherScored = true;
+            }
+        }
+        return playerScore - bestOtherScore;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("Alpha-beta search, %s per move", budget_);
+    }
+
+    /*
+     * Fixed-size, always-replace hash table of search results, stored in
+     * parallel arrays so that it costs no allocation per entry
+     */
+    private static final class TranspositionTable<A>
+    {
+        private static final byte EXACT = 0;
+        /* The true value is at least the stored value */
+        private static final byte LOWER = 1;
+        /* The true value is at most the stored value */
+        private static final byte UPPER = 2;
+
+        private final int mask_;
+        private final long [] keys_;
+        private final double [] values_;
+        private final byte [] depths_;
+        private final byte [] bounds_;
+        private final boolean [] occupied_;
+        /* Whether the value was searched all the way to the end of the game */
+        private final boolean [] complete_;
+        private final Object [] bestMoves_;
+        /* States themselves, kept only when their hashes may collide */
+        private final Object [] states_;
+
+        private TranspositionTable(final int bits, final boolean verifyStates)
+        {
+            final int size = 1 << bits;
+            mask_ = size - 1;
+            keys_ = new long [size];
+            values_ = new double [size];
+            depths_ = new byte [size];
+            bounds_ = new byte [size];
+            occupied_ = new boolean [size];
+            complete_ = new boolean [size];
+            bestMoves_ = new Object [size];
+            states_ = verifyStates ? new Object [size] : null;
+        }
+
+        /**
+         * @return Slot holding $state (with $hash), or -1 if it isn't in the table
+         */
+        private int find(final long hash, final Object state)
+        {
+            final int slot = slotFor(hash);
+            return (occupied_[slot] && keys_[slot] == hash && (states_ == null || states_[slot]
+                    .equals(state))) ? slot : -1;
+        }
+
+        private void store(final long hash, final Object state, final int depth, final double value,
+                final byte bound, final boolean complete, final A bestMove)
+        {
+            final int slot = slotFor(hash);
+            keys_[slot] = hash;
+            values_[slot] = value;
+            depths_[slot] = (byte) Math.min(depth, Byte.MAX_VALUE);
+            bounds_[slot] = bound;
+            occupied_[slot] = true;
+            complete_[slot] = complete;
+            bestMoves_[slot] = bestMove;
+            if(states_ != null)
+            {
+                states_[slot] = state;
+            }
+        }
+
+        private int depth(final int slot)
+        {
+            return depths_[slot];
+        }
+
+        private double value(final int slot)
+        {
+            return values_[slot];
+        }
+
+        private byte bound(final int slot)
+        {
+            return bounds_[slot];
+        }
+
+        private boolean isComplete(final int slot)
+        {
+            return complete_[slot];
+        }
+
+        @SuppressWarnings("unchecked")
+        private A bestMove(final int slot)
+        {
+            return (A) bestMoves_[slot];
+        }
+
+        private int slotFor(final long hash)
+        {
+            /* Fold the high bits in, in case the hash is only 32 bits wide */
+            return (int) ((hash ^ (hash >>> 32) ^ (hash >>> 17)) & mask_);
+        }
+    }
+}
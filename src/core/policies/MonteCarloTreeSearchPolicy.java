@@ -0,0 +1,465 @@
+package core.policies;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import utils.RandomStream;
+import utils.RandomUtils;
+import utils.Validate;
+import core.Player;
+import core.Policy;
+import core.Rules;
+import core.Score;
+import core.StateHashing;
+
+/**
+ * Monte Carlo Tree Search (UCT) over any Rules. Each move, the policy grows a
+ * search tree from the current state: it walks down the tree picking the
+ * child with the best upper confidence bound, expands one new child, plays
+ * random moves from there until the game ends (or a depth limit is hit), and
+ * credits every move on the path with how far its mover ended up ahead of the
+ * best of the other players (as AlphaBetaPolicy scores states), so that a
+ * loss is worth less than a draw even where both score nothing. The most
+ * visited move at the root is played.
+ *
+ * With a parallelism above one, the search is root-parallel: every thread
+ * grows its own tree from the same state, and visit counts are summed over
+ * all of the trees when choosing a move. Trees are kept between moves; if the
+ * next state is found within two plies of the previous root, the matching
+ * subtree becomes the new root rather than starting from scratch. States are
+ * matched by stateHash(...) when the Rules implement StateHashing, and by
+ * equals(...) otherwise, so trees are only reused for games whose Rules hash
+ * states or whose states override equals(...).
+ *
+ * Note: The state handed to chooseAction(...) must be one the Rules can
+ * transition, so this is meant for games where filterState(...) returns the
+ * full state (eg perfect-information games). Rewards are differences of raw
+ * Score values, so the exploration constant should be scaled to the game's
+ * range of Scores; the default suits wins, draws and losses worth 1, 0 and -1.
+ *
+ * Note: Not thread-safe; use one instance per game. When searching on more
+ * than one thread, the Rules must be safe to share between threads.
+ *
+ * @param <S>
+ *            State type that the Game supports
+ * @param <A>
+ *            Action type that the Game supports
+ */
+public class MonteCarloTreeSearchPolicy<S, A> implements Policy<S, A>
+{
+    /* Theoretical optimum for rewards between 0 and 1; suits -1 to 1 in practice */
+    public static final double DEFAULT_EXPLORATION = Math.sqrt(2);
+    public static final int DEFAULT_MAX_PLAYOUT_DEPTH = 1000;
+    /* How far below the previous root to look for the state we were given */
+    private static final int TREE_REUSE_DEPTH = 2;
+
+    private final Rules<S, A> rules_;
+    /* The Rules, if they hash states; null otherwise */
+    private final StateHashing<S> hashing_;
+    private final SearchBudget budget_;
+    private final double exploration_;
+    private final int maxPlayoutDepth_;
+    private final RandomStream random_;
+    private final ExecutorService executor_;
+    /* Root of every thread's tree, after the move last chosen from it */
+    private final List<Node<S, A>> roots_;
+
+    /**
+     * Creates a single-threaded MonteCarloTreeSearchPolicy
+     *
+     * @param rules
+     *            Rules of the game being played
+     * @param budget
+     *            How long to search for each move
+     */
+    public MonteCarloTreeSearchPolicy(final Rules<S, A> rules, final SearchBudget budget)
+    {
+        this(rules, budget, 1, new RandomStream());
+    }
+
+    /**
+     * Creates a MonteCarloTreeSearchPolicy that searches with one tree per
+     * thread on the common ForkJoinPool
+     *
+     * @param rules
+     *            Rules of the game being played
+     * @param budget
+     *            How long to search for each move. Iteration budgets are
+     *            shared out between the trees.
+     * @param parallelism
+     *            Number of trees to search in parallel
+     * @param random
+     *            Source of randomness for playouts; with an iteration budget,
+     *            the same seed always chooses the same moves
+     */
+    public MonteCarloTreeSearchPolicy(final Rules<S, A> rules, final SearchBudget budget,
+            final int parallelism, final RandomStream random)
+    {
+        this(rules, budget, parallelism, random, DEFAULT_EXPLORATION, DEFAULT_MAX_PLAYOUT_DEPTH,
+                ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param rules
+     *            Rules of the game being played
+     * @param budget
+     *            How long to search for each move. Iteration budgets are
+     *            shared out between the trees.
+     * @param parallelism
+     *            Number of trees to search in parallel
+     * @param random
+     *            Source of randomness for playouts
+     * @param exploration
+     *            UCT exploration constant; higher values favour trying less
+     *            visited moves
+     * @param maxPlayoutDepth
+     *            Number of random moves after which a playout is stopped and
+     *            scored as it stands
+     * @param executor
+     *            Executor to run all but the first tree on. Not shut down by
+     *            this class.
+     */
+    public MonteCarloTreeSearchPolicy(final Rules<S, A> rules, final SearchBudget budget,
+            final int parallelism, final RandomStream random, final double exploration,
+            final int maxPlayoutDepth, final ExecutorService executor)
+    {
+        Validate.notNull(rules, "Cannot search without Rules");
+        Validate.notNull(budget, "Cannot search without a SearchBudget");
+        Validate.isTrue(parallelism > 0, "Cannot search with a non-positive number of trees");
+        Validate.notNull(random, "Cannot search with a null RandomStream");
+        Validate.isTrue(exploration >= 0, "Cannot search with a negative exploration constant");
+        Validate.isTrue(maxPlayoutDepth >= 0, "Cannot play out to a negative depth");
+        Validate.notNull(executor, "Cannot search with a null executor");
+        rules_ = rules;
+        hashing_ = hashingOf(rules);
+        budget_ = budget;
+        exploration_ = exploration;
+        maxPlayoutDepth_ = maxPlayoutDepth;
+        random_ = random;
+        executor_ = executor;
+        roots_ = new ArrayList<>(parallelism);
+        for(int tree = 0; tree < parallelism; ++tree)
+        {
+            roots_.add(null);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <S> StateHashing<S> hashingOf(final Rules<S, ?> rules)
+    {
+        return (rules instanceof StateHashing) ? (StateHashing<S>) rules : null;
+    }
+
+    @Override
+    public A chooseAction(final S state, final Collection<A> actions)
+    {
+        Validate.notEmpty(actions,
+                "Policies should always have at least one action to select from.");
+        if(actions.size() == 1)
+        {
+            return actions.iterator().next();
+        }
+
+        final long startNanos = System.nanoTime();
+        final int trees = roots_.size();
+        final long iterationsPerTree = budget_.isTimed() ? Long.MAX_VALUE : Math.max(1,
+                (budget_.getIterations() + trees - 1) / trees);
+        final List<Future<Node<S, A>>> searches = new ArrayList<>(trees - 1);
+        for(int tree = 1; tree < trees; ++tree)
+        {
+            final Node<S, A> root = reuseOrCreateRoot(roots_.get(tree), state);
+            final RandomStream random = random_.split();
+            searches.add(executor_.submit(() -> search(root, startNanos, iterationsPerTree,
+                    random)));
+        }
+        final List<Node<S, A>> searchedRoots = new ArrayList<>(trees);
+        searchedRoots.add(search(reuseOrCreateRoot(roots_.get(0), state), startNanos,
+                iterationsPerTree, random_.split()));
+        for(final Future<Node<S, A>> search : searches)
+        {
+            searchedRoots.add(awaitSearch(search));
+        }
+
+        final A chosenAction = mostVisitedAction(searchedRoots, actions);
+        /* Keep the subtree under our move around for the next search */
+        for(int tree = 0; tree < trees; ++tree)
+        {
+            roots_.set(tree, searchedRoots.get(tree).childFor(chosenAction));
+        }
+        return chosenAction;
+    }
+
+    /**
+     * Looks for $state in the tree that was kept from the previous move, down
+     * to a few plies, so that the search can carry on from there
+     *
+     * @return The matching node, detached from its tree, or a fresh root
+     */
+    private Node<S, A> reuseOrCreateRoot(final Node<S, A> previousRoot, final S state)
+    {
+        final long stateHash = (hashing_ == null) ? 0L : hashing_.stateHash(state);
+        final Node<S, A> reused = findState(previousRoot, state, stateHash, TREE_REUSE_DEPTH);
+        if(reused != null)
+        {
+            return reused;
+        }
+        return new Node<>(rules_.copyState(state), null, null);
+    }
+
+    private Node<S, A> findState(final Node<S, A> node, final S state, final long stateHash,
+            final int depth)
+    {
+        if(node == null)
+        {
+            return null;
+        }
+        /* States that hash the same play out the same (see StateHashing) */
+        if((hashing_ == null) ? node.state_.equals(state)
+                : hashing_.stateHash(node.state_) == stateHash)
+        {
+            return node;
+        }
+        if(depth == 0)
+        {
+            return null;
+        }
+        for(final Node<S, A> child : node.children_)
+        {
+            final Node<S, A> found = findState(child, state, stateHash, depth - 1);
+            if(found != null)
+            {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    private Node<S, A> search(final Node<S, A> root, final long startNanos,
+            final long iterations, final RandomStream random)
+    {
+        final List<Node<S, A>> path = new ArrayList<>();
+        for(long iteration = 0; iteration < iterations && !budget_.isOutOfTime(startNanos);
+                ++iteration)
+        {
+            path.clear();
+            path.add(root);
+
+            /* Selection: follow the best bounds down to a node with untried moves */
+            Node<S, A> node = root;
+            while(!node.isTerminal(rules_) && node.isFullyExpanded(rules_)
+                    && !node.children_.isEmpty())
+            {
+                node = node.bestChild(exploration_);
+                path.add(node);
+            }
+
+            /* Expansion: try one new move */
+            if(!node.isTerminal(rules_) && !node.isFullyExpanded(rules_))
+            {
+                node = node.expand(rules_, random);
+                path.add(node);
+            }
+
+            /* Playout: random moves until the game ends */
+            final Map<Player, Score> scores = rules_.scores(playOut(node.state_, random));
+
+            /* Backpropagation: credit every move with its mover's lead */
+            for(final Node<S, A> visited : path)
+            {
+                ++visited.visits_;
+                if(visited.mover_ != null)
+                {
+                    visited.totalReward_ += scoreDifference(scores, visited.mover_);
+                }
+            }
+        }
+        return root;
+    }
+
+    /**
+     * @return $player's Score less the best Score of any other player (0 if
+     *         there are none), so that losing is worse than drawing
+     */
+    private static double scoreDifference(final Map<Player, Score> scores, final Player player)
+    {
+        double playerScore = 0;
+        double bestOtherScore = 0;
+        boolean otherScored = false;
+        for(final Map.Entry<Player, Score> playerScoreEntry : scores.entrySet())
+        {
+            final double value = playerScoreEntry.getValue().getValue();
+            if(playerScoreEntry.getKey().equals(player))
+            {
+                playerScore = value;
+            }
+            else if(!otherScored || value > bestOtherScore)
+            {
+                bestOtherScore = value;
+                otherScored = true;
+            }
+        }
+        return playerScore - bestOtherScore;
+    }
+
+    private S playOut(final S state, final RandomStream random)
+    {
+        S current = state;
+        for(int depth = 0; depth < maxPlayoutDepth_ && !rules_.isTerminal(current); ++depth)
+        {
+            final Player player = rules_.getCurrentPlayer(current);
+            final Collection<A> actions = rules_.getAvailableActions(player, current);
+            if(actions.isEmpty())
+            {
+                break;
+            }
+            current = rules_.transition(current, RandomUtils.randomOf(actions, random));
+        }
+        return current;
+    }
+
+    /**
+     * Sums the visits of each root move over every tree, and picks the most
+     * visited one that is actually available
+     */
+    private A mostVisitedAction(final List<Node<S, A>> roots, final Collection<A> actions)
+    {
+        final Map<A, Long> visitsByAction = new LinkedHashMap<>();
+        roots.forEach(root -> root.children_.forEach(child -> visitsByAction.merge(
+                child.action_, (long) child.visits_, Long::sum)));
+
+        A bestAction = null;
+        long bestVisits = -1;
+        for(final Entry<A, Long> actionVisits : visitsByAction.entrySet())
+        {
+            if(actionVisits.getValue() > bestVisits && actions.contains(actionVisits.getKey()))
+            {
+                bestAction = actionVisits.getKey();
+                bestVisits = actionVisits.getValue();
+            }
+        }
+        /* Only possible if the budget ran out before a single expansion */
+        return (bestAction == null) ? RandomUtils.randomOf(actions, random_) : bestAction;
+    }
+
+    private static <T> T awaitSearch(final Future<T> search)
+    {
+        try
+        {
+            return search.get();
+        }
+        catch(final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a search to finish", e);
+        }
+        catch(final ExecutionException e)
+        {
+            if(e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("A search failed to complete", e.getCause());
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("UCT search, %s per move over %d tree(s)", budget_, roots_.size());
+    }
+
+    /* A state in the search tree, and the statistics of the move that led to it */
+    private static final class Node<S, A>
+    {
+        private final S state_;
+        /* Move that led here and the player who made it; null at the root */
+        private final A action_;
+        private final Player mover_;
+        private final List<Node<S, A>> children_ = new ArrayList<>();
+        /* Moves not yet expanded into children; null until first needed */
+        private List<A> untriedActions_;
+        private Boolean terminal_;
+        private int visits_;
+        /* Sum of $mover_'s lead over every playout through here */
+        private double totalReward_;
+
+        private Node(final S state, final A action, final Player mover)
+        {
+            state_ = state;
+            action_ = action;
+            mover_ = mover;
+        }
+
+        private boolean isTerminal(final Rules<S, A> rules)
+        {
+            if(terminal_ == null)
+            {
+                terminal_ = rules.isTerminal(state_);
+            }
+            return terminal_;
+        }
+
+        private boolean isFullyExpanded(final Rules<S, A> rules)
+        {
+            if(untriedActions_ == null)
+            {
+                untriedActions_ = new ArrayList<>(rules.getAvailableActions(
+                        rules.getCurrentPlayer(state_), state_));
+            }
+            return untriedActions_.isEmpty();
+        }
+
+        private Node<S, A> expand(final Rules<S, A> rules, final RandomStream random)
+        {
+            /* Swap a random untried move to the end, then take it from there */
+            final int last = untriedActions_.size() - 1;
+            final int chosen = random.nextInt(untriedActions_.size());
+            final A action = untriedActions_.get(chosen);
+            untriedActions_.set(chosen, untriedActions_.get(last));
+            untriedActions_.remove(last);
+
+            final Player mover = rules.getCurrentPlayer(state_);
+            final Node<S, A> child = new Node<>(rules.transition(state_, action), action, mover);
+            children_.add(child);
+            return child;
+        }
+
+        private Node<S, A> bestChild(final double exploration)
+        {
+            final double logVisits = Math.log(visits_);
+            Node<S, A> best = null;
+            double bestBound = Double.NEGATIVE_INFINITY;
+            for(final Node<S, A> child : children_)
+            {
+                final double bound = child.totalReward_ / child.visits_ + exploration
+                        * Math.sqrt(logVisits / child.visits_);
+                if(bound > bestBound)
+                {
+                    best = child;
+                    bestBound = bound;
+                }
+            }
+            return best;
+        }
+
+        private Node<S, A> childFor(final A action)
+        {
+            for(final Node<S, A> child : children_)
+            {
+                if(child.action_.equals(action))
+                {
+                    return child;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -1,14 +1,45 @@
 package core.policies;
 
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.concurrent.ThreadLocalRandom;
 
+import utils.RandomStream;
+import utils.RandomUtils;
 import utils.Validate;
 import core.Policy;
 
 public class RandomPolicy<S, A> implements Policy<S, A>
 {
+    /* Null to use the calling thread's ThreadLocalRandom */
+    private final RandomStream random_;
+
+    /**
+     * Creates a RandomPolicy whose choices cannot be reproduced, but that can
+     * safely be shared between threads
+     */
+    public RandomPolicy()
+    {
+        random_ = null;
+    }
+
+    /**
+     * Creates a RandomPolicy that makes the same choices for the same seed.
+     *
+     * Note: Not thread-safe; use one per game.
+     *
+     * @param random
+     *            Source of randomness for this policy's choices
+     */
+    public RandomPolicy(final RandomStream random)
+    {
+        Validate.notNull(random, "Cannot create a RandomPolicy with a null RandomStream");
+        random_ = random;
+    }
+
+    public RandomPolicy(final long seed)
+    {
+        this(new RandomStream(seed));
+    }
+
     @Override
     public A chooseAction(final S state, final Collection<A> actions)
     {
@@ -20,7 +51,8 @@ public class RandomPolicy<S, A> implements Policy<S, A>
          */
         Validate.notEmpty(actions,
                 "Policies should always have at least one action to select from.");
-        return new ArrayList<>(actions).get(ThreadLocalRandom.current().nextInt(actions.size()));
+        return (random_ == null) ? RandomUtils.randomOf(actions) : RandomUtils.randomOf(actions,
+                random_);
     }
 
     @Override
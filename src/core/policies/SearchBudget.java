@@ -0,0 +1,88 @@
+package core.policies;
+
+import java.util.concurrent.TimeUnit;
+
+import utils.Validate;
+
+/**
+ * How much work a search policy may do per move: either a fixed number of
+ * iterations (whatever an iteration means to the policy, eg one playout),
+ * which makes searches reproducible, or a wall-clock time limit, which makes
+ * full use of the time available.
+ */
+public final class SearchBudget
+{
+    private final long iterations_;
+    private final long nanos_;
+
+    /**
+     * @param iterations
+     *            Number of iterations to search for per move. Must be positive.
+     * @return A budget bounded by iterations only
+     */
+    public static SearchBudget iterations(final long iterations)
+    {
+        Validate.isTrue(iterations > 0, "Cannot search for a non-positive number of iterations");
+        return new SearchBudget(iterations, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param duration
+     *            How long to search for per move. Must be positive.
+     * @param unit
+     *            Unit of $duration
+     * @return A budget bounded by wall-clock time only
+     */
+    public static SearchBudget time(final long duration, final TimeUnit unit)
+    {
+        Validate.isTrue(duration > 0, "Cannot search for a non-positive amount of time");
+        Validate.notNull(unit, "Cannot search for a duration with a null unit");
+        return new SearchBudget(Long.MAX_VALUE, unit.toNanos(duration));
+    }
+
+    private SearchBudget(final long iterations, final long nanos)
+    {
+        iterations_ = iterations;
+        nanos_ = nanos;
+    }
+
+    /**
+     * @return Maximum number of iterations, or Long.MAX_VALUE if unbounded
+     */
+    public long getIterations()
+    {
+        return iterations_;
+    }
+
+    /**
+     * @return Maximum search time in nanoseconds, or Long.MAX_VALUE if
+     *         unbounded
+     */
+    public long getNanos()
+    {
+        return nanos_;
+    }
+
+    public boolean isTimed()
+    {
+        return nanos_ != Long.MAX_VALUE;
+    }
+
+    /**
+     * @param startNanos
+     *            System.nanoTime() when the search started
+     * @return Whether or not the search has used up its time, if it has a
+     *         time limit at all
+     */
+    public boolean isOutOfTime(final long startNanos)
+    {
+        return isTimed() && System.nanoTime() - startNanos >= nanos_;
+    }
+
+    @Override
+    public String toString()
+    {
+        return isTimed() ? String.format("%d ms", TimeUnit.NANOSECONDS.toMillis(nanos_)) : String
+                .format("%d iterations", iterations_);
+    }
+}
@@ -0,0 +1,129 @@
+package core.sinks;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import utils.Validate;
+import core.GameEvent;
+import core.GameEventSink;
+
+/**
+ * Logs events to a stream, one line each, from a background thread. Games
+ * only pay to queue their events; the writer takes them off the queue in
+ * batches and prints each batch in one go, so many games can log through the
+ * same sink without contending for the stream's lock on every event.
+ *
+ * When the queue is full, games block until the writer catches up rather
+ * than losing events. Close the sink to flush what is still queued; events
+ * accepted after that are discarded.
+ */
+public final class AsyncLoggingEventSink implements GameEventSink, AutoCloseable
+{
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+    /* Queued by close() to tell the writer that nothing else is coming */
+    private static final GameEvent END_OF_LOG = new GameEvent(GameEvent.Type.TERMINAL, null,
+            null);
+
+    private final PrintStream out_;
+    private final BlockingQueue<GameEvent> queue_;
+    private final Thread writer_;
+    private volatile boolean closed_ = false;
+
+    public AsyncLoggingEventSink(final PrintStream out)
+    {
+        this(out, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param out
+     *            Stream to log to; not closed by this class
+     * @param capacity
+     *            Number of events that may be waiting to be logged before
+     *            games have to wait for the writer
+     */
+    public AsyncLoggingEventSink(final PrintStream out, final int capacity)
+    {
+        Validate.notNull(out, "Cannot log events to a null stream");
+        Validate.isTrue(capacity > 0, "Cannot log events through a queue with no capacity");
+        out_ = out;
+        queue_ = new ArrayBlockingQueue<GameEvent>(capacity);
+        writer_ = new Thread(this::writeEvents, "AsyncLoggingEventSink");
+        writer_.setDaemon(true);
+        writer_.start();
+    }
+
+    @Override
+    public void accept(final GameEvent event)
+    {
+        Validate.notNull(event, "Cannot log a null event");
+        if(closed_)
+        {
+            return;
+        }
+        try
+        {
+            queue_.put(event);
+        }
+        catch(final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Logs every event accepted so far, then stops the writer
+     */
+    @Override
+    public void close()
+    {
+        if(closed_)
+        {
+            return;
+        }
+        closed_ = true;
+        try
+        {
+            queue_.put(END_OF_LOG);
+            writer_.join();
+        }
+        catch(final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeEvents()
+    {
+        final List<GameEvent> batch = new ArrayList<GameEvent>();
+        final StringBuilder builder = new StringBuilder();
+        try
+        {
+            while(true)
+            {
+                batch.add(queue_.take());
+                queue_.drainTo(batch);
+                for(final GameEvent event : batch)
+                {
+                    if(event == END_OF_LOG)
+                    {
+                        out_.print(builder);
+                        out_.flush();
+                        return;
+                    }
+                    builder.append(event).append(System.lineSeparator());
+                }
+                out_.print(builder);
+                out_.flush();
+                batch.clear();
+                builder.setLength(0);
+            }
+        }
+        catch(final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package core.sinks;
+
+import core.GameEvent;
+import core.GameEventSink;
+
+/**
+ * Ignores every event; the default for Rules and Automators that are not
+ * given a sink.
+ */
+public final class DiscardingEventSink implements GameEventSink
+{
+    public static final DiscardingEventSink INSTANCE = new DiscardingEventSink();
+
+    private DiscardingEventSink()
+    {
+    }
+
+    @Override
+    public void accept(final GameEvent event)
+    {
+    }
+
+    @Override
+    public boolean isListening()
+    {
+        return false;
+    }
+}
@@ -0,0 +1,178 @@
+package tetris;
+
+import java.util.HashSet;
+import java.util.Set;
+import utils.Validate;
+import utils.Vector2;
+
+/**
+ * Precomputed geometry for the seven Tetriminos, following the Super Rotation
+ * System (https://tetris.wiki/Super_Rotation_System): the blocks of every
+ * rotation state relative to a piece's origin, and the wall kicks to try when
+ * turning clockwise out of each state. Rotation states are numbered clockwise
+ * from the spawn state, 0.
+ *
+ * @author Ginger
+ */
+final class TetriminoRotations {
+
+    static final int NUMBER_OF_ROTATIONS = 4;
+
+    /* Spawn-state blocks of each Tetrimino, with the origin at the bottom-left */
+    private static final int[][] SPAWN_X = {
+        /* I */ {0, 1, 2, 3},
+        /* J */ {0, 0, 1, 2},
+        /* L */ {0, 1, 2, 2},
+        /* O */ {0, 0, 1, 1},
+        /* S */ {0, 1, 1, 2},
+        /* T */ {0, 1, 1, 2},
+        /* Z */ {0, 1, 1, 2}
+    };
+    private static final int[][] SPAWN_Y = {
+        /* I */ {0, 0, 0, 0},
+        /* J */ {1, 0, 0, 0},
+        /* L */ {0, 0, 0, 1},
+        /* O */ {0, 1, 0, 1},
+        /* S */ {0, 0, 1, 1},
+        /* T */ {0, 0, 1, 0},
+        /* Z */ {1, 1, 0, 0}
+    };
+    /* Twice the center of rotation of each Tetrimino, relative to its origin;
+     doubled so that the centers between blocks are whole numbers */
+    private static final int[][] DOUBLED_CENTERS = {
+        /* I */ {3, -1},
+        /* J */ {2, 0},
+        /* L */ {2, 0},
+        /* O */ {1, 1},
+        /* S */ {2, 0},
+        /* T */ {2, 0},
+        /* Z */ {2, 0}
+    };
+
+    /* Wall kicks out of rotation states 0, 1, 2 and 3, as {x, y} offsets in the
+     order they are tried; the first is always no offset at all */
+    private static final int[][][] JLSTZ_KICKS = {
+        {{0, 0}, {-1, 0}, {-1, 1}, {0, -2}, {-1, -2}},
+        {{0, 0}, {1, 0}, {1, -1}, {0, 2}, {1, 2}},
+        {{0, 0}, {1, 0}, {1, 1}, {0, -2}, {1, -2}},
+        {{0, 0}, {-1, 0}, {-1, -1}, {0, 2}, {-1, 2}}
+    };
+    private static final int[][][] I_KICKS = {
+        {{0, 0}, {-2, 0}, {1, 0}, {-2, -1}, {1, 2}},
+        {{0, 0}, {-1, 0}, {2, 0}, {-1, 2}, {2, -1}},
+        {{0, 0}, {2, 0}, {-1, 0}, {2, 1}, {-1, -2}},
+        {{0, 0}, {1, 0}, {-2, 0}, {1, -2}, {-2, 1}}
+    };
+    private static final int[][][] O_KICKS = {
+        {{0, 0}}, {{0, 0}}, {{0, 0}}, {{0, 0}}
+    };
+
+    /* Blocks of each rotation state relative to the origin: [tetrimino][rotation][block] */
+    private static final int[][][] X_OFFSETS;
+    private static final int[][][] Y_OFFSETS;
+
+    static {
+        final int tetriminos = Tetrimino.values().length;
+        X_OFFSETS = new int[tetriminos][NUMBER_OF_ROTATIONS][];
+        Y_OFFSETS = new int[tetriminos][NUMBER_OF_ROTATIONS][];
+        for (int t = 0; t < tetriminos; t++) {
+            X_OFFSETS[t][0] = SPAWN_X[t];
+            Y_OFFSETS[t][0] = SPAWN_Y[t];
+            /* Turning clockwise about the center (cx, cy) takes a block at
+             (x, y) to (cx - cy + y, cx + cy - x) */
+            final int xShift = (DOUBLED_CENTERS[t][0] - DOUBLED_CENTERS[t][1]) / 2;
+            final int yShift = (DOUBLED_CENTERS[t][0] + DOUBLED_CENTERS[t][1]) / 2;
+            for (int rotation = 1; rotation < NUMBER_OF_ROTATIONS; rotation++) {
+                final int[] previousX = X_OFFSETS[t][rotation - 1];
+                final int[] previousY = Y_OFFSETS[t][rotation - 1];
+                X_OFFSETS[t][rotation] = new int[previousX.length];
+                Y_OFFSETS[t][rotation] = new int[previousY.length];
+                for (int block = 0; block < previousX.length; block++) {
+                    X_OFFSETS[t][rotation][block] = xShift + previousY[block];
+                    Y_OFFSETS[t][rotation][block] = yShift - previousX[block];
+                }
+            }
+        }
+    }
+
+    private TetriminoRotations() {
+    }
+
+    /**
+     * The blocks of a Tetrimino in some rotation state, placed at an origin
+     *
+     * @param tetrimino
+     * @param rotation
+     * @param originX
+     * @param originY
+     * @return A new set of the blocks
+     */
+    static Set<TetrisBlock> getBlocks(final Tetrimino tetrimino, final int rotation,
+            final int originX, final int originY) {
+        final int[] xOffsets = X_OFFSETS[tetrimino.ordinal()][rotation];
+        final int[] yOffsets = Y_OFFSETS[tetrimino.ordinal()][rotation];
+        final Set<TetrisBlock> blocks = new HashSet<TetrisBlock>(2 * xOffsets.length);
+        for (int block = 0; block < xOffsets.length; block++) {
+            blocks.add(new TetrisBlock(originX + xOffsets[block], originY + yOffsets[block]));
+        }
+        return blocks;
+    }
+
+    /**
+     * x-offsets from the origin of the blocks of a Tetrimino in some rotation
+     * state; shared, so must not be modified
+     *
+     * @param tetrimino
+     * @param rotation
+     * @return
+     */
+    static int[] getXOffsets(final Tetrimino tetrimino, final int rotation) {
+        return X_OFFSETS[tetrimino.ordinal()][rotation];
+    }
+
+    /**
+     * y-offsets from the origin of the blocks of a Tetrimino in some rotation
+     * state; shared, so must not be modified
+     *
+     * @param tetrimino
+     * @param rotation
+     * @return
+     */
+    static int[] getYOffsets(final Tetrimino tetrimino, final int rotation) {
+        return Y_OFFSETS[tetrimino.ordinal()][rotation];
+    }
+
+    /**
+     * The center of rotation of a Tetrimino relative to its origin, rounded
+     * towards the origin; spawning a Tetrimino with this point on the spawn
+     * point "snaps" it to the bottom-left
+     *
+     * @param tetrimino
+     * @return
+     */
+    static Vector2 getSnappedCenter(final Tetrimino tetrimino) {
+        final int[] doubledCenter = DOUBLED_CENTERS[tetrimino.ordinal()];
+        return new Vector2(doubledCenter[0] / 2, doubledCenter[1] / 2);
+    }
+
+    /**
+     * The wall kicks to try, in order, when turning a Tetrimino clockwise out
+     * of some rotation state
+     *
+     * @param tetrimino
+     * @param rotation
+     * @return {x, y} offsets for the origin of the turned Tetrimino
+     */
+    static int[][] getClockwiseKicks(final Tetrimino tetrimino, final int rotation) {
+        Validate.isTrue(rotation >= 0 && rotation < NUMBER_OF_ROTATIONS,
+                "Rotation states run from 0 to 3.");
+        switch (tetrimino) {
+            case I:
+                return I_KICKS[rotation];
+            case O:
+                return O_KICKS[rotation];
+            default:
+                return JLSTZ_KICKS[rotation];
+        }
+    }
+}
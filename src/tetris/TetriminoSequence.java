@@ -0,0 +1,83 @@
+package tetris;
+
+import utils.RandomStream;
+import utils.Validate;
+
+/**
+ * The order in which Tetriminos are dealt over a whole game, fixed by a seed.
+ * Tetriminos are looked up by their position in the sequence rather than
+ * drawn one after another: each is worked out from the seed and its index
+ * alone. States therefore only need to count how many they have dealt, which
+ * costs nothing to copy, and can look as far ahead as they like.
+ *
+ * @author Ginger
+ */
+public final class TetriminoSequence {
+
+    private static final Tetrimino[] TETRIMINOS = Tetrimino.values();
+
+    /**
+     * How Tetriminos are picked
+     */
+    public enum Randomizer {
+        /* Every Tetrimino is equally likely every time, independently */
+        UNIFORM,
+        /*
+         * Deal the seven Tetriminos in a random order, then the seven again in
+         * another, and so on, as in modern Tetris; never more than twelve
+         * Tetriminos between two of the same kind
+         */
+        SEVEN_BAG
+    }
+
+    private final Randomizer randomizer_;
+    /* Never advanced, only forked: one child per bag (or per Tetrimino) */
+    private final RandomStream random_;
+
+    public TetriminoSequence(final Randomizer randomizer, final long seed) {
+        this(randomizer, new RandomStream(seed));
+    }
+
+    /**
+     * @param randomizer How Tetriminos are picked
+     * @param random Stream to derive the sequence from; not advanced, so the
+     * same stream always gives the same sequence
+     */
+    public TetriminoSequence(final Randomizer randomizer, final RandomStream random) {
+        Validate.notNull(randomizer, "Randomizer must not be null.");
+        Validate.notNull(random, "Random stream must not be null.");
+        randomizer_ = randomizer;
+        random_ = new RandomStream(random);
+    }
+
+    public Randomizer getRandomizer() {
+        return randomizer_;
+    }
+
+    /**
+     * The Tetrimino dealt at some position in the sequence
+     *
+     * @param index Position in the sequence, counting from 0
+     * @return
+     */
+    public Tetrimino get(final long index) {
+        Validate.isTrue(index >= 0, "Tetriminos are dealt from position 0 onwards.");
+        if (randomizer_ == Randomizer.UNIFORM) {
+            return TETRIMINOS[random_.fork(index).nextInt(TETRIMINOS.length)];
+        }
+
+        /* Shuffle the Tetrimino's bag just far enough to place it; the first
+         positions of a Fisher-Yates shuffle are final as soon as they are
+         swapped into */
+        final RandomStream bagRandom = random_.fork(index / TETRIMINOS.length);
+        final int position = (int) (index % TETRIMINOS.length);
+        final int[] bag = {0, 1, 2, 3, 4, 5, 6};
+        for (int i = 0; i <= position; i++) {
+            final int swap = i + bagRandom.nextInt(bag.length - i);
+            final int tetrimino = bag[swap];
+            bag[swap] = bag[i];
+            bag[i] = tetrimino;
+        }
+        return TETRIMINOS[bag[position]];
+    }
+}
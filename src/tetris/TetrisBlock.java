@@ -2,12 +2,22 @@ package tetris;
 
 import java.util.Objects;
 import utils.Vector2;
+import utils.ZobristKeys;
 
 /**
  * Represent a single block of a Tetrimino
  * @author Ginger
  */
 public class TetrisBlock {
+    /*
+     * Tag of the namespace block keys are derived in. Every other feature
+     * hashed into a Tetris state (see TetrisState and TetrisRules) is keyed
+     * by a tag and a value, and a block's coordinates would otherwise be
+     * mistaken for one of those: the key of a block at (2, 7) was the key of
+     * an I in the second preview slot. No other feature may use this tag.
+     */
+    static final long BLOCK_FEATURE = 0;
+
     /* Flag indicating whether or not this block is safe to move downwards */
     private Vector2 position_;
     
@@ -27,6 +37,25 @@ public class TetrisBlock {
         return position_.getY();
     }
     
+    /**
+     * Zobrist key for a block at this position.
+     * @return 
+     */
+    public long getZobristKey() {
+        return getZobristKey(getX(), getY());
+    }
+
+    /**
+     * Zobrist key for a block at some position, apart from the keys of every
+     * other feature of a state.
+     * @param x
+     * @param y
+     * @return 
+     */
+    static long getZobristKey(final int x, final int y) {
+        return ZobristKeys.keyOf(ZobristKeys.keyOf(BLOCK_FEATURE, x), y);
+    }
+    
     public TetrisBlock shiftBlockByDelta(final Vector2 delta) {
         TetrisBlock newBlock = new TetrisBlock(this);
         newBlock.position_ = newBlock.position_.add(delta);
@@ -0,0 +1,101 @@
+package tetris;
+
+import core.Player;
+import core.Policy;
+import core.Rules;
+import core.StateHashing;
+import core.policies.RandomPolicy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import utils.RandomStream;
+import utils.Validate;
+
+/**
+ * Play seeded games of Tetris with every board engine and gravity, checking
+ * that they all play out exactly as the first: the same actions available,
+ * and the same states and hashes after every step.
+ */
+public class TetrisEngineTest {
+
+    private static final int GAMES = 20;
+    private static final int MAX_ACTIONS = 2000;
+
+    public static void main(String[] args) {
+        final Set<Player> players = Collections.singleton(new Player("Player"));
+        final List<TetrisRules> rules = new ArrayList<>();
+        final List<TetrisPlacementRules> placementRules = new ArrayList<>();
+        for (TetrisRules.BoardEngine engine : TetrisRules.BoardEngine.values()) {
+            for (TetrisRules.Gravity gravity : TetrisRules.Gravity.values()) {
+                rules.add(new TetrisRules(engine, gravity));
+                placementRules.add(new TetrisPlacementRules(new TetrisRules(engine, gravity)));
+            }
+        }
+
+        int actions = 0;
+        int points = 0;
+        for (int game = 0; game < GAMES; game++) {
+            actions += playAlike(rules, players, game, new RandomPolicy<>(game));
+            actions += playAlike(placementRules, players, game, TetrisUndoTest.lowestPlacement());
+            final TetrisPlacementRules first = placementRules.get(0);
+            points += (int) first.score(play(first, players, game,
+                    TetrisUndoTest.lowestPlacement()), players.iterator().next()).getValue();
+        }
+        System.out.println(String.format(
+                "%d engines and gravities agreed on %d actions over %d games (%d points scored).",
+                rules.size(), actions, 2 * GAMES, points));
+    }
+
+    /**
+     * Play the same game under every set of rules, step by step.
+     * @return Number of actions taken
+     */
+    private static <A, R extends Rules<TetrisState, A> & StateHashing<TetrisState>> int playAlike(
+            final List<R> rules, final Set<Player> players, final long seed,
+            final Policy<TetrisState, A> policy) {
+        final List<TetrisState> states = new ArrayList<>();
+        for (R rule : rules) {
+            states.add(rule.generateInitialState(players, new RandomStream(seed)));
+        }
+        final R first = rules.get(0);
+        final Player player = players.iterator().next();
+
+        int actions = 0;
+        while (!first.isTerminal(states.get(0)) && actions < MAX_ACTIONS) {
+            final Collection<A> available = first.getAvailableActions(player, states.get(0));
+            final A action = policy.chooseAction(states.get(0), available);
+            final int step = actions;
+            for (int i = 0; i < rules.size(); i++) {
+                Validate.isTrue(rules.get(i).getAvailableActions(player, states.get(i))
+                        .equals(available),
+                        () -> String.format("Available actions differ at step %d", step));
+                states.set(i, rules.get(i).transition(states.get(i), action));
+            }
+            for (int i = 1; i < rules.size(); i++) {
+                final R rule = rules.get(i);
+                Validate.isTrue(TetrisUndoTest.describe(states.get(i))
+                        .equals(TetrisUndoTest.describe(states.get(0))),
+                        () -> String.format("States differ after step %d", step));
+                Validate.isTrue(rule.stateHash(states.get(i)) == first.stateHash(states.get(0)),
+                        () -> String.format("Hashes differ after step %d", step));
+                Validate.isTrue(rule.isTerminal(states.get(i)) == first.isTerminal(states.get(0)),
+                        () -> String.format("Game ends differently after step %d", step));
+            }
+            actions++;
+        }
+        return actions;
+    }
+
+    private static <A> TetrisState play(final Rules<TetrisState, A> rules,
+            final Set<Player> players, final long seed, final Policy<TetrisState, A> policy) {
+        TetrisState state = rules.generateInitialState(players, new RandomStream(seed));
+        final Player player = players.iterator().next();
+        for (int actions = 0; !rules.isTerminal(state) && actions < MAX_ACTIONS; actions++) {
+            state = rules.transition(state, policy.chooseAction(state,
+                    rules.getAvailableActions(player, state)));
+        }
+        return state;
+    }
+}
@@ -0,0 +1,57 @@
+package tetris;
+
+/**
+ * Represent where the Tetrimino under player control comes to rest: its
+ * rotation state and the column and row of its origin (see
+ * TetriminoRotations). These are the actions of TetrisPlacementRules.
+ *
+ * @author Ginger
+ */
+public class TetrisPlacement {
+
+    private final int rotation_;
+    private final int column_;
+    private final int row_;
+
+    public TetrisPlacement(final int rotation, final int column, final int row) {
+        rotation_ = rotation;
+        column_ = column;
+        row_ = row;
+    }
+
+    /**
+     * Rotation state, counting clockwise turns from the spawn state, 0.
+     * @return
+     */
+    public int getRotation() {
+        return rotation_;
+    }
+
+    public int getColumn() {
+        return column_;
+    }
+
+    public int getRow() {
+        return row_;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (!(other instanceof TetrisPlacement)) {
+            return false;
+        }
+        final TetrisPlacement placement = (TetrisPlacement) other;
+        return rotation_ == placement.rotation_ && column_ == placement.column_
+                && row_ == placement.row_;
+    }
+
+    @Override
+    public int hashCode() {
+        return (rotation_ * 31 + column_) * 31 + row_;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("R%d@(%d, %d)", rotation_, column_, row_);
+    }
+}
@@ -0,0 +1,361 @@
+package tetris;
+
+import core.GameEventSink;
+import core.Player;
+import core.ReversibleRules;
+import core.Score;
+import core.StateHashing;
+import core.sinks.DiscardingEventSink;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import utils.ClosedRange;
+import utils.RandomStream;
+import utils.Validate;
+import utils.ValidationLevel;
+
+/**
+ * Tetris played one Tetrimino at a time: rather than nudging each Tetrimino
+ * along tick by tick, players choose where it comes to rest. The available
+ * placements are every resting place that the Tetrimino could reach from
+ * where it spawns by moving left, right or down or by turning clockwise (with
+ * wall kicks), ignoring the time any of that would take. Everything else
+ * (landing, line clears, scoring, the end of the game) follows TetrisRules.
+ *
+ * @author Ginger
+ */
+public class TetrisPlacementRules implements
+        ReversibleRules<TetrisState, TetrisPlacement, TetrisUndo>, StateHashing<TetrisState> {
+
+    /* Origins can lie a few cells off the board while every block is on it */
+    private static final int ORIGIN_MARGIN = 3;
+    /* Rows of wall around the board, enough for any block of a Tetrimino
+     whose origin is within ORIGIN_MARGIN of the board */
+    private static final int BOARD_PADDING = ORIGIN_MARGIN + 3;
+    /* Left, right and down, as changes in column and row */
+    private static final int[] MOVE_COLUMNS = {-1, 1, 0};
+    private static final int[] MOVE_ROWS = {0, 0, -1};
+
+    /* Blocks of each Tetrimino in each rotation state as row masks, with bit
+     x set for blocks x columns right of the origin, from the lowest row up:
+     [tetrimino][rotation][row] */
+    private static final int[][][] ROW_MASKS;
+    /* Row of the lowest blocks of each Tetrimino in each rotation state,
+     relative to the origin: [tetrimino][rotation] */
+    private static final int[][] LOWEST_ROWS;
+
+    static {
+        final int tetriminos = Tetrimino.values().length;
+        ROW_MASKS = new int[tetriminos][TetriminoRotations.NUMBER_OF_ROTATIONS][];
+        LOWEST_ROWS = new int[tetriminos][TetriminoRotations.NUMBER_OF_ROTATIONS];
+        for (Tetrimino tetrimino : Tetrimino.values()) {
+            for (int rotation = 0; rotation < TetriminoRotations.NUMBER_OF_ROTATIONS; rotation++) {
+                final int[] xOffsets = TetriminoRotations.getXOffsets(tetrimino, rotation);
+                final int[] yOffsets = TetriminoRotations.getYOffsets(tetrimino, rotation);
+                final int lowestRow = Arrays.stream(yOffsets).min().getAsInt();
+                final int highestRow = Arrays.stream(yOffsets).max().getAsInt();
+                final int[] rowMasks = new int[highestRow - lowestRow + 1];
+                for (int block = 0; block < xOffsets.length; block++) {
+                    Validate.isTrue(xOffsets[block] >= 0,
+                            "Blocks should never lie left of a Tetrimino's origin.");
+                    rowMasks[yOffsets[block] - lowestRow] |= 1 << xOffsets[block];
+                }
+                ROW_MASKS[tetrimino.ordinal()][rotation] = rowMasks;
+                LOWEST_ROWS[tetrimino.ordinal()][rotation] = lowestRow;
+            }
+        }
+    }
+
+    private final TetrisRules rules_;
+
+    public TetrisPlacementRules() {
+        this(DiscardingEventSink.INSTANCE);
+    }
+
+    /**
+     * @param events Sink to report spawned pieces and cleared lines to
+     */
+    public TetrisPlacementRules(final GameEventSink events) {
+        this(TetrisRules.Gravity.CASCADE, events);
+    }
+
+    /**
+     * @param gravity How shapes fall after rows are removed
+     * @param events Sink to report spawned pieces and cleared lines to
+     */
+    public TetrisPlacementRules(final TetrisRules.Gravity gravity, final GameEventSink events) {
+        this(new TetrisRules(TetrisRules.BoardEngine.ROW_MASKS, gravity, events));
+    }
+
+    /**
+     * @param rules Rules for everything but moving the Tetrimino under
+     * control, eg to deal from a different randomizer or show a longer
+     * preview; it reports the spawned pieces and cleared lines
+     */
+    public TetrisPlacementRules(final TetrisRules rules) {
+        Validate.notNull(rules, "Rules must not be null.");
+        rules_ = rules;
+    }
+
+    @Override
+    public TetrisState generateInitialState(final Set<Player> players) {
+        return rules_.generateInitialState(players);
+    }
+
+    @Override
+    public TetrisState generateInitialState(final Set<Player> players, final RandomStream random) {
+        return rules_.generateInitialState(players, random);
+    }
+
+    @Override
+    public TetrisState transition(final TetrisState state, final TetrisPlacement placement) {
+        final TetrisShape shape = getPlacedShape(state, placement);
+        final TetrisState newState = new TetrisState(state);
+        newState.incrementSimTime();
+        rules_.landShape(newState, shape);
+        return newState;
+    }
+
+    /**
+     * Lands the placed Tetrimino on the state itself; see TetrisRules.apply(...)
+     */
+    @Override
+    public TetrisUndo apply(final TetrisState state, final TetrisPlacement placement) {
+        final TetrisShape shape = getPlacedShape(state, placement);
+        final TetrisUndo undo = state.recordUndo();
+        state.incrementSimTime();
+        rules_.landShape(state, shape);
+        return undo;
+    }
+
+    @Override
+    public void undo(final TetrisState state, final TetrisUndo undo) {
+        rules_.undo(state, undo);
+    }
+
+    /**
+     * Validate a placement and build the Tetrimino it lands.
+     *
+     * @param state
+     * @param placement
+     * @return The Tetrimino under control, turned and moved to where it lands
+     */
+    private TetrisShape getPlacedShape(final TetrisState state, final TetrisPlacement placement) {
+        if (Validate.isEnabled(ValidationLevel.BOUNDARY)) {
+            Validate.notNull(state, "State must not be null.");
+            Validate.notNull(placement, "Placement must not be null.");
+            Validate.isFalse(state.isTerminal(),
+                    "Cannot make a move for a state that is already terminal.");
+            Validate.notNull(state.getActiveShape(), "No user-controllable shape found.");
+        }
+        final Tetrimino tetrimino = state.getActiveShape().getTetrimino();
+        final int rotation = placement.getRotation();
+        /* Placements from getAvailableActions(...) always come to rest, so
+         only check ones that may not have */
+        if (Validate.isEnabled(ValidationLevel.FULL)) {
+            Validate.isTrue(rotation >= 0 && rotation < TetriminoRotations.NUMBER_OF_ROTATIONS,
+                    "Rotation states run from 0 to 3.");
+            Validate.isFalse(fits(getPaddedBoard(state), ROW_MASKS[tetrimino.ordinal()][rotation],
+                    LOWEST_ROWS[tetrimino.ordinal()][rotation], placement.getColumn(),
+                    placement.getRow() - 1), "Tetriminos must be placed where they come to rest.");
+        }
+
+        return TetrisShape.getPlacedTetrimino(tetrimino, rotation, placement.getColumn(),
+                placement.getRow());
+    }
+
+    /**
+     * Find every resting place the Tetrimino under control can reach, with a
+     * breadth-first search over its rotation states and origins. Placements
+     * that cover the same cells (eg an O in any rotation state) are only
+     * returned once.
+     */
+    @Override
+    public Collection<TetrisPlacement> getAvailableActions(final Player player,
+            final TetrisState state) {
+        Validate.notNull(player, "Player must not be null.");
+        Validate.notNull(state, "State must not be null.");
+        Validate.isFalse(state.isTerminal(), "No actions available for a terminal state.");
+        final TetrisShape activeShape = state.getActiveShape();
+        Validate.notNull(activeShape, "No user-controllable shape found.");
+
+        final Tetrimino tetrimino = activeShape.getTetrimino();
+        final int[][] rowMasks = ROW_MASKS[tetrimino.ordinal()];
+        final int[] lowestRows = LOWEST_ROWS[tetrimino.ordinal()];
+        final long[] board = getPaddedBoard(state);
+        final int columns = state.getWidth() + 2 * ORIGIN_MARGIN;
+        final int rows = state.getHeight() + 2 * ORIGIN_MARGIN;
+        final boolean[] visited = new boolean[TetriminoRotations.NUMBER_OF_ROTATIONS * rows * columns];
+        /* Queue of (rotation, row + ORIGIN_MARGIN, column + ORIGIN_MARGIN), a byte each */
+        final int[] queue = new int[visited.length];
+        int head = 0;
+        int tail = 0;
+
+        final List<TetrisPlacement> placements = new ArrayList<TetrisPlacement>();
+        /* Hashes of the cells each placement covers; there are only a few dozen */
+        long[] placedCells = new long[64];
+
+        final int startRotation = activeShape.getRotation();
+        final int startRow = activeShape.getOriginY() + ORIGIN_MARGIN;
+        final int startColumn = activeShape.getOriginX() + ORIGIN_MARGIN;
+        visited[(startRotation * rows + startRow) * columns + startColumn] = true;
+        queue[tail++] = (startRotation << 16) | (startRow << 8) | startColumn;
+        while (head < tail) {
+            final int entry = queue[head++];
+            final int rotation = entry >>> 16;
+            final int row = ((entry >>> 8) & 0xFF) - ORIGIN_MARGIN;
+            final int column = (entry & 0xFF) - ORIGIN_MARGIN;
+
+            /* Move left, right and down */
+            for (int move = 0; move < 3; move++) {
+                final int nextColumn = column + MOVE_COLUMNS[move];
+                final int nextRow = row + MOVE_ROWS[move];
+                if (fits(board, rowMasks[rotation], lowestRows[rotation], nextColumn, nextRow)) {
+                    tail = enqueue(visited, queue, tail, rows, columns,
+                            rotation, nextRow, nextColumn);
+                } else if (move == 2) {
+                    /* Nowhere further to fall, so the Tetrimino could come to rest here */
+                    final long cells = cellsHash(tetrimino, rotation, column, row);
+                    boolean isPlaced = false;
+                    for (int i = 0; i < placements.size() && !isPlaced; i++) {
+                        isPlaced = placedCells[i] == cells;
+                    }
+                    if (!isPlaced) {
+                        if (placements.size() == placedCells.length) {
+                            placedCells = Arrays.copyOf(placedCells, 2 * placedCells.length);
+                        }
+                        placedCells[placements.size()] = cells;
+                        placements.add(new TetrisPlacement(rotation, column, row));
+                    }
+                }
+            }
+
+            /* Turn clockwise, taking the first wall kick that fits as TetrisRules does */
+            final int nextRotation = (rotation + 1) % TetriminoRotations.NUMBER_OF_ROTATIONS;
+            for (int[] kick : TetriminoRotations.getClockwiseKicks(tetrimino, rotation)) {
+                if (fits(board, rowMasks[nextRotation], lowestRows[nextRotation],
+                        column + kick[0], row + kick[1])) {
+                    tail = enqueue(visited, queue, tail, rows, columns,
+                            nextRotation, row + kick[1], column + kick[0]);
+                    break;
+                }
+            }
+        }
+        return placements;
+    }
+
+    /* Queue a position that the Tetrimino fits in, unless it was queued before */
+    private static int enqueue(final boolean[] visited, final int[] queue, final int tail,
+            final int rows, final int columns, final int rotation, final int row, final int column) {
+        final int index = (rotation * rows + row + ORIGIN_MARGIN) * columns + column + ORIGIN_MARGIN;
+        if (visited[index]) {
+            return tail;
+        }
+        visited[index] = true;
+        queue[tail] = (rotation << 16) | ((row + ORIGIN_MARGIN) << 8) | (column + ORIGIN_MARGIN);
+        return tail + 1;
+    }
+
+    /**
+     * The settled blocks of a board as row masks, with bit (x + ORIGIN_MARGIN)
+     * set if column x of a row is filled, surrounded by walls: every other
+     * bit is set, as is every bit of the rows below and above the board. A
+     * Tetrimino then fits wherever its blocks miss every set bit, so any
+     * origin within ORIGIN_MARGIN of the board can be tested without bounds
+     * checks.
+     *
+     * @param state
+     * @return Row masks, with row y at (y + BOARD_PADDING)
+     */
+    private static long[] getPaddedBoard(final TetrisState state) {
+        final long walls = ~(((1L << state.getWidth()) - 1) << ORIGIN_MARGIN);
+        final long[] board = new long[state.getHeight() + 2 * BOARD_PADDING];
+        Arrays.fill(board, ~0L);
+        for (int y = 0; y < state.getHeight(); y++) {
+            board[y + BOARD_PADDING] = walls | ((long) state.getRowMask(y) << ORIGIN_MARGIN);
+        }
+        return board;
+    }
+
+    /**
+     * Determine whether a Tetrimino lies on the board, clear of settled
+     * blocks, given its blocks (as ROW_MASKS and LOWEST_ROWS hold them for
+     * one rotation state) and its origin, which must lie within ORIGIN_MARGIN
+     * of the board
+     */
+    private static boolean fits(final long[] board, final int[] rowMasks, final int lowestRow,
+            final int column, final int row) {
+        final int firstRow = row + lowestRow + BOARD_PADDING;
+        final int shift = column + ORIGIN_MARGIN;
+        if (shift < 0) {
+            /* Every block would be left of the walls */
+            return false;
+        }
+        for (int i = 0; i < rowMasks.length; i++) {
+            if ((board[firstRow + i] & ((long) rowMasks[i] << shift)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* Zobrist hash of the cells a Tetrimino covers, to tell placements apart */
+    private static long cellsHash(final Tetrimino tetrimino, final int rotation,
+            final int column, final int row) {
+        final int[] xOffsets = TetriminoRotations.getXOffsets(tetrimino, rotation);
+        final int[] yOffsets = TetriminoRotations.getYOffsets(tetrimino, rotation);
+        long hash = 0L;
+        for (int block = 0; block < xOffsets.length; block++) {
+            hash ^= TetrisBlock.getZobristKey(column + xOffsets[block], row + yOffsets[block]);
+        }
+        return hash;
+    }
+
+    @Override
+    public boolean isTerminal(final TetrisState state) {
+        return rules_.isTerminal(state);
+    }
+
+    @Override
+    public Player getCurrentPlayer(final TetrisState state) {
+        return rules_.getCurrentPlayer(state);
+    }
+
+    @Override
+    public TetrisState filterState(final TetrisState state, final Player player) {
+        return rules_.filterState(state, player);
+    }
+
+    @Override
+    public Score score(final TetrisState state, final Player player) {
+        return rules_.score(state, player);
+    }
+
+    @Override
+    public Map<Player, Score> scores(final TetrisState state) {
+        return rules_.scores(state);
+    }
+
+    @Override
+    public ClosedRange<Integer> numberOfPlayers() {
+        return rules_.numberOfPlayers();
+    }
+
+    @Override
+    public TetrisState copyState(final TetrisState state) {
+        return rules_.copyState(state);
+    }
+
+    @Override
+    public TetrisState readOnlyView(final TetrisState state) {
+        return rules_.readOnlyView(state);
+    }
+
+    @Override
+    public long stateHash(final TetrisState state) {
+        return rules_.stateHash(state);
+    }
+}
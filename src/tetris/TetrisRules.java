@@ -1,26 +1,37 @@
 package tetris;
 
+import core.GameEvent;
+import core.GameEventSink;
 import core.Player;
-import core.Rules;
+import core.PlayerIndex;
+import core.ReversibleRules;
 import core.Score;
+import core.StateHashing;
+import core.sinks.DiscardingEventSink;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import utils.ClosedRange;
+import utils.RandomStream;
 import utils.Validate;
+import utils.ValidationLevel;
 import utils.Vector2;
+import utils.ZobristKeys;
 
 /**
  *
  * @author Ginger Hold the logic for a basic game of Tetris.
  */
-public class TetrisRules implements Rules<TetrisState, TetrisAction> {
+public class TetrisRules implements ReversibleRules<TetrisState, TetrisAction, TetrisUndo>,
+        StateHashing<TetrisState> {
 
     private final int POINTS_PER_ROW = 100;
     private final int DEFAULT_HEIGHT = 22;
@@ -29,67 +40,262 @@ public class TetrisRules implements Rules<TetrisState, TetrisAction> {
     private final int DESCENT_RATE = 2;
     /* Origin for spawning new Tetriminos */
     private final Vector2 tetriminoOrigin = new Vector2(DEFAULT_WIDTH / 2 - 1, DEFAULT_HEIGHT - 2);
+    /* Distinguish when pieces next descend from the features of the
+     position, which TetrisState hashes */
+    private static final long DESCENT_PHASE_FEATURE = 3;
+
+    /**
+     * How the rules look up the blocks that have come to rest on a board
+     */
+    public enum BoardEngine {
+        /* Look up the settled shape covering each cell */
+        SHAPE_CELLS,
+        /*
+         * Test bits in one mask per row: collisions are ANDs with a row's mask,
+         * and a row is full when its mask equals the full-row mask. Masks are
+         * much smaller than the cell lookup, so cheaper to build.
+         */
+        ROW_MASKS
+    }
+
+    /**
+     * How settled shapes fall once rows have been removed from under them
+     */
+    public enum Gravity {
+        /* Drop every shape as far as it can go, over and over, until none of
+         them moves; each round looks at every shape again */
+        NAIVE,
+        /*
+         * Settle the shapes in one pass from the bottom up: a shape falls as
+         * far as the shapes beneath it do, plus the gap between them, so each
+         * shape's fall is worked out once. Shapes end up exactly where NAIVE
+         * leaves them.
+         */
+        CASCADE
+    }
+
+    private final BoardEngine engine_;
+    private final Gravity gravity_;
+    private final TetriminoSequence.Randomizer randomizer_;
+    private final int previewLength_;
+    /* Where spawns and cleared lines are reported; actions and game overs
+     are left to the automator playing the game */
+    private final GameEventSink events_;
+
+    public TetrisRules() {
+        this(BoardEngine.ROW_MASKS);
+    }
+
+    /**
+     * @param engine How settled blocks are looked up; the game plays out the
+     * same either way
+     */
+    public TetrisRules(final BoardEngine engine) {
+        this(engine, DiscardingEventSink.INSTANCE);
+    }
+
+    /**
+     * @param engine How settled blocks are looked up
+     * @param events Sink to report spawned pieces and cleared lines to, eg
+     * an AsyncLoggingEventSink to follow a game as it is played; give the
+     * automator the same sink for its actions and game overs
+     */
+    public TetrisRules(final BoardEngine engine, final GameEventSink events) {
+        this(engine, Gravity.CASCADE, events);
+    }
+
+    /**
+     * @param engine How settled blocks are looked up
+     * @param gravity How shapes fall after rows are removed; the game plays
+     * out the same either way
+     */
+    public TetrisRules(final BoardEngine engine, final Gravity gravity) {
+        this(engine, gravity, DiscardingEventSink.INSTANCE);
+    }
+
+    /**
+     * @param engine How settled blocks are looked up
+     * @param gravity How shapes fall after rows are removed
+     * @param events Sink to report spawned pieces and cleared lines to
+     */
+    public TetrisRules(final BoardEngine engine, final Gravity gravity,
+            final GameEventSink events) {
+        this(engine, gravity, TetriminoSequence.Randomizer.SEVEN_BAG, 1, events);
+    }
+
+    /**
+     * @param randomizer How Tetriminos are picked
+     * @param previewLength Number of upcoming Tetriminos players can see
+     */
+    public TetrisRules(final TetriminoSequence.Randomizer randomizer, final int previewLength) {
+        this(BoardEngine.ROW_MASKS, Gravity.CASCADE, randomizer, previewLength,
+                DiscardingEventSink.INSTANCE);
+    }
+
+    /**
+     * @param engine How settled blocks are looked up
+     * @param gravity How shapes fall after rows are removed
+     * @param randomizer How Tetriminos are picked
+     * @param previewLength Number of upcoming Tetriminos players can see, at
+     * least 1
+     * @param events Sink to report spawned pieces and cleared lines to
+     */
+    public TetrisRules(final BoardEngine engine, final Gravity gravity,
+            final TetriminoSequence.Randomizer randomizer, final int previewLength,
+            final GameEventSink events) {
+        Validate.notNull(engine, "Board engine must not be null.");
+        Validate.notNull(gravity, "Gravity must not be null.");
+        Validate.notNull(randomizer, "Randomizer must not be null.");
+        Validate.isTrue(previewLength > 0, "Players must be able to see the next Tetrimino.");
+        Validate.notNull(events, "Event sink must not be null.");
+        engine_ = engine;
+        gravity_ = gravity;
+        randomizer_ = randomizer;
+        previewLength_ = previewLength;
+        events_ = events;
+    }
 
     @Override
     /* Generate an initial state with no shapes */
     public TetrisState generateInitialState(final Set<Player> players) {
+        return generateInitialState(players, new RandomStream());
+    }
+
+    @Override
+    /* Generate an initial state with no shapes, dealing Tetriminos in a sequence
+     fixed by the stream */
+    public TetrisState generateInitialState(final Set<Player> players, final RandomStream random) {
         Validate.isTrue(players.size() == 1, "Exactly one person plays Tetris!");
-        final TetrisState state = new TetrisState(players, DEFAULT_WIDTH, DEFAULT_HEIGHT);
+        final TetrisState state = new TetrisState(players, DEFAULT_WIDTH, DEFAULT_HEIGHT,
+                new TetriminoSequence(randomizer_, random.split()), previewLength_);
         /* Add the first Tetrimino */
-        state.shapes.add(TetrisShape.getShapeFromTetrimino(state.popTetrimino(), tetriminoOrigin));
+        spawnTetrimino(state);
+        state.setHash(hashOf(state));
         return state;
     }
 
     @Override
     public TetrisState transition(final TetrisState state, final TetrisAction action) {
-        /* Validation */
+        validateMove(state, action);
+
+        /* Copies share every shape, so only what changes below is allocated */
+        final TetrisState newState = new TetrisState(state);
+        step(newState, action);
+        return newState;
+    }
+
+    /**
+     * Steps a state in place, recording only the fields the step replaces;
+     * everything they refer to is shared with the state rather than copied.
+     */
+    @Override
+    public TetrisUndo apply(final TetrisState state, final TetrisAction action) {
+        validateMove(state, action);
+        final TetrisUndo undo = state.recordUndo();
+        step(state, action);
+        return undo;
+    }
+
+    @Override
+    public void undo(final TetrisState state, final TetrisUndo undo) {
         Validate.notNull(state, "State must not be null.");
-        Validate.notNull(action, "Action must not be null.");
-        Validate.isFalse(state.isTerminal(),
-                "Cannot make a move for a state that is already terminal.");
-        System.out.printf("Taking action: %s\n", action.toString());
+        Validate.notNull(undo, "Cannot undo a step without its undo token.");
+        state.undo(undo);
+    }
+
+    private void validateMove(final TetrisState state, final TetrisAction action) {
+        if (Validate.isEnabled(ValidationLevel.BOUNDARY)) {
+            Validate.notNull(state, "State must not be null.");
+            Validate.notNull(action, "Action must not be null.");
+            Validate.isFalse(state.isTerminal(),
+                    "Cannot make a move for a state that is already terminal.");
+        }
+    }
 
-        TetrisState newState = new TetrisState(state);
+    /**
+     * Apply an action and the passing of time to a state, in place.
+     *
+     * @param newState
+     * @param action
+     */
+    private void step(final TetrisState newState, final TetrisAction action) {
+        final Set<TetrisShape> settledShapes = newState.getSettledShapes();
         newState.incrementSimTime();
 
         /* Apply the user action to the currently controlled Tetrimino */
-        newState = applyMove(newState, action);
+        applyMove(newState, action);
 
-        /* If appropriate, move falling pieces or spawn a new Tetrimino */
+        /* If appropriate, move the falling Tetrimino or spawn a new one */
         /* Updates occur either on a timed delay, or after the user has dropped
          their Tetrimino, forcing an expedient update */
-        if (newState.getGameTime() % DESCENT_RATE == 0
-                || newState.shapes.stream().allMatch((shape) -> !shape.isControllable())) {
-            /* Identify shapes that are falling */
-            Set<TetrisShape> fallingShapes = getFallingShapes(newState);
-
-            /* If no shapes are falling, add a Tetrimino; otherwise drop falling shapes */
-            final Set<TetrisShape> newShapes = (fallingShapes.isEmpty())
-                    ? new HashSet<TetrisShape>(Arrays.asList(
-                                    TetrisShape.getShapeFromTetrimino(newState.popTetrimino(), tetriminoOrigin)
-                            ))
-                    /* Drop falling shapes */
-                    : applyDescent(fallingShapes);
-            Validate.notEmpty(newShapes,
-                    "An update should always create either a new Tetrimino or a newly-descended Tetrimino.");
-
-            /* Enumerate stationary shapes (perhaps blocks that have just landed!) */
-            Set<TetrisShape> stationaryShapes = newState.shapes.stream()
-                    .filter((shape) -> !fallingShapes.contains(shape))
-                    .collect(Collectors.toSet());
-            /* Ensure stationary shapes cannot be controlled by players */
-            stationaryShapes.stream().forEach((shape) -> shape.makeUncontrollable());
-
-            /* Update shapes in the state */
-            newState.shapes = Stream.concat(
-                    newShapes.stream(),
-                    stationaryShapes.stream()
-            ).collect(Collectors.toSet());
+        if (newState.getGameTime() % DESCENT_RATE == 0 || newState.getActiveShape() == null) {
+            /* Settled shapes are always at rest (gravity is applied whenever
+             rows are removed), so only the controlled shape can be falling */
+            final TetrisShape activeShape = newState.getActiveShape();
+            if (activeShape != null && isFalling(newState, activeShape)) {
+                newState.setActiveShape(activeShape.getDescended());
+            } else {
+                /* Stationary shapes (perhaps blocks that have just landed!)
+                 can no longer be controlled by players */
+                if (activeShape != null) {
+                    settleShape(newState, activeShape);
+                }
+                spawnTetrimino(newState);
+            }
+        }
+
+        /* Check for completed rows, removing and scoring appropriately; rows
+         can only have filled if something came to rest */
+        if (newState.getSettledShapes() != settledShapes) {
+            applyRowRemoval(newState);
+        }
+        newState.setHash(hashOf(newState));
+    }
+
+    /**
+     * Bring a Tetrimino to rest exactly where it is, spawn the next one, and
+     * remove and score any rows it completed, all in place. For rules that
+     * move Tetriminos straight to where they land (see TetrisPlacementRules).
+     *
+     * @param state
+     * @param shape The Tetrimino to land, which must fit on the board
+     */
+    void landShape(final TetrisState state, final TetrisShape shape) {
+        if (Validate.isEnabled(ValidationLevel.FULL)) {
+            Validate.isTrue(isShapeValid(state, shape),
+                    "Shapes must land on the board, clear of other shapes.");
         }
+        settleShape(state, shape);
+        spawnTetrimino(state);
+        applyRowRemoval(state);
+        state.setHash(hashOf(state));
+    }
 
-        /* Check for completed rows, removing and scoring appropriately; 
-         then collect the resulting state */
-        return applyRowRemoval(newState);
+    /**
+     * Report an event of a game to the sink, if anyone is listening. Only
+     * events particular to Tetris are reported here: actions and game overs
+     * are the automator's to report, so that they are reported once, and not
+     * for every state a search policy looks at.
+     *
+     * @param type
+     * @param state The state the event happened in
+     * @param detail
+     */
+    void emit(final GameEvent.Type type, final TetrisState state, final Object detail) {
+        if (events_.isListening()) {
+            events_.accept(new GameEvent(type, getCurrentPlayer(state), detail));
+        }
+    }
+
+    /**
+     * Put the next Tetrimino under control at the top of the board.
+     *
+     * @param state
+     */
+    private void spawnTetrimino(final TetrisState state) {
+        final Tetrimino tetrimino = state.popTetrimino();
+        state.setActiveShape(TetrisShape.getShapeFromTetrimino(tetrimino, tetriminoOrigin));
+        emit(GameEvent.Type.PIECE_SPAWNED, state, tetrimino);
     }
 
     @Override
@@ -103,11 +309,14 @@ public class TetrisRules implements Rules<TetrisState, TetrisAction> {
         Validate.notNull(state, "State must not be null.");
         Validate.isFalse(state.isTerminal(), "No actions available for a terminal state.");
 
-        /* Apply each transformation in turn */
+        /* Apply each transformation in turn to the controlled shape alone;
+         nothing else on the board moves in response to an action */
+        final TetrisShape shape = state.getActiveShape();
         return Arrays.asList(TetrisAction.values()).stream()
-                /* Retain actions that result in valid states */
+                /* Retain actions that result in valid shapes */
                 .filter((action) -> {
-                    return isStateValid(applyMove(state, action));
+                    return action == TetrisAction.WAIT
+                            || isShapeValid(state, getMovedShape(state, shape, action));
                 }).collect(Collectors.toList());
     }
 
@@ -115,16 +324,19 @@ public class TetrisRules implements Rules<TetrisState, TetrisAction> {
     public boolean isTerminal(final TetrisState state) {
         /* If any blocks have come to rest in the two "hidden" rows at the top
          of the board, we consider the player to have lost */
-        return (state.shapes.stream()
+        if (engine_ == BoardEngine.ROW_MASKS) {
+            return state.getRowMask(DEFAULT_HEIGHT - 2) != 0
+                    || state.getRowMask(DEFAULT_HEIGHT - 1) != 0;
+        }
+        return (state.getSettledShapes().stream()
                 .anyMatch((shape) -> (shape.getAllBlocks().stream()
-                        .anyMatch((block) -> (block.getY() >= DEFAULT_HEIGHT - 2
-                                && !shape.isControllable())
-                        ))));
+                        .anyMatch((block) -> (block.getY() >= DEFAULT_HEIGHT - 2))
+                        )));
     }
 
     @Override
     public Player getCurrentPlayer(final TetrisState state) {
-        List<Player> players = new ArrayList(state.getPlayers());
+        final PlayerIndex players = state.getPlayerIndex();
         Validate.isTrue(players.size() == 1, "Exactly one person plays Tetris.");
         return players.get(0);
     }
@@ -142,9 +354,7 @@ public class TetrisRules implements Rules<TetrisState, TetrisAction> {
 
     @Override
     public Map<Player, Score> scores(TetrisState state) {
-        return state.getPlayers().stream()
-                .collect(Collectors.toMap(
-                                (player) -> player, (player) -> score(state, player)));
+        return state.getPlayerScores();
     }
 
     @Override
@@ -153,73 +363,81 @@ public class TetrisRules implements Rules<TetrisState, TetrisAction> {
     }
 
     /**
-     * Verify a state contains only valid shapes.
+     * Transitions step a copy of the state, so a state can be viewed as it is
+     */
+    @Override
+    public TetrisState readOnlyView(final TetrisState state) {
+        Validate.notNull(state, "Cannot view a null state.");
+        return state;
+    }
+
+    @Override
+    public long stateHash(final TetrisState state) {
+        Validate.notNull(state, "Cannot hash a null state.");
+        return state.getHash();
+    }
+
+    /**
+     * Compute the Zobrist hash of a state. The state keeps the hash of its
+     * position up to date as it changes, so this costs one XOR rather than
+     * one per shape.
      *
      * @param state
      * @return
      */
-    private boolean isStateValid(final TetrisState state) {
-        TetrisShape[][] board = new TetrisShape[state.getWidth()][state.getHeight()];
+    private long hashOf(final TetrisState state) {
+        return state.getPositionHash()
+                ^ ZobristKeys.keyOf(DESCENT_PHASE_FEATURE, state.getGameTime() % DESCENT_RATE);
+    }
 
-        /* Store references to this shape, at the positions the shape's blocks */
-        for (TetrisShape shape : state.shapes) {
-            for (TetrisBlock block : shape.getAllBlocks()) {
-                /* Check for invalid blocks */
-                if (!state.isBlockOnBoard(block)) {
-                    return false;
-                }
-                /* Check for collisions */
-                if (board[block.getX()][block.getY()] != null) {
-                    return false;
-                } else {
-                    board[block.getX()][block.getY()] = shape;
-                }
+    /**
+     * Verify a shape lies on the board without colliding with settled shapes.
+     *
+     * @param state
+     * @param shape
+     * @return
+     */
+    private boolean isShapeValid(final TetrisState state, final TetrisShape shape) {
+        for (TetrisBlock block : shape.getAllBlocks()) {
+            /* Check for invalid blocks */
+            if (!state.isBlockOnBoard(block)) {
+                return false;
+            }
+            /* Check for collisions */
+            if (isSettledBlockAt(state, block.getX(), block.getY())) {
+                return false;
             }
         }
-        /* If all states could be placed on the board without incident, we 
-         declare this state valid */
         return true;
     }
 
     /**
-     * Apply the row-removal and scoring algorithm to a Tetris state
+     * Apply the row-removal and scoring algorithm to a Tetris state, in place
      *
      * @param state
-     * @return
      */
-    private TetrisState applyRowRemoval(final TetrisState state) {
+    private void applyRowRemoval(final TetrisState state) {
         Validate.notNull(state, "Cannot remove rows from a null state.");
 
-        /* Extract shapes not under user control, as shapes still in motion 
-         cannot be included in row removal */
-        final TetrisState scorableState = new TetrisState(state);
-        scorableState.shapes = state.shapes.stream()
-                .filter((shape) -> !shape.isControllable())
-                .collect(Collectors.toSet());
-
-        /* Idenfity full rows */
-        List<Integer> fullRows = findFullRows(scorableState);
+        /* Idenfity full rows; shapes still in motion cannot be included in
+         row removal, and are not among the settled shapes anyway */
+        List<Integer> fullRows = findFullRows(state);
 
         while (!fullRows.isEmpty()) {
-            /* Remove full rows, drop all shapes and save the result to the new state */
-            scorableState.shapes = getShapesWithRowsRemoved(scorableState.shapes, fullRows);
-            scorableState.shapes = applyGravityToState(scorableState).shapes;
+            /* Remove full rows, drop all shapes and save the result to the state */
+            state.setSettledShapes(getShapesWithRowsRemoved(state.getSettledShapes(), fullRows));
+            applyGravityToState(state);
 
             /* Update the player's score based on rows removed */
             // TODO: Use the Tetris algorithm for scoring, which takes multiple
             // sequential scores into account
             int score = POINTS_PER_ROW * fullRows.size();
-            scorableState.incrementPlayerScore(getCurrentPlayer(state), score);
+            state.incrementPlayerScore(getCurrentPlayer(state), score);
+            emit(GameEvent.Type.LINES_CLEARED, state, fullRows.size());
 
             /* Rebuild the list of full rows */
-            fullRows = findFullRows(scorableState);
+            fullRows = findFullRows(state);
         }
-
-        /* Add the user-controllable shapes back into the state */
-        scorableState.shapes.addAll(state.shapes.stream()
-                .filter((shape) -> shape.isControllable())
-                .collect(Collectors.toSet()));
-        return scorableState;
     }
 
     /**
@@ -231,48 +449,68 @@ public class TetrisRules implements Rules<TetrisState, TetrisAction> {
      * @return
      */
     private Set<TetrisShape> getShapesWithRowsRemoved(final Set<TetrisShape> shapes, final List<Integer> rows) {
-        return new HashSet<>(shapes).stream()
-                /* Map this stream to a stream of the same shapes, with the blocks
-                 at getY() in row filtered out */
-                .map((shape) -> {
-                    final TetrisShape newShape = new TetrisShape(
-                            shape.getAllBlocks().stream()
-                            .filter((block) -> !rows.contains(block.getY()))
-                            .collect(Collectors.toSet())
-                    );
-                    return newShape;
-                    /* Then map the result, allowing completely empty shapes to
-                     expire and shapes with disconnected pieces to split */
-                })
-                .filter((shape) -> !shape.getAllBlocks().isEmpty())
-                .flatMap((shape) -> shape.splitShape().stream())
+        return shapes.stream()
+                /* Only shapes crossing the rows lose blocks (and perhaps
+                 split); the rest are kept as they are */
+                .flatMap((shape) -> shape.getAllBlocks().stream()
+                        .anyMatch((block) -> rows.contains(block.getY()))
+                        ? removeRowsFromShape(shape, rows).stream() : Stream.of(shape))
                 .collect(Collectors.toSet());
     }
 
+    /**
+     * Return the connected pieces of a shape left over when any blocks in a
+     * set of rows are removed.
+     *
+     * @param shape
+     * @param rows
+     * @return
+     */
+    private Set<TetrisShape> removeRowsFromShape(final TetrisShape shape, final List<Integer> rows) {
+        final Set<TetrisBlock> blocks = shape.getAllBlocks().stream()
+                .filter((block) -> !rows.contains(block.getY()))
+                .collect(Collectors.toSet());
+        /* Allow completely empty shapes to expire and shapes with
+         disconnected pieces to split */
+        if (blocks.isEmpty()) {
+            return Collections.emptySet();
+        }
+        return new TetrisShape(blocks).splitShape();
+    }
+
     /**
      * Identify which rows of a TetrisState's board are "full", meaning they
-     * have values at all x-coordinates (columns) for a given y-coordinate (row)
+     * have settled blocks at all x-coordinates (columns) for a given
+     * y-coordinate (row)
      *
-     * @param board
+     * @param state
      * @return
      */
     private List<Integer> findFullRows(final TetrisState state) {
         Validate.notNull(state, "State must not be null.");
-        /* Translate the state to a 2D board array for easier comparisons */
-        final TetrisShape[][] board = getBoardFromState(state);
-        Validate.isTrue(board.length > 0 && board[0].length > 0, "Board must contain rows and columns.");
-        final int width = board.length;
-        final int height = board[0].length;
+        final int width = state.getWidth();
+        final int height = state.getHeight();
+        Validate.isTrue(width > 0 && height > 0, "Board must contain rows and columns.");
 
         List<Integer> fullRows = new ArrayList<Integer>();
 
         /* Iterate numerically (yuk) because we need to check board(ii, :),
          which precludes efficiently streaming the board data since the relevant
          values are not contiguous */
+        if (engine_ == BoardEngine.ROW_MASKS) {
+            final int fullRowMask = state.getFullRowMask();
+            for (int row = 0; row < height; row++) {
+                if (state.getRowMask(row) == fullRowMask) {
+                    fullRows.add(row);
+                }
+            }
+            return fullRows;
+        }
+
         for (int row = 0; row < height; row++) {
             boolean hasFoundEmpty = false;
             for (int column = 0; column < width; column++) {
-                if (board[column][row] == null) {
+                if (state.getSettledShapeAt(column, row) == null) {
                     hasFoundEmpty = true;
                     break;
                 }
@@ -285,34 +523,42 @@ public class TetrisRules implements Rules<TetrisState, TetrisAction> {
     }
 
     /**
-     * Apply a movement to the user-controllable Tetrimino on the board.
+     * Apply a movement to the user-controllable Tetrimino on the board, in
+     * place. A dropped Tetrimino comes to rest immediately.
      *
      * @param state
      * @param action
-     * @return A new state, with only the user-controllable shape transformed.
      */
-    private TetrisState applyMove(final TetrisState state, final TetrisAction action) {
+    private void applyMove(final TetrisState state, final TetrisAction action) {
         Validate.notNull(state, "Cannot apply moves to a null state.");
         Validate.notNull(action, "Cannot apply null actions.");
         
         /* Short-circuit operation in case the action is WAIT */
         if (action == TetrisAction.WAIT) {
-            return state;
+            return;
         }
-        
-        /* Identify and remove the user-controllable shape */
-        final TetrisState newState = new TetrisState(state);
-        final List<TetrisShape> controllableShapes = newState.shapes.stream()
-                .filter((shape) -> shape.isControllable())
-                /* Could use findAny(), but this provides a convenient place to
-                 check our assumptions */
-                .collect(Collectors.toList());
-        Validate.notEmpty(controllableShapes, "No user-controllable shape found.");
-        Validate.isTrue(controllableShapes.size() == 1, "Multiple user-controllable shapes found.");
-
-        /* Extract the shape for convenient transformation */
-        newState.shapes.removeAll(controllableShapes);
-        final TetrisShape shape = controllableShapes.get(0);
+
+        final TetrisShape newShape = getMovedShape(state, state.getActiveShape(), action);
+        if (action == TetrisAction.DROP) {
+            state.setActiveShape(null);
+            settleShape(state, newShape);
+        } else {
+            state.setActiveShape(newShape);
+        }
+    }
+
+    /**
+     * Get a version of the user-controllable shape, transformed according to
+     * an action. The state and shape are not modified.
+     *
+     * @param state
+     * @param shape
+     * @param action
+     * @return The transformed shape
+     */
+    private TetrisShape getMovedShape(final TetrisState state, final TetrisShape shape,
+            final TetrisAction action) {
+        Validate.notNull(shape, "No user-controllable shape found.");
 
         /* Transform the shape according to the action */
         final TetrisShape newShape;
@@ -325,26 +571,56 @@ public class TetrisRules implements Rules<TetrisState, TetrisAction> {
                 break;
             case ROTATE:
                 /* Only clockwise rotation is supported */
-                newShape = shape.getRotatedClockwise();
+                newShape = getRotatedWithWallKicks(state, shape);
                 break;
             case DROP:
-                newShape = applyDropToShape(state, shape);
-                newShape.makeUncontrollable();
+                newShape = applyDropToShape(state, shape).getUncontrollable();
+                break;
+            case WAIT:
+                newShape = shape;
                 break;
             default:
                 newShape = null;
         }
 
-        /* Add the shape back into the state */
         Validate.notNull(newShape, "Shape user actions should never create a null shape on the board.");
-        newState.shapes.add(newShape);
+        return newShape;
+    }
 
-        return newState;
+    /**
+     * Turn a shape clockwise, trying each of its wall kicks in turn until the
+     * turned shape fits on the board. The state and shape are not modified.
+     *
+     * @param state
+     * @param shape
+     * @return The first turned shape that fits, or the unkicked turn if none do
+     */
+    private TetrisShape getRotatedWithWallKicks(final TetrisState state, final TetrisShape shape) {
+        final int kicks = shape.getNumberOfWallKicks();
+        for (int kick = 0; kick < kicks; kick++) {
+            final TetrisShape rotatedShape = shape.getRotatedClockwise(kick);
+            if (isShapeValid(state, rotatedShape)) {
+                return rotatedShape;
+            }
+        }
+        return shape.getRotatedClockwise();
+    }
+
+    /**
+     * Bring a shape to rest among the settled shapes, which can no longer be
+     * controlled by players.
+     *
+     * @param state
+     * @param shape
+     */
+    private void settleShape(final TetrisState state, final TetrisShape shape) {
+        state.addSettledShape(shape.getUncontrollable());
     }
 
     /**
      * Get a version of this shape, dropped as far as possible given the
-     * provided state. The original state and shape are not modified.
+     * provided state's settled shapes. The original state and shape are not
+     * modified.
      *
      * @param shape
      * @return
@@ -353,7 +629,6 @@ public class TetrisRules implements Rules<TetrisState, TetrisAction> {
         Validate.notEmpty(shape.getAllBlocks(), "Cannot drop an empty shape.");
         /* Find the distance between this shape's blocks and the ground, and
          move a safe distance downard */
-        final TetrisShape[][] board = getBoardFromState(state);
         final int safeDistance = shape.getAllBlocks().stream()
                 /* Measure from each block down to the bottom of the
                  board or another block */
@@ -362,110 +637,182 @@ public class TetrisRules implements Rules<TetrisState, TetrisAction> {
                     int row = block.getY();
                     /* Iterate downwards, looking for the edge of the 
                      board or another block */
-                    while (row > 0
-                    && (board[column][row - 1] == null
-                    || board[column][row - 1] == shape)) {
+                    while (row > 0 && !isBlockedBy(state, shape, column, row - 1)) {
                         row--;
                     }
                     return block.getY() - row;
                 }).min(Integer::compareTo).get();
 
-        return shape.getDroppedByDelta(safeDistance);
+        /* Shapes are immutable, so a shape that can't move can be reused */
+        return (safeDistance == 0) ? shape : shape.getDroppedByDelta(safeDistance);
     }
 
     /**
-     * Move all shapes down a single block. Does not handle row removal.
+     * Drop all settled shapes to the bottom of the board, in place.
      *
-     * @param shapes Shapes to be moved.
-     * @return All shapes, moved downwards by a single block.
+     * @param state
      */
-    private Set<TetrisShape> applyDescent(final Set<TetrisShape> shapes) {
-        /* Drop shapes that have not landed */
-        return shapes.stream()
-                .map(shape -> shape.getDescended())
-                .collect(Collectors.toSet());
+    private void applyGravityToState(final TetrisState state) {
+        Validate.notNull(state, "State must not be null.");
+
+        if (gravity_ == Gravity.NAIVE || !applyCascadeToState(state)) {
+            applyNaiveGravityToState(state);
+        }
     }
 
     /**
-     * Return a copy of this state, with all states dropped to the bottom of the
-     * board.
+     * Drop every settled shape as far as it can go, until none of them moves.
      *
-     * @param shapes
-     * @return
+     * @param state
      */
-    private TetrisState applyGravityToState(final TetrisState state) {
-        Validate.notNull(state, "State must not be null.");
-
-        // TODO: There must be a way to sort the shapes so that the lowest
-        // uninhibited shapes can drop first, instead of this hideous while 
-        // loop... but I'm not going to try to find it right now
-        final TetrisState newState = new TetrisState(state);
-        Set<TetrisShape> oldShapes = null;
-        while (!newState.shapes.equals(oldShapes)) {
-            oldShapes = newState.shapes;
-            newState.shapes = newState.shapes.stream()
-                    .map((shape) -> applyDropToShape(newState, shape))
+    private void applyNaiveGravityToState(final TetrisState state) {
+        while (true) {
+            final Set<TetrisShape> droppedShapes = state.getSettledShapes().stream()
+                    .map((shape) -> applyDropToShape(state, shape))
                     .collect(Collectors.toSet());
+            /* Compare from the hashed set; the settled shapes are a list */
+            if (droppedShapes.equals(state.getSettledShapes())) {
+                return;
+            }
+            state.setSettledShapes(droppedShapes);
         }
-
-        return newState;
     }
 
     /**
-     * Manufacture a 2D board from a state's shapes.
+     * Drop every settled shape to where it comes to rest, in a single pass.
+     * Shapes never pass through one another, so the first block of another
+     * shape beneath each block stays beneath it: a shape falls as far as the
+     * least of the gaps beneath its blocks, each plus however far the shape
+     * under that gap falls.
      *
-     * @param shapes
-     * @return
+     * @param state
+     * @return False, leaving the state alone, if some shapes rest on each
+     * other in a cycle, which only the naive algorithm settles
      */
-    private TetrisShape[][] getBoardFromState(final TetrisState state) {
-        TetrisShape[][] board = new TetrisShape[state.getWidth()][state.getHeight()];
+    private boolean applyCascadeToState(final TetrisState state) {
+        final Set<TetrisShape> shapes = state.getSettledShapes();
+        final Map<TetrisShape, Integer> drops = new IdentityHashMap<>(2 * shapes.size());
+        for (TetrisShape shape : shapes) {
+            if (findCascadeDrop(state, shape, drops) < 0) {
+                return false;
+            }
+        }
 
-        /* Store references to this shape, at the positions the shape's blocks */
-        state.shapes.stream().forEach((shape) -> {
-            shape.getAllBlocks().stream().forEach((block) -> {
-                /* Check for collisions */
-                Validate.isNull(board[block.getX()][block.getY()],
-                        "Block collision during update; no two shapes should share a block!");
-                board[block.getX()][block.getY()] = shape;
-            });
-        });
+        final Set<TetrisShape> droppedShapes = new HashSet<>(2 * shapes.size());
+        boolean hasDropped = false;
+        for (TetrisShape shape : shapes) {
+            final int drop = drops.get(shape);
+            droppedShapes.add((drop == 0) ? shape : shape.getDroppedByDelta(drop));
+            hasDropped |= (drop != 0);
+        }
+        if (hasDropped) {
+            state.setSettledShapes(droppedShapes);
+        }
+        return true;
+    }
 
-        return board;
+    /**
+     * Work out how far a settled shape falls, first working out how far the
+     * shapes beneath it fall; depth-first, remembering every shape's drop.
+     *
+     * @param state
+     * @param shape
+     * @param drops Drop of every shape worked out so far, and null for the
+     * shapes being worked out
+     * @return The shape's drop, or -1 if it rests on itself through other shapes
+     */
+    private int findCascadeDrop(final TetrisState state, final TetrisShape shape,
+            final Map<TetrisShape, Integer> drops) {
+        if (drops.containsKey(shape)) {
+            final Integer drop = drops.get(shape);
+            return (drop == null) ? -1 : drop;
+        }
+        drops.put(shape, null);
+
+        int drop = Integer.MAX_VALUE;
+        for (TetrisBlock block : shape.getAllBlocks()) {
+            final int column = block.getX();
+            int row = block.getY() - 1;
+            while (row >= 0 && state.getSettledShapeAt(column, row) == null) {
+                row--;
+            }
+            if (row < 0) {
+                /* Nothing beneath this block but the bottom of the board */
+                drop = Math.min(drop, block.getY());
+                continue;
+            }
+            final TetrisShape shapeBelow = state.getSettledShapeAt(column, row);
+            if (shapeBelow == shape) {
+                /* The shape's own lower block limits its fall instead */
+                continue;
+            }
+            final int dropBelow = findCascadeDrop(state, shapeBelow, drops);
+            if (dropBelow < 0) {
+                return -1;
+            }
+            drop = Math.min(drop, block.getY() - row - 1 + dropBelow);
+        }
+        drops.put(shape, drop);
+        return drop;
     }
 
     /**
-     * Identify every shape on the Tetris board that would not collide if moved,
-     * and can be allowed to fall
+     * Determine whether a shape would not collide with any settled shape if
+     * moved down a single block, and can be allowed to fall
      *
-     * @param board
-     * @param width
-     * @param height
+     * @param state
+     * @param shape
      * @return
      */
-    private Set<TetrisShape> getFallingShapes(final TetrisState state) {
+    private boolean isFalling(final TetrisState state, final TetrisShape shape) {
         Validate.notNull(state, "Cannot find falling shapes in a null state.");
 
-        /* Project the shapes onto a 2D board to simplify comparisons in 2D space */
-        TetrisShape[][] board = getBoardFromState(state);
-        Validate.isTrue(board.length > 0 && board[0].length > 0, "Board must contain rows and columns.");
-
-        /* Return all shapes that are "falling", meaning... */
-        return state.shapes.stream()
-                /* For every shape... */
-                .filter((shape) -> shape.getAllBlocks().stream()
-                        /* For every block in the shape... */
-                        .allMatch((block) -> {
-                            /* That block must not be on the bottom row... */
-                            if (block.getY() > 0) {
-                                /* And the block below it must either be
-                                 a part of the same shape, or empty */
-                                TetrisShape belowShape = board[block.getX()][block.getY() - 1];
-                                if (belowShape == shape || belowShape == null) {
-                                    return true;
-                                }
-                            }
-                            return false;
-                        })
-                ).collect(Collectors.toSet());
+        return shape.getAllBlocks().stream()
+                /* For every block in the shape... */
+                .allMatch((block) -> {
+                    /* That block must not be on the bottom row... */
+                    if (block.getY() > 0) {
+                        /* And the block below it must either be
+                         a part of the same shape, or empty */
+                        if (!isBlockedBy(state, shape, block.getX(), block.getY() - 1)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                });
+    }
+
+    /**
+     * Determine whether a settled block occupies a cell of the board
+     *
+     * @param state
+     * @param x
+     * @param y
+     * @return
+     */
+    private boolean isSettledBlockAt(final TetrisState state, final int x, final int y) {
+        if (engine_ == BoardEngine.ROW_MASKS) {
+            return (state.getRowMask(y) & (1 << x)) != 0;
+        }
+        return state.getSettledShapeAt(x, y) != null;
+    }
+
+    /**
+     * Determine whether a cell holds a settled block from some shape other
+     * than the given one, which would stop that shape moving into the cell
+     *
+     * @param state
+     * @param shape
+     * @param x
+     * @param y
+     * @return
+     */
+    private boolean isBlockedBy(final TetrisState state, final TetrisShape shape,
+            final int x, final int y) {
+        if (engine_ == BoardEngine.ROW_MASKS) {
+            return (state.getRowMask(y) & (1 << x)) != 0 && !shape.hasBlockAtCoords(x, y);
+        }
+        final TetrisShape blockingShape = state.getSettledShapeAt(x, y);
+        return blockingShape != null && blockingShape != shape;
     }
 }
@@ -1,10 +1,11 @@
 package tetris;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Objects;
-import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 import utils.Validate;
@@ -12,7 +13,9 @@ import utils.Vector2;
 
 /**
  * @author Ginger Represent a single, connected shape on the Tetris board. The
- *         shape may or may not be a Tetrimino
+ *         shape may or may not be a Tetrimino. Shapes are immutable once
+ *         built: every transformation returns a new shape, so states can
+ *         share them freely.
  */
 public class TetrisShape
 {
@@ -21,8 +24,14 @@ public class TetrisShape
     private Set<TetrisBlock> blocks_;
     /* Identify a Tetrimino under player control */
     private boolean isControllable_ = true;
-    /* Keep track of this shape's center */
-    private ShapeCenter center_;
+    /* The Tetrimino this shape is, and its rotation state and origin; these
+     place its blocks, from TetriminoRotations. Null for shapes that are not
+     (or are no longer) whole Tetriminos */
+    private Tetrimino tetrimino_;
+    private int rotation_;
+    private int originX_, originY_;
+    /* Zobrist hash of the blocks; computed whenever the blocks are set */
+    private long hash_;
     /* Initialize delta vectors for moving in 2D space */
     private final static List<Vector2> deltaVectors = new ArrayList<Vector2>(4);
     static {
@@ -34,40 +43,39 @@ public class TetrisShape
 
     public TetrisShape(final Set<TetrisBlock> blocks) {
         Validate.notNull(blocks, "Initial blocks must not be null.");
-        blocks_ = blocks;
+        setBlocks(blocks);
     }
 
     /**
-     * Convenience constructor that allows building shapes from x- and y- arrays
-     * @param xBlocks
-     * @param yBlocks
-     * @param center
+     * Build a Tetrimino in some rotation state, at some origin
+     * @param tetrimino
+     * @param rotation
+     * @param originX
+     * @param originY
      */
-    public TetrisShape(final int[] xBlocks, final int[] yBlocks, final ShapeCenter center) {
-        Validate.notNull(center, "Cannot create a shape with no center!");
-        Validate.isTrue(xBlocks != null && yBlocks != null
-                && xBlocks.length > 0 && yBlocks.length > 0,
-                "Arrays must both be non-null and of length > 0.");
-        Validate.isTrue(xBlocks.length == yBlocks.length,
-                "Arrays must be of equivalent length.");
-        Validate.notNull(center, "Shape must have a center.");
-        
-        center_ = center;
-        blocks_ = new HashSet<TetrisBlock>();
-        for (int i = 0; i < xBlocks.length; i++) {
-            blocks_.add(new TetrisBlock(xBlocks[i], yBlocks[i]));
-        }
+    private TetrisShape(final Tetrimino tetrimino, final int rotation,
+            final int originX, final int originY) {
+        tetrimino_ = tetrimino;
+        rotation_ = rotation;
+        originX_ = originX;
+        originY_ = originY;
+        setBlocks(TetriminoRotations.getBlocks(tetrimino, rotation, originX, originY));
     }
 
     /**
-     * Convenience constructor for deep-copying shapes
+     * Convenience constructor for copying shapes; blocks are shared, since
+     * neither shape can change them
      * @param copy 
      */
     public TetrisShape(final TetrisShape copy) {
         Validate.notNull(copy, "Shape to copy must not be null.");
         blocks_ = copy.getAllBlocks();
+        hash_ = copy.hash_;
         isControllable_ = copy.isControllable_;
-        center_ = (copy.center_ == null) ? null : new ShapeCenter(copy.center_);
+        tetrimino_ = copy.tetrimino_;
+        rotation_ = copy.rotation_;
+        originX_ = copy.originX_;
+        originY_ = copy.originY_;
     }
     
     /**
@@ -80,65 +88,31 @@ public class TetrisShape
      */
     public static TetrisShape getShapeFromTetrimino(final Tetrimino t, final Vector2 origin)
     {
-        int[] xBlocks = null;
-        int[] yBlocks = null;
-        ShapeCenter center = null;
-
-        /* Each Tetrimino has a unique shape */
-        switch (t) {
-            case I:
-                xBlocks = new int[]{0, 1, 2, 3};
-                yBlocks = new int[]{0, 0, 0, 0};
-                center = new ShapeCenter(1.5, -0.5);
-                break;
-            case J:
-                xBlocks = new int[]{0, 0, 1, 2};
-                yBlocks = new int[]{1, 0, 0, 0};
-                center = new ShapeCenter(1.0, 0.0);
-                break;
-            case L:
-                xBlocks = new int[]{0, 1, 2, 2};
-                yBlocks = new int[]{0, 0, 0, 1};
-                center = new ShapeCenter(1.0, 0.0);
-                break;
-            case O:
-                xBlocks = new int[]{0, 0, 1, 1};
-                yBlocks = new int[]{0, 1, 0, 1};
-                center = new ShapeCenter(0.5, 0.5);
-                break;
-            case S:
-                xBlocks = new int[]{0, 1, 1, 2};
-                yBlocks = new int[]{0, 0, 1, 1};
-                center = new ShapeCenter(1.0, 0.0);
-                break;
-            case T:
-                xBlocks = new int[]{0, 1, 1, 2};
-                yBlocks = new int[]{0, 0, 1, 0};
-                center = new ShapeCenter(1.0, 0.0);
-                break;
-            case Z:
-                xBlocks = new int[]{0, 1, 1, 2};
-                yBlocks = new int[]{1, 1, 0, 0};
-                center = new ShapeCenter(1.0, 0.0);
-                break;
-            default:
-                throw new IllegalArgumentException("Tetrimino not found.");
-        }
-        
-        /* Blocks and center should always have taken on some value */
-        Validate.notNull(xBlocks);
-        Validate.notNull(yBlocks);
-        Validate.notNull(center);
-        TetrisShape shape = new TetrisShape(xBlocks, yBlocks, center);
-
-        /* Move this shape to the origin point */
-        /* Casting the center to an int "snaps" shapes to the bottom-left */
-        Vector2 delta = origin.subtract(new Vector2((int) center.getX(), (int) center.getY()));
-        shape.shiftShapeByDelta(delta);
-
-        return shape;
+        Validate.notNull(t, "Tetrimino not found.");
+        /* Each Tetrimino has a unique shape, spawned in rotation state 0 and
+         moved so that its center (snapped to the bottom-left) is on the origin */
+        final Vector2 delta = origin.subtract(TetriminoRotations.getSnappedCenter(t));
+        return new TetrisShape(t, 0, delta.getX(), delta.getY());
     }
     
+    /**
+     * Create a TetrisShape from the specified Tetrimino, in some rotation
+     * state and at some origin (see TetriminoRotations)
+     *
+     * @param t
+     * @param rotation
+     * @param originX
+     * @param originY
+     * @return
+     */
+    static TetrisShape getPlacedTetrimino(final Tetrimino t, final int rotation,
+            final int originX, final int originY) {
+        Validate.notNull(t, "Tetrimino not found.");
+        Validate.isTrue(rotation >= 0 && rotation < TetriminoRotations.NUMBER_OF_ROTATIONS,
+                "Rotation states run from 0 to 3.");
+        return new TetrisShape(t, rotation, originX, originY);
+    }
+
     /**
      * Determine whether or not a shape has any block at a particular set of coordinates
      * @param x
@@ -155,29 +129,61 @@ public class TetrisShape
      * @return 
      */
     public TetrisShape getRotatedClockwise() {
-        Validate.notNull(center_, "Rotation cannot operate on a shape with no defined center!  Are you certain this is a standard Tetrimino?");
-        TetrisShape newShape = new TetrisShape(this);
-        /** 
-         * Clockwise math works as follows:
-         * Calculate the delta between every block and the center of the shape.
-         * Then replace that block with a block at coordinates centered around
-         * the shape's center, offset by the calculated deltas.
-         * Rotation is accomplished by using the y-delta to specify the new 
-         * block's x-coordinate, and vice-versa.
-         * This is a trivial case of https://en.wikipedia.org/wiki/Rotation_matrix,
-         * where cos(theta) == 0 and sin(theta) == 1 and -1
-         * (This did not make it easier to understand)
-         */
-        newShape.blocks_ = newShape.getAllBlocks().stream()
-                .map((block) -> {
-                    final double deltaX = newShape.center_.getX() - block.getX();
-                    final double deltaY = newShape.center_.getY() - block.getY();
-                    return new TetrisBlock(
-                            (int) Math.round(newShape.center_.getX() - deltaY), 
-                            (int) Math.round(newShape.center_.getY() + deltaX));
-                }).collect(Collectors.toSet());
+        return getRotatedClockwise(0);
+    }
+
+    /**
+     * Return a version of this shape, turned clockwise and then moved by one
+     * of the wall kicks for the turn (the first of which is no move at all);
+     * the original shape is unchanged.
+     * @param kick Index of the wall kick, below getNumberOfWallKicks()
+     * @return 
+     */
+    public TetrisShape getRotatedClockwise(final int kick) {
+        Validate.notNull(tetrimino_, "Rotation cannot operate on a shape that is not a standard Tetrimino!");
+        final int[][] kicks = TetriminoRotations.getClockwiseKicks(tetrimino_, rotation_);
+        Validate.isTrue(kick >= 0 && kick < kicks.length, "No such wall kick.");
+        /* Rotation states are looked up, rather than computed */
+        final TetrisShape newShape = new TetrisShape(tetrimino_,
+                (rotation_ + 1) % TetriminoRotations.NUMBER_OF_ROTATIONS,
+                originX_ + kicks[kick][0], originY_ + kicks[kick][1]);
+        newShape.isControllable_ = isControllable_;
         return newShape;
     }
+
+    /**
+     * Number of wall kicks to try, in order, when turning this shape clockwise.
+     * @return 
+     */
+    public int getNumberOfWallKicks() {
+        Validate.notNull(tetrimino_, "Only standard Tetriminos have wall kicks.");
+        return TetriminoRotations.getClockwiseKicks(tetrimino_, rotation_).length;
+    }
+
+    /**
+     * The Tetrimino this shape is.
+     * @return The Tetrimino, or null if this shape is not a whole Tetrimino
+     */
+    public Tetrimino getTetrimino() {
+        return tetrimino_;
+    }
+
+    int getOriginX() {
+        return originX_;
+    }
+
+    int getOriginY() {
+        return originY_;
+    }
+
+    /**
+     * Rotation state of this shape, counting clockwise turns from the spawn
+     * state, 0; always 0 for shapes that are not whole Tetriminos.
+     * @return 
+     */
+    public int getRotation() {
+        return rotation_;
+    }
     
     /**
      * Return a version of this shape, shifted left; 
@@ -235,29 +241,58 @@ public class TetrisShape
     }
     
     /**
-     * Flag a shape as no longer under user control.
+     * Return a version of this shape that is no longer under user control;
+     * the original shape is unchanged.
+     * @return 
      */
-    public void makeUncontrollable() {
-        isControllable_ = false;
+    public TetrisShape getUncontrollable() {
+        if (!isControllable_) {
+            return this;
+        }
+        TetrisShape newShape = new TetrisShape(this);
+        newShape.isControllable_ = false;
+        return newShape;
     }
     
     /* Move a shape by some 'delta' described by a Vector2 */
     private void shiftShapeByDelta(final Vector2 delta) {
-        blocks_ = blocks_.stream()
+        if (tetrimino_ != null) {
+            /* Tetriminos are placed by their origin */
+            originX_ += delta.getX();
+            originY_ += delta.getY();
+            setBlocks(TetriminoRotations.getBlocks(tetrimino_, rotation_, originX_, originY_));
+            return;
+        }
+        setBlocks(blocks_.stream()
                 .map(block -> block.shiftBlockByDelta(delta))
-                .collect(Collectors.toSet());
-        /* Shifting a center (double precision) by a Vector2 (integer precision)
-        means we need to think carefully about any comparisons and equality checks
-        we do.  :-(  Currently the only concern (moving Tetriminos to valid
-        positions) is handled by rounding and then casting to Int before sending
-        a block somewhere.  Is there a more elegant way to handle this problem? */
-        if (center_ != null) center_ = center_.shiftCenterByDelta(delta);
+                .collect(Collectors.toSet()));
     }
 
+    /* Only for shapes under construction; hashes the blocks as they are set */
+    private void setBlocks(final Set<TetrisBlock> blocks) {
+        blocks_ = Collections.unmodifiableSet(blocks);
+        hash_ = 0L;
+        for (TetrisBlock block : blocks_) {
+            hash_ ^= block.getZobristKey();
+        }
+    }
+
+    /**
+     * Blocks in this shape.
+     * @return An unmodifiable set of the blocks
+     */
     public Set<TetrisBlock> getAllBlocks() {
         return blocks_;
     }
 
+    /**
+     * Zobrist hash of this shape's blocks: the XOR of their keys.
+     * @return 
+     */
+    public long getZobristHash() {
+        return hash_;
+    }
+
     @Override
     public String toString()
     {
@@ -278,9 +313,8 @@ public class TetrisShape
 
     @Override
     public int hashCode() {
-        int hash = 5;
-        hash = 47 * hash + Objects.hashCode(this.blocks_);
-        return hash;
+        /* Cached, rather than rehashing every block each time */
+        return Long.hashCode(hash_);
     }
     
     /**
@@ -294,8 +328,8 @@ public class TetrisShape
                     TetrisShape shape = new TetrisShape(neighborhood);
                     /* Split shapes should not be user-controllable */
                     shape.isControllable_ = false;
-                    /* Centers can no longer be safely assigned to split shapes */
-                    shape.center_ = null;
+                    /* Split shapes are no longer Tetriminos, so cannot rotate */
+                    shape.tetrimino_ = null;
                     return shape;
                 }).collect(Collectors.toSet());
     }
@@ -328,28 +362,28 @@ public class TetrisShape
     }
     
     /**
-     * Recursive DFS-like collection search, returning all blocks adjacent to a 
-     * given block.
+     * DFS-like collection search, returning all blocks connected to a given
+     * block through blocks adjacent to one another.
      * @param allBlocks
-     * @param currentBlock
+     * @param startingBlock
      * @return 
      */
-    private Set<TetrisBlock> getAllConnected(final Set<TetrisBlock> allBlocks, final TetrisBlock currentBlock) {
+    private Set<TetrisBlock> getAllConnected(final Set<TetrisBlock> allBlocks, final TetrisBlock startingBlock) {
         final HashSet<TetrisBlock> connected = new HashSet<TetrisBlock>();
-        connected.add(currentBlock);
-        deltaVectors.stream()
-                /* For each cardinal direction... */
-                .forEach((delta) -> {
-                    /* Find any block one step in this direction... */
-                    Optional<TetrisBlock> matchingBlock = allBlocks.stream()
-                    .filter((block) -> block.getX() == block.getX() + delta.getX()
-                            && block.getY() == block.getY() + delta.getY())
-                    .findAny();
-                    /* If you found one, add him, and ask him to look for any neighbors to add as well. */
-                    if (matchingBlock.isPresent()) {
-                        connected.addAll(getAllConnected(allBlocks, matchingBlock.get()));
-                    }
-                });
+        final Deque<TetrisBlock> unexplored = new ArrayDeque<TetrisBlock>();
+        connected.add(startingBlock);
+        unexplored.push(startingBlock);
+        while (!unexplored.isEmpty()) {
+            final TetrisBlock currentBlock = unexplored.pop();
+            /* For each cardinal direction, find any block one step away that
+             hasn't been found already, and look for its neighbors in turn */
+            for (Vector2 delta : deltaVectors) {
+                final TetrisBlock neighbor = currentBlock.shiftBlockByDelta(delta);
+                if (allBlocks.contains(neighbor) && connected.add(neighbor)) {
+                    unexplored.push(neighbor);
+                }
+            }
+        }
         return connected;
     }
 }
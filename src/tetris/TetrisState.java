@@ -1,46 +1,92 @@
 package tetris;
 
+import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import utils.ClosedRange;
+import utils.RandomStream;
 import utils.Validate;
+import utils.ZobristKeys;
 import core.Player;
+import core.PlayerIndex;
 import core.Score;
 
 /**
- * Represent the Tetris board at a particular moment
+ * Represent the Tetris board at a particular moment.
+ *
+ * Shapes that have come to rest never change, so they are kept in a
+ * persistent list that copies of the state share: settling a shape puts it in
+ * front of the list rather than copying it, and only clearing rows builds a
+ * new one. The lookups of settled blocks are kept one row at a time, so
+ * settling a shape copies only the rows it lands in. The one shape under
+ * player control is kept separately, so moving it touches nothing else.
+ * Copying a state therefore costs the same no matter how full the board is.
+ *
+ * The state keeps a running Zobrist hash of its position, XORing keys in and
+ * out as shapes settle, the shape under control moves and the preview
+ * advances, so hashing a state never has to look at the whole board.
  *
  * @author Ginger
  */
 public class TetrisState
 {
+    /* Distinguish the features hashed into a position, besides settled blocks
+     (whose tag is TetrisBlock.BLOCK_FEATURE) */
+    private static final long CONTROLLABLE_FEATURE = 1;
+    private static final long TETRIMINO_FEATURE = 2;
+    private static final long ROTATION_FEATURE = 4;
+    private static final int NUMBER_OF_TETRIMINOS = Tetrimino.values().length;
 
     /* Keep track of simulation time */
     private int simTime_;
     /* Board dimensions; would be final but for clashes with Jackson */
     private int width_, height_;
-    /* Keep track of players */
-    private Collection<Player> players_;
-    /* Keep track of player scores */
-    private Map<Player, Score> playerScores_;
-    /* Keep track of shapes on the board */
-    public Set<TetrisShape> shapes;
+    /* Keep track of players; immutable, so copies share it */
+    private PlayerIndex players_;
+    /* Keep track of player scores, by player index. Copies share this array;
+     scoring replaces it */
+    private double[] playerScores_;
+    /* Shapes at rest on the board; immutable and shared between copies */
+    private SettledShapes settledShapes_;
+    /* The settled shape covering each cell, by row and then column, built
+     when first needed; neither the rows nor the array of them are modified
+     once built, so copies share them and settling replaces the rows it
+     touches */
+    private TetrisShape[][] settledCells_;
+    /* One mask per row of settled blocks, with bit x set for column x; built
+     when first needed, and shared and replaced like settledCells_ */
+    private int[] rowMasks_;
+    /* Shape under player control, if any */
+    private TetrisShape activeShape_;
     /* Flag set if this state is terminal */
     private boolean terminal_ = false;
     /* Range of x- and y-values */
     private ClosedRange xRange_, yRange_;
-    /* Next Tetrimino expected to appear; visible to the player */
-    private Tetrimino nextTetrimino_;
-    /* Random class for selecting Tetriminos */
-    private final Random random_ = new Random();
+    /* Every Tetrimino the game will deal, in order; immutable, so shared */
+    private TetriminoSequence sequence_;
+    /* Number of Tetriminos dealt so far; also the position of the next one */
+    private long dealt_;
+    /* Number of upcoming Tetriminos visible to the player */
+    private int previewLength_;
+    /* Zobrist hash of the settled shapes, the shape under control and the
+     preview; kept up to date by every change to them */
+    private long positionHash_;
+    /* Zobrist hash of the position, set by the rules after every transition */
+    private long hash_;
 
     /* Default constructor for Jackson */
     public TetrisState()
     {
+        sequence_ = new TetriminoSequence(TetriminoSequence.Randomizer.SEVEN_BAG, new RandomStream());
+        previewLength_ = 1;
+        settledShapes_ = SettledShapes.EMPTY;
+        positionHash_ = hashPreview();
     }
 
     /**
@@ -51,18 +97,56 @@ public class TetrisState
      */
     public TetrisState(final Set<Player> players, final int width, final int height)
     {
+        this(players, width, height, new RandomStream());
+    }
+
+    /**
+     * Constructor for setting a standard State with no shapes, dealing
+     * Tetriminos from 7-bags shuffled by the provided stream, with one
+     * Tetrimino of preview. The same seed always deals the same sequence of
+     * Tetriminos.
+     * @param players
+     * @param width
+     * @param height
+     * @param random
+     */
+    public TetrisState(final Set<Player> players, final int width, final int height,
+            final RandomStream random)
+    {
+        this(players, width, height,
+                new TetriminoSequence(TetriminoSequence.Randomizer.SEVEN_BAG, random), 1);
+    }
+
+    /**
+     * Constructor for setting a standard State with no shapes, dealing
+     * Tetriminos from the start of a sequence.
+     * @param players
+     * @param width
+     * @param height
+     * @param sequence Tetriminos to deal, in order
+     * @param previewLength Number of upcoming Tetriminos the player can see
+     */
+    public TetrisState(final Set<Player> players, final int width, final int height,
+            final TetriminoSequence sequence, final int previewLength)
+    {
+        Validate.notNull(sequence, "Tetrimino sequence must not be null.");
+        Validate.isTrue(previewLength > 0, "Players must be able to see the next Tetrimino.");
+        /* Rows of the board must fit in an int mask */
+        Validate.isTrue(width > 0 && width < Integer.SIZE, "Board width must be between 1 and 31.");
+        sequence_ = sequence;
+        dealt_ = 0;
+        previewLength_ = previewLength;
         simTime_ = 0;
         width_ = width;
         height_ = height;
-        shapes = new HashSet<TetrisShape>();
+        settledShapes_ = SettledShapes.EMPTY;
 
-        players_ = players;
-        playerScores_ = new HashMap<Player, Score>(players.size());
+        players_ = new PlayerIndex(players);
         /* Initialize all scores to 0 */
-        players.stream().forEach((player) -> playerScores_.put(player, new Score(0)));
+        playerScores_ = new double[players_.size()];
         xRange_ = new ClosedRange(0, width - 1);
         yRange_ = new ClosedRange(0, height - 1);
-        nextTetrimino_ = getRandomTetrimino();
+        positionHash_ = hashPreview();
     }
 
     public TetrisState(final TetrisState copy)
@@ -71,12 +155,21 @@ public class TetrisState
         width_ = copy.width_;
         height_ = copy.height_;
 
-        shapes = new HashSet(copy.shapes);
-        players_ = new HashSet(copy.players_);
-        playerScores_ = new HashMap<Player, Score>(copy.playerScores_);
-        xRange_ = new ClosedRange(0, copy.width_ - 1);
-        yRange_ = new ClosedRange(0, copy.height_ - 1);
-        nextTetrimino_ = copy.nextTetrimino_;
+        /* Immutable or copy-on-write, so safe to share */
+        settledShapes_ = copy.settledShapes_;
+        settledCells_ = copy.settledCells_;
+        rowMasks_ = copy.rowMasks_;
+        activeShape_ = copy.activeShape_;
+        players_ = copy.players_;
+        playerScores_ = copy.playerScores_;
+        xRange_ = copy.xRange_;
+        yRange_ = copy.yRange_;
+        positionHash_ = copy.positionHash_;
+        hash_ = copy.hash_;
+        /* Copies deal the same Tetriminos as the original from here on */
+        sequence_ = copy.sequence_;
+        dealt_ = copy.dealt_;
+        previewLength_ = copy.previewLength_;
     }
 
     public boolean isBlockOnBoard(final TetrisBlock block) {
@@ -90,7 +183,16 @@ public class TetrisState
 
     public Score getPlayerScore(final Player player)
     {
-        return playerScores_.getOrDefault(player, new Score());
+        final int index = players_.indexOf(player);
+        return new Score((index < 0) ? 0 : playerScores_[index]);
+    }
+
+    /**
+     * Every player's score. Later changes to this state do not show through.
+     * @return A read-only view of the scores
+     */
+    public Map<Player, Score> getPlayerScores() {
+        return players_.asScores(playerScores_);
     }
     
     /**
@@ -98,18 +200,52 @@ public class TetrisState
      * @return 
      */
     public Tetrimino peekTetrimino() {
-        return nextTetrimino_;
+        return sequence_.get(dealt_);
+    }
+
+    /**
+     * Look at the upcoming Tetriminos visible to the player, in the order
+     * they will fall.
+     * @return A new list of getPreviewLength() Tetriminos, starting with the
+     * next one
+     */
+    public List<Tetrimino> getPreview() {
+        final List<Tetrimino> preview = new ArrayList<Tetrimino>(previewLength_);
+        for (int i = 0; i < previewLength_; i++) {
+            preview.add(sequence_.get(dealt_ + i));
+        }
+        return preview;
+    }
+
+    public int getPreviewLength() {
+        return previewLength_;
     }
     
     /**
-     * Return the next Tetrimino expected to fall, and calculate a new one .
+     * Return the next Tetrimino expected to fall, moving on to the one after.
      * @return
      */
     public Tetrimino popTetrimino() {
-        Tetrimino tetrimino = nextTetrimino_;
-        nextTetrimino_ = getRandomTetrimino();
+        /* Every Tetrimino in preview moves up a place */
+        positionHash_ ^= hashPreview();
+        final Tetrimino tetrimino = sequence_.get(dealt_++);
+        positionHash_ ^= hashPreview();
         return tetrimino;
     }
+
+    /**
+     * Zobrist hash of the Tetriminos in preview; players plan around every
+     * Tetrimino they can see coming.
+     * @return
+     */
+    private long hashPreview() {
+        long hash = 0;
+        for (int i = 0; i < previewLength_; i++) {
+            hash ^= ZobristKeys.keyOf(TETRIMINO_FEATURE,
+                    i * NUMBER_OF_TETRIMINOS + sequence_.get(dealt_ + i).ordinal());
+        }
+        return hash;
+    }
     
     /**
      * Increment a player's score
@@ -119,9 +255,181 @@ public class TetrisState
     public void incrementPlayerScore(final Player player, final int points) {
         Validate.notNull(player, "Player must not be null.");
         Validate.isTrue(points > 0, "Increment to score should exceed 0.");
-        Validate.isTrue(playerScores_.containsKey(player), "No such player found.");
+        final int index = players_.indexOf(player);
+        Validate.isTrue(index >= 0, "No such player found.");
         
-        playerScores_.put(player, playerScores_.get(player).add(new Score(points)));
+        /* Scores may be shared with copies of this state; never modify them */
+        final double[] playerScores = playerScores_.clone();
+        playerScores[index] += points;
+        playerScores_ = playerScores;
+    }
+
+    /**
+     * Every shape on the board: those at rest, plus the one under control.
+     * @return A new set of the shapes
+     */
+    public Set<TetrisShape> getShapes() {
+        final Set<TetrisShape> shapes = new HashSet<TetrisShape>(settledShapes_);
+        if (activeShape_ != null) {
+            shapes.add(activeShape_);
+        }
+        return shapes;
+    }
+
+    /**
+     * Shapes that have come to rest and are no longer under player control.
+     * Whenever they change, a new set is returned from then on.
+     * @return An immutable set of the shapes
+     */
+    public Set<TetrisShape> getSettledShapes() {
+        return settledShapes_;
+    }
+
+    /**
+     * Replace every settled shape, eg once rows have been removed. The hash
+     * of the old shapes is XORed out and that of the new ones in, which costs
+     * no more than building the new set did.
+     * @param settledShapes
+     */
+    void setSettledShapes(final Set<TetrisShape> settledShapes) {
+        Validate.notNull(settledShapes, "Settled shapes must not be null.");
+        positionHash_ ^= hashShapes(settledShapes_) ^ hashShapes(settledShapes);
+        settledShapes_ = SettledShapes.of(settledShapes);
+        settledCells_ = null;
+        rowMasks_ = null;
+    }
+
+    /**
+     * Bring a shape to rest alongside the settled shapes. The set of settled
+     * shapes is extended rather than copied, and any lookups already built
+     * for it have only the rows the shape lands in replaced.
+     * @param shape
+     */
+    void addSettledShape(final TetrisShape shape) {
+        Validate.notNull(shape, "Cannot settle a null shape.");
+        settledShapes_ = settledShapes_.with(shape);
+        positionHash_ ^= shape.getZobristHash();
+
+        if (settledCells_ != null) {
+            final TetrisShape[][] settledCells = settledCells_.clone();
+            for (TetrisBlock block : shape.getAllBlocks()) {
+                final int row = block.getY();
+                /* Rows may be shared with copies of this state; copy each
+                 one the shape touches, once */
+                if (settledCells[row] == settledCells_[row]) {
+                    settledCells[row] = settledCells_[row].clone();
+                }
+                Validate.isNull(settledCells[row][block.getX()],
+                        "Block collision during update; no two shapes should share a block!");
+                settledCells[row][block.getX()] = shape;
+            }
+            settledCells_ = settledCells;
+        }
+        if (rowMasks_ != null) {
+            rowMasks_ = rowMasks_.clone();
+            for (TetrisBlock block : shape.getAllBlocks()) {
+                final int bit = 1 << block.getX();
+                Validate.isTrue((rowMasks_[block.getY()] & bit) == 0,
+                        "Block collision during update; no two shapes should share a block!");
+                rowMasks_[block.getY()] |= bit;
+            }
+        }
+    }
+
+    /**
+     * The shape under player control.
+     * @return The shape, or null if no shape is under control
+     */
+    public TetrisShape getActiveShape() {
+        return activeShape_;
+    }
+
+    void setActiveShape(final TetrisShape activeShape) {
+        positionHash_ ^= hashActiveShape(activeShape_) ^ hashActiveShape(activeShape);
+        activeShape_ = activeShape;
+    }
+
+    /**
+     * Zobrist hash of a shape under control: the same blocks play out
+     * differently to settled ones, and can be in two rotation states, which
+     * turn differently.
+     * @param shape
+     * @return The hash, or 0 for no shape
+     */
+    private static long hashActiveShape(final TetrisShape shape) {
+        if (shape == null) {
+            return 0;
+        }
+        return ZobristKeys.keyOf(CONTROLLABLE_FEATURE, shape.getZobristHash())
+                ^ ZobristKeys.keyOf(ROTATION_FEATURE, shape.getRotation());
+    }
+
+    private static long hashShapes(final Set<TetrisShape> shapes) {
+        long hash = 0;
+        for (TetrisShape shape : shapes) {
+            hash ^= shape.getZobristHash();
+        }
+        return hash;
+    }
+
+    /**
+     * Find the settled shape with a block at the given coordinates.
+     * @param x
+     * @param y
+     * @return The shape, or null if the cell is empty or holds the active shape
+     */
+    public TetrisShape getSettledShapeAt(final int x, final int y) {
+        if (settledCells_ == null) {
+            settledCells_ = buildSettledCells();
+        }
+        return settledCells_[y][x];
+    }
+
+    private TetrisShape[][] buildSettledCells() {
+        final TetrisShape[][] cells = new TetrisShape[height_][width_];
+        for (TetrisShape shape : settledShapes_) {
+            for (TetrisBlock block : shape.getAllBlocks()) {
+                /* Check for collisions */
+                Validate.isNull(cells[block.getY()][block.getX()],
+                        "Block collision during update; no two shapes should share a block!");
+                cells[block.getY()][block.getX()] = shape;
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Settled blocks in a row of the board, as a bitmask with bit x set if
+     * column x is filled. The active shape is not included.
+     * @param y
+     * @return The row's mask; getFullRowMask() if every column is filled
+     */
+    public int getRowMask(final int y) {
+        if (rowMasks_ == null) {
+            rowMasks_ = buildRowMasks();
+        }
+        return rowMasks_[y];
+    }
+
+    /**
+     * @return The mask of a row with every column filled
+     */
+    public int getFullRowMask() {
+        return (1 << width_) - 1;
+    }
+
+    private int[] buildRowMasks() {
+        final int[] rowMasks = new int[height_];
+        for (TetrisShape shape : settledShapes_) {
+            for (TetrisBlock block : shape.getAllBlocks()) {
+                final int bit = 1 << block.getX();
+                /* Check for collisions */
+                Validate.isTrue((rowMasks[block.getY()] & bit) == 0,
+                        "Block collision during update; no two shapes should share a block!");
+                rowMasks[block.getY()] |= bit;
+            }
+        }
+        return rowMasks;
     }
 
     public int getWidth() {
@@ -146,8 +454,66 @@ public class TetrisState
     {
         return simTime_;
     }
+
+    /**
+     * Zobrist hash of the position: the shapes on the board, which one is
+     * under control, the Tetriminos in preview and when pieces next descend.
+     * @return
+     */
+    public long getHash() {
+        return hash_;
+    }
+
+    void setHash(final long hash) {
+        hash_ = hash;
+    }
+
+    /**
+     * Zobrist hash of the shapes on the board, which one is under control
+     * and the Tetriminos in preview, kept up to date as they change.
+     * @return
+     */
+    long getPositionHash() {
+        return positionHash_;
+    }
+
+    /**
+     * Record every field a step may replace, before stepping this state in
+     * place. What the fields refer to is never modified, only replaced, so
+     * the record shares it rather than copying it.
+     * @return What this state holds now, for undo()
+     */
+    TetrisUndo recordUndo() {
+        return new TetrisUndo(simTime_, settledShapes_, settledCells_, rowMasks_,
+                activeShape_, playerScores_, terminal_, dealt_, positionHash_, hash_);
+    }
+
+    /**
+     * Put back everything recorded by recordUndo().
+     * @param undo
+     */
+    void undo(final TetrisUndo undo) {
+        simTime_ = undo.simTime_;
+        settledShapes_ = undo.settledShapes_;
+        settledCells_ = undo.settledCells_;
+        rowMasks_ = undo.rowMasks_;
+        activeShape_ = undo.activeShape_;
+        playerScores_ = undo.playerScores_;
+        terminal_ = undo.terminal_;
+        dealt_ = undo.dealt_;
+        positionHash_ = undo.positionHash_;
+        hash_ = undo.hash_;
+    }
     
     public Collection<Player> getPlayers() {
+        return players_.players();
+    }
+
+    /**
+     * Numbering of the players, shared by every state of a game.
+     * @return
+     */
+    public PlayerIndex getPlayerIndex() {
         return players_;
     }
 
@@ -160,7 +526,7 @@ public class TetrisState
             }
         }
         
-        shapes.stream().forEach((shape) -> {
+        getShapes().stream().forEach((shape) -> {
             shape.getAllBlocks().stream().forEach((block) -> {
                 board[block.getX()][block.getY()] = 'X';
             });
@@ -175,20 +541,80 @@ public class TetrisState
         }
         builder.append("Sim time: ".concat(Integer.toString(simTime_)));
         builder.append(System.lineSeparator());
-        builder.append("Next shape: ".concat(nextTetrimino_.toString()));
+        builder.append("Next shapes: ".concat(getPreview().toString()));
         builder.append(System.lineSeparator());
-        players_.stream().forEach((player) -> {
-            builder.append("Player ".concat(player.toString()).concat(": ").concat(playerScores_.getOrDefault(player, new Score(0)).toString()));
+        players_.players().stream().forEach((player) -> {
+            builder.append("Player ".concat(player.toString()).concat(": ").concat(getPlayerScore(player).toString()));
             builder.append(System.lineSeparator());
         });
         return builder.toString();
     }
 
-    // TODO: Use the Tetris system of pulling Tetriminos from a bag, rather 
-    // than generating them over an even distribution.
-    private Tetrimino getRandomTetrimino() {
-        /* Randomly select a Tetrimino */
-        Tetrimino[] possibleTetriminos = Tetrimino.values();
-        return possibleTetriminos[random_.nextInt(possibleTetriminos.length)];
+    /**
+     * An immutable set of shapes, as a linked list: adding a shape makes a
+     * new node in front of the old list, which both sets then share. Shapes
+     * on a board are few, so looking one up by walking the list is cheap
+     * enough; the rules mostly iterate over them.
+     */
+    static final class SettledShapes extends AbstractSet<TetrisShape> {
+
+        static final SettledShapes EMPTY = new SettledShapes(null, null);
+
+        private final TetrisShape shape_;
+        private final SettledShapes rest_;
+        private final int size_;
+
+        private SettledShapes(final TetrisShape shape, final SettledShapes rest) {
+            shape_ = shape;
+            rest_ = rest;
+            size_ = (rest == null) ? 0 : rest.size_ + 1;
+        }
+
+        /**
+         * @param shapes
+         * @return A set of the same shapes
+         */
+        static SettledShapes of(final Set<TetrisShape> shapes) {
+            SettledShapes settledShapes = EMPTY;
+            for (TetrisShape shape : shapes) {
+                settledShapes = new SettledShapes(shape, settledShapes);
+            }
+            return settledShapes;
+        }
+
+        /**
+         * @param shape A shape not already in this set
+         * @return A set of these shapes and $shape, sharing these
+         */
+        SettledShapes with(final TetrisShape shape) {
+            return new SettledShapes(shape, this);
+        }
+
+        @Override
+        public Iterator<TetrisShape> iterator() {
+            return new Iterator<TetrisShape>() {
+                private SettledShapes next_ = SettledShapes.this;
+
+                @Override
+                public boolean hasNext() {
+                    return next_.size_ > 0;
+                }
+
+                @Override
+                public TetrisShape next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    final TetrisShape shape = next_.shape_;
+                    next_ = next_.rest_;
+                    return shape;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return size_;
+        }
     }
 }
@@ -0,0 +1,39 @@
+package tetris;
+
+/**
+ * Everything a Tetris step replaces in a TetrisState, as it was before the
+ * step. Shapes, the set of settled shapes and the lookups of settled blocks
+ * are never modified once they are on a board, so the old ones can simply be
+ * put back. Opaque outside of this package.
+ *
+ * @author Ginger
+ */
+public final class TetrisUndo {
+
+    final int simTime_;
+    final TetrisState.SettledShapes settledShapes_;
+    final TetrisShape[][] settledCells_;
+    final int[] rowMasks_;
+    final TetrisShape activeShape_;
+    final double[] playerScores_;
+    final boolean terminal_;
+    final long dealt_;
+    final long positionHash_;
+    final long hash_;
+
+    TetrisUndo(final int simTime, final TetrisState.SettledShapes settledShapes,
+            final TetrisShape[][] settledCells, final int[] rowMasks, final TetrisShape activeShape,
+            final double[] playerScores, final boolean terminal,
+            final long dealt, final long positionHash, final long hash) {
+        simTime_ = simTime;
+        settledShapes_ = settledShapes;
+        settledCells_ = settledCells;
+        rowMasks_ = rowMasks;
+        activeShape_ = activeShape;
+        playerScores_ = playerScores;
+        terminal_ = terminal;
+        dealt_ = dealt;
+        positionHash_ = positionHash;
+        hash_ = hash;
+    }
+}
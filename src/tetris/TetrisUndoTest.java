@@ -0,0 +1,159 @@
+package tetris;
+
+import core.Player;
+import core.Policy;
+import core.ReversibleRules;
+import core.ReversibleRulesTest;
+import core.StateHashing;
+import core.policies.RandomPolicy;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import utils.RandomStream;
+import utils.Validate;
+
+/**
+ * Play seeded games of Tetris, applying every action in place and checking
+ * it against transition(...), then undoing every action again. Placements
+ * are made as low as they go, so that rows fill and are removed. Also check
+ * that positions which differ never share a hash, both on boards built to
+ * hold every Tetrimino and rotation next to a block in every cell, and
+ * throughout the games.
+ */
+public class TetrisUndoTest {
+
+    private static final int GAMES = 20;
+    private static final int MAX_ACTIONS = 2000;
+    /* Cells blocks are put in when building boards: the columns and rows
+     that tags and small feature values would coincide with */
+    private static final int BUILT_COLUMNS = 10;
+    private static final int BUILT_ROWS = 16;
+
+    public static void main(String[] args) {
+        final Set<Player> players = Collections.singleton(new Player("Player"));
+
+        int actions = 0;
+        for (int game = 0; game < GAMES; game++) {
+            final TetrisRules rules = new TetrisRules();
+            actions += ReversibleRulesTest.playAndUndo(rules,
+                    rules.generateInitialState(players, new RandomStream(game)),
+                    new RandomPolicy<>(game), TetrisUndoTest::describe, MAX_ACTIONS);
+
+            final TetrisPlacementRules placementRules = new TetrisPlacementRules();
+            actions += ReversibleRulesTest.playAndUndo(placementRules,
+                    placementRules.generateInitialState(players, new RandomStream(game)),
+                    lowestPlacement(), TetrisUndoTest::describe, MAX_ACTIONS);
+        }
+        System.out.println(String.format("Applied and undid %d actions over %d games.",
+                actions, 2 * GAMES));
+
+        final Map<Long, String> positions = new HashMap<>();
+        checkBuiltPositions(players, positions);
+        for (int game = 0; game < GAMES; game++) {
+            checkPlayedPositions(new TetrisRules(), players, game, new RandomPolicy<>(game),
+                    positions);
+            checkPlayedPositions(new TetrisPlacementRules(), players, game, lowestPlacement(),
+                    positions);
+        }
+        System.out.println(String.format("%d different positions hashed apart.",
+                positions.size()));
+    }
+
+    /**
+     * Hash boards with two Tetriminos in preview, each Tetrimino under
+     * control in each rotation state, and a single settled block in any of
+     * the cells, checking that no two of them share a hash.
+     * @param players
+     * @param positions Position seen for every hash so far
+     */
+    private static void checkBuiltPositions(final Set<Player> players,
+            final Map<Long, String> positions) {
+        for (int seed = 0; seed < GAMES; seed++) {
+            final TetrisState empty = new TetrisState(players, 10, 22, new TetriminoSequence(
+                    TetriminoSequence.Randomizer.SEVEN_BAG, seed), 2);
+            for (Tetrimino tetrimino : Tetrimino.values()) {
+                for (int rotation = 0; rotation < TetriminoRotations.NUMBER_OF_ROTATIONS;
+                        rotation++) {
+                    for (int x = 0; x < BUILT_COLUMNS; x++) {
+                        for (int y = 0; y < BUILT_ROWS; y++) {
+                            final TetrisState state = new TetrisState(empty);
+                            state.setActiveShape(TetrisShape.getPlacedTetrimino(tetrimino,
+                                    rotation, 3, 18));
+                            state.addSettledShape(new TetrisShape(Collections.singleton(
+                                    new TetrisBlock(x, y))).getUncontrollable());
+                            checkHashApart(state.getPositionHash(), describePosition(state),
+                                    positions);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static <A> void checkPlayedPositions(final ReversibleRules<TetrisState, A, ?> rules,
+            final Set<Player> players, final long seed, final Policy<TetrisState, A> policy,
+            final Map<Long, String> positions) {
+        @SuppressWarnings("unchecked")
+        final StateHashing<TetrisState> hashing = (StateHashing<TetrisState>) rules;
+        TetrisState state = rules.generateInitialState(players, new RandomStream(seed));
+        final Player player = players.iterator().next();
+        for (int actions = 0; !rules.isTerminal(state) && actions < MAX_ACTIONS; actions++) {
+            /* Pieces descend every other step, which the full hash includes */
+            checkHashApart(hashing.stateHash(state),
+                    describePosition(state) + " " + state.getGameTime() % 2, positions);
+            state = rules.transition(state, policy.chooseAction(state,
+                    rules.getAvailableActions(player, state)));
+        }
+    }
+
+    private static void checkHashApart(final long hash, final String position,
+            final Map<Long, String> positions) {
+        final String seen = positions.putIfAbsent(hash, position);
+        Validate.isTrue(seen == null || seen.equals(position), () -> String.format(
+                "Positions share the hash %x:%n%s%n%s", hash, seen, position));
+    }
+
+    /**
+     * @param state
+     * @return Everything that tells one position apart from another: the
+     * settled cells, the Tetrimino under control and those in preview
+     */
+    private static String describePosition(final TetrisState state) {
+        final StringBuilder builder = new StringBuilder();
+        for (int row = 0; row < state.getHeight(); row++) {
+            builder.append(Integer.toHexString(state.getRowMask(row))).append(',');
+        }
+        final TetrisShape activeShape = state.getActiveShape();
+        if (activeShape != null) {
+            builder.append(activeShape.getAllBlocks().stream()
+                    .sorted(Comparator.comparingInt(TetrisBlock::getY)
+                            .thenComparingInt(TetrisBlock::getX))
+                    .map((block) -> block.getX() + ":" + block.getY())
+                    .collect(Collectors.toList()));
+            builder.append(" turned ").append(activeShape.getRotation());
+        }
+        return builder.append(' ').append(state.getPreview()).toString();
+    }
+
+    /**
+     * @return A policy placing each Tetrimino as low on the board as it goes
+     */
+    static Policy<TetrisState, TetrisPlacement> lowestPlacement() {
+        return (state, placements) -> Collections.min(placements,
+                Comparator.comparingInt(TetrisPlacement::getRow)
+                        .thenComparingInt(TetrisPlacement::getColumn)
+                        .thenComparingInt(TetrisPlacement::getRotation));
+    }
+
+    /**
+     * @param state
+     * @return Everything a step may change about a state
+     */
+    static String describe(final TetrisState state) {
+        return String.format("%s%s %s %s %s", state, state.getPlayerScores(),
+                state.getActiveShape(), state.getPreview(), state.isTerminal());
+    }
+}
@@ -0,0 +1,117 @@
+package tictactoe;
+
+import java.util.AbstractCollection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Read-only view of the actions available to one mark: every empty space on
+ * the board, served from the layout's interned TicTacToeActions.
+ *
+ * The view is a snapshot of the empty spaces at the time it was created, so
+ * it stays stable even if the state it came from is modified afterwards. For
+ * boards of up to 8 x 8 the snapshot is a single long, so enumerating moves
+ * allocates nothing but this object (and an iterator, if one is requested).
+ */
+final class AvailableActions extends AbstractCollection<TicTacToeAction>
+{
+    private final BoardLayout layout_;
+    private final TicTacToeMark mark_;
+    /* One bit per empty space, 64 spaces per word */
+    private final long [] emptyWords_;
+    /* Empty spaces for compact boards, when emptyWords_ is null */
+    private final long empty_;
+    private final int size_;
+
+    AvailableActions(final BoardLayout layout, final TicTacToeMark mark, final long empty)
+    {
+        layout_ = layout;
+        mark_ = mark;
+        emptyWords_ = null;
+        empty_ = empty;
+        size_ = Long.bitCount(empty);
+    }
+
+    AvailableActions(final BoardLayout layout, final TicTacToeMark mark, final long [] emptyWords)
+    {
+        layout_ = layout;
+        mark_ = mark;
+        emptyWords_ = emptyWords;
+        empty_ = 0L;
+        int size = 0;
+        for(final long word : emptyWords)
+        {
+            size += Long.bitCount(word);
+        }
+        size_ = size;
+    }
+
+    @Override
+    public boolean contains(final Object other)
+    {
+        if(!(other instanceof TicTacToeAction))
+        {
+            return false;
+        }
+        final TicTacToeAction action = (TicTacToeAction) other;
+        if(action.getMark() != mark_ || !layout_.contains(action.getPosition()))
+        {
+            return false;
+        }
+        return isEmpty(layout_.indexOf(action.getPosition()));
+    }
+
+    @Override
+    public int size()
+    {
+        return size_;
+    }
+
+    @Override
+    public Iterator<TicTacToeAction> iterator()
+    {
+        return new Iterator<TicTacToeAction>()
+        {
+            private int word_ = 0;
+            private long remaining_ = (emptyWords_ == null) ? empty_
+                    : (emptyWords_.length == 0 ? 0L : emptyWords_[0]);
+
+            @Override
+            public boolean hasNext()
+            {
+                advanceToNonEmptyWord();
+                return remaining_ != 0;
+            }
+
+            @Override
+            public TicTacToeAction next()
+            {
+                if(!hasNext())
+                {
+                    throw new NoSuchElementException();
+                }
+                final int index = word_ * Long.SIZE + Long.numberOfTrailingZeros(remaining_);
+                /* Clear the lowest set bit */
+                remaining_ &= remaining_ - 1;
+                return layout_.actionFor(mark_, index);
+            }
+
+            private void advanceToNonEmptyWord()
+            {
+                while(remaining_ == 0 && emptyWords_ != null && word_ + 1 < emptyWords_.length)
+                {
+                    remaining_ = emptyWords_[++word_];
+                }
+            }
+        };
+    }
+
+    private boolean isEmpty(final int index)
+    {
+        if(emptyWords_ == null)
+        {
+            return (empty_ & (1L << index)) != 0;
+        }
+        return BoardLayout.isSet(emptyWords_, index);
+    }
+}
@@ -0,0 +1,264 @@
+package tictactoe;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import utils.Validate;
+import utils.Vector2;
+import utils.ZobristKeys;
+
+/**
+ * Immutable geometry shared by every TicTacToeState of the same width and
+ * height: the mapping between positions and bit indices, the interned
+ * TicTacToeActions for every space, the precomputed line masks used to
+ * detect n-in-a-row, and the Zobrist keys used to hash states. Layouts are
+ * created once per board size and cached, so states never have to copy any
+ * of this.
+ *
+ * Bit indices run across rows, ie index = x + y * width.
+ */
+final class BoardLayout
+{
+    /* A single long can hold one bit per space for boards of up to 8 x 8 */
+    static final int MAX_COMPACT_SPACES = Long.SIZE;
+
+    /* The four unique lines through a space: x axis, y axis, y = x, y = -x */
+    static final int [][] LINE_DIRECTIONS = { { 1, 0 }, { 0, 1 }, { 1, 1 }, { 1, -1 } };
+
+    /* Fixed, so that hashes are the same from one run to the next */
+    private static final long ZOBRIST_SEED = 0x7ac7ac7ac7ac7acL;
+
+    private static final Map<Vector2, BoardLayout> LAYOUTS = new ConcurrentHashMap<>();
+
+    static BoardLayout forBoard(final int width, final int height)
+    {
+        return LAYOUTS.computeIfAbsent(new Vector2(width, height), size -> new BoardLayout(
+                size.getX(), size.getY()));
+    }
+
+    private final int width_;
+    private final int height_;
+    private final Vector2 [] positions_;
+    /* Every possible action, indexed by mark ordinal, then by space */
+    private final TicTacToeAction [][] actions_;
+    /* One key per mark per space, then one per mark for whose turn it is */
+    private final ZobristKeys zobristKeys_;
+    /* Line masks by n-in-a-row, then by space; only for compact boards */
+    private final Map<Integer, long [][]> lineMasks_ = new ConcurrentHashMap<>();
+
+    private BoardLayout(final int width, final int height)
+    {
+        Validate.isTrue(width > 0 && height > 0, "Cannot lay out a board with no spaces");
+        width_ = width;
+        height_ = height;
+        positions_ = new Vector2 [width * height];
+        for(int index = 0; index < positions_.length; ++index)
+        {
+            positions_[index] = new Vector2(index % width, index / width);
+        }
+        actions_ = new TicTacToeAction [TicTacToeMark.values().length] [positions_.length];
+        for(final TicTacToeMark mark : TicTacToeMark.values())
+        {
+            for(int index = 0; index < positions_.length; ++index)
+            {
+                actions_[mark.ordinal()][index] = new TicTacToeAction(positions_[index], mark);
+            }
+        }
+        final int marks = TicTacToeMark.values().length;
+        zobristKeys_ = new ZobristKeys(marks * positions_.length + marks, ZOBRIST_SEED);
+    }
+
+    int width()
+    {
+        return width_;
+    }
+
+    int height()
+    {
+        return height_;
+    }
+
+    int spaces()
+    {
+        return positions_.length;
+    }
+
+    /**
+     * @return Whether or not the whole board fits in a single long per mark
+     */
+    boolean isCompact()
+    {
+        return positions_.length <= MAX_COMPACT_SPACES;
+    }
+
+    /**
+     * @return Mask with one bit set for every space of a compact board
+     */
+    long compactMask()
+    {
+        return (spaces() == Long.SIZE) ? -1L : (1L << spaces()) - 1;
+    }
+
+    boolean contains(final int x, final int y)
+    {
+        return x >= 0 && x < width_ && y >= 0 && y < height_;
+    }
+
+    boolean contains(final Vector2 position)
+    {
+        return position != null && contains(position.getX(), position.getY());
+    }
+
+    int indexOf(final int x, final int y)
+    {
+        return x + y * width_;
+    }
+
+    int indexOf(final Vector2 position)
+    {
+        return indexOf(position.getX(), position.getY());
+    }
+
+    Vector2 positionOf(final int index)
+    {
+        return positions_[index];
+    }
+
+    /**
+     * @return The shared TicTacToeAction for placing $mark on space $index
+     */
+    TicTacToeAction actionFor(final TicTacToeMark mark, final int index)
+    {
+        return actions_[mark.ordinal()][index];
+    }
+
+    /**
+     * @return Zobrist key for $mark on space $index
+     */
+    long zobristKey(final TicTacToeMark mark, final int index)
+    {
+        return zobristKeys_.get(mark.ordinal() * positions_.length + index);
+    }
+
+    /**
+     * @return Zobrist key for it being the turn of the player with $mark
+     */
+    long zobristTurnKey(final TicTacToeMark mark)
+    {
+        return zobristKeys_.get(TicTacToeMark.values().length * positions_.length
+                + mark.ordinal());
+    }
+
+    /**
+     * Masks of every line of exactly $lineLength spaces on a compact board,
+     * grouped by the spaces they pass through. A mark placed on a space
+     * completes a line iff one of that space's masks is fully marked.
+     *
+     * @param lineLength
+     *            Number of marks in a row that make up a line
+     * @return Line masks, indexed by space
+     */
+    long [][] lineMasks(final int lineLength)
+    {
+        Validate.isTrue(isCompact(), "Line masks are only available for compact boards");
+        /* Plain lookup first; capturing this::computeLineMasks allocates */
+        final long [][] lineMasks = lineMasks_.get(lineLength);
+        if(lineMasks != null)
+        {
+            return lineMasks;
+        }
+        return lineMasks_.computeIfAbsent(lineLength, this::computeLineMasks);
+    }
+
+    private long [][] computeLineMasks(final int lineLength)
+    {
+        Validate.isTrue(lineLength > 0, "Cannot compute lines of non-positive length");
+        final List<List<Long>> masksBySpace = new ArrayList<>(spaces());
+        for(int index = 0; index < spaces(); ++index)
+        {
+            masksBySpace.add(new ArrayList<>());
+        }
+
+        /* Enumerate every line by its starting space and direction */
+        for(int index = 0; index < spaces(); ++index)
+        {
+            final int startX = index % width_;
+            final int startY = index / width_;
+            for(final int [] direction : LINE_DIRECTIONS)
+            {
+                final int endX = startX + direction[0] * (lineLength - 1);
+                final int endY = startY + direction[1] * (lineLength - 1);
+                if(!contains(endX, endY))
+                {
+                    continue;
+                }
+                long mask = 0L;
+                for(int step = 0; step < lineLength; ++step)
+                {
+                    mask |= 1L << indexOf(startX + direction[0] * step, startY + direction[1]
+                            * step);
+                }
+                for(int step = 0; step < lineLength; ++step)
+                {
+                    masksBySpace.get(indexOf(startX + direction[0] * step, startY + direction[1]
+                            * step)).add(mask);
+                }
+                /* Lines of length one run in every direction at once */
+                if(lineLength == 1)
+                {
+                    break;
+                }
+            }
+        }
+
+        final long [][] lineMasks = new long [spaces()] [];
+        for(int index = 0; index < spaces(); ++index)
+        {
+            lineMasks[index] = masksBySpace.get(index).stream().mapToLong(Long::longValue)
+                    .toArray();
+        }
+        return lineMasks;
+    }
+
+    /**
+     * Counts the longest run of marked spaces through a space by walking the
+     * four lines through it. Used for boards too large for line masks.
+     *
+     * @param marked
+     *            Bitset (one bit per space, 64 spaces per word) of the marks
+     *            that count towards the run
+     * @param index
+     *            Space to measure through
+     * @return The length of the longest run, including the space itself
+     */
+    int longestRunThrough(final long [] marked, final int index)
+    {
+        final int x = index % width_;
+        final int y = index / width_;
+        int longestRun = 0;
+        for(final int [] direction : LINE_DIRECTIONS)
+        {
+            int run = 1;
+            for(int sign = -1; sign <= 1; sign += 2)
+            {
+                int currentX = x + sign * direction[0];
+                int currentY = y + sign * direction[1];
+                while(contains(currentX, currentY) && isSet(marked, indexOf(currentX, currentY)))
+                {
+                    ++run;
+                    currentX += sign * direction[0];
+                    currentY += sign * direction[1];
+                }
+            }
+            longestRun = Math.max(longestRun, run);
+        }
+        return longestRun;
+    }
+
+    static boolean isSet(final long [] bits, final int index)
+    {
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+}
@@ -0,0 +1,56 @@
+package tictactoe;
+
+import java.util.Set;
+
+import core.Player;
+
+/**
+ * Rules for the generalised m,n,k-game: two players take turns marking an m x
+ * n board, and the first to get k marks in a row wins. TicTacToe is the
+ * 3,3,3-game; freestyle Gomoku is the 15,15,5-game.
+ *
+ * States created by these rules keep per-line run-length counters which are
+ * updated as each mark is placed, so checking for a win costs the same on a
+ * 19x19 board as on a 3x3 one.
+ */
+public class MNKRules extends TicTacToeRules
+{
+    private static final int GOMOKU_DIMENSION = 15;
+    private static final int GOMOKU_N_IN_A_ROW = 5;
+
+    /**
+     * @return Rules for freestyle Gomoku: 5-in-a-row on a 15x15 board
+     */
+    public static MNKRules gomoku()
+    {
+        return new MNKRules(GOMOKU_DIMENSION, GOMOKU_DIMENSION, GOMOKU_N_IN_A_ROW);
+    }
+
+    /**
+     * @param width
+     *            Width of the board (m)
+     * @param height
+     *            Height of the board (n)
+     * @param nInARow
+     *            Number of marks in a row needed to win (k)
+     */
+    public MNKRules(final int width, final int height, final int nInARow)
+    {
+        super(width, height, nInARow);
+    }
+
+    @Override
+    public TicTacToeState generateInitialState(final Set<Player> players)
+    {
+        final TicTacToeState state = super.generateInitialState(players);
+        state.trackRuns();
+        return state;
+    }
+
+    @Override
+    protected boolean isWinningMove(final TicTacToeState state, final TicTacToeAction action)
+    {
+        /* A lookup of the run counters at the position that was just marked */
+        return state.getLongestRunThrough(action.getPosition()) >= getNInARow();
+    }
+}
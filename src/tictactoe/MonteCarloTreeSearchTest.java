@@ -0,0 +1,104 @@
+package tictactoe;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import utils.RandomStream;
+import utils.Validate;
+import core.Player;
+import core.policies.MonteCarloTreeSearchPolicy;
+import core.policies.SearchBudget;
+
+/**
+ * Solve tic-tac-toe, then check that a Monte Carlo tree search never throws
+ * away a drawn game: in every position where the player to move can hold a
+ * draw but also has a losing move, the search must not play a losing move.
+ */
+public class MonteCarloTreeSearchTest
+{
+    private static final long ITERATIONS = 5000;
+
+    public static void main(final String [] args)
+    {
+        final Set<Player> players = new LinkedHashSet<>(Arrays.asList(new Player("Player 1"),
+                new Player("Player 2")));
+        final TicTacToeRules rules = new TicTacToeRules();
+        final Map<TicTacToeState, Integer> values = new HashMap<>();
+
+        int positions = 0;
+        final Set<TicTacToeState> seen = new HashSet<>();
+        final Deque<TicTacToeState> unexplored = new ArrayDeque<>();
+        unexplored.add(rules.generateInitialState(players, new RandomStream(0)));
+        while(!unexplored.isEmpty())
+        {
+            final TicTacToeState state = unexplored.poll();
+            if(!seen.add(state) || rules.isTerminal(state))
+            {
+                continue;
+            }
+            final Player player = rules.getCurrentPlayer(state);
+            boolean canLose = false;
+            for(final TicTacToeAction action : rules.getAvailableActions(player, state))
+            {
+                final TicTacToeState next = rules.transition(state, action);
+                canLose |= -valueOf(rules, next, values) < 0;
+                unexplored.add(next);
+            }
+            if(valueOf(rules, state, values) != 0 || !canLose)
+            {
+                continue;
+            }
+
+            final MonteCarloTreeSearchPolicy<TicTacToeState, TicTacToeAction> policy = new MonteCarloTreeSearchPolicy<>(
+                    rules, SearchBudget.iterations(ITERATIONS), 1, new RandomStream(positions));
+            final TicTacToeAction chosen = policy.chooseAction(state,
+                    rules.getAvailableActions(player, state));
+            Validate.isTrue(-valueOf(rules, rules.transition(state, chosen), values) == 0,
+                    () -> String.format("Search lost a drawn game by playing %s in:%n%s",
+                            chosen, state));
+            ++positions;
+        }
+        System.out.println(String.format(
+                "Held the draw in all %d drawn positions that had losing moves.", positions));
+    }
+
+    /**
+     * @return 1 if the player to move in $state wins with best play, -1 if
+     *         they lose and 0 if the game is drawn
+     */
+    private static int valueOf(final TicTacToeRules rules, final TicTacToeState state,
+            final Map<TicTacToeState, Integer> values)
+    {
+        final Integer known = values.get(state);
+        if(known != null)
+        {
+            return known;
+        }
+        final int value;
+        if(rules.isTerminal(state))
+        {
+            /* Whoever moved last is the only one who can have won, and it is
+             nobody's turn, but the value is for the player who would move next */
+            value = rules.scores(state).values().stream()
+                    .anyMatch((score) -> score.getValue() > 0) ? -1 : 0;
+        }
+        else
+        {
+            int best = -1;
+            final Player player = rules.getCurrentPlayer(state);
+            for(final TicTacToeAction action : rules.getAvailableActions(player, state))
+            {
+                best = Math.max(best, -valueOf(rules, rules.transition(state, action), values));
+            }
+            value = best;
+        }
+        values.put(state, value);
+        return value;
+    }
+}
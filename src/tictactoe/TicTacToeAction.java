@@ -46,6 +46,11 @@ public class TicTacToeAction
     @Override
     public boolean equals(final Object other)
     {
+        if(other == this)
+        {
+            /* Actions are usually shared instances, so this is the common case */
+            return true;
+        }
         if(!(other instanceof TicTacToeAction))
         {
             return false;
@@ -1,73 +1,78 @@
 package tictactoe;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 import utils.ClosedRange;
 import utils.Validate;
-import utils.Vector2;
+import utils.ValidationLevel;
 import core.Player;
-import core.Rules;
+import core.ReversibleRules;
 import core.Score;
+import core.StateHashing;
 import java.util.Set;
 
 /**
  * @author Ginger Provides operations for updating the game, finding available
  *         moves, and finding a n-in-a-row (3-in-a-row by default).
  */
-public class TicTacToeRules implements Rules<TicTacToeState, TicTacToeAction>
+public class TicTacToeRules implements
+        ReversibleRules<TicTacToeState, TicTacToeAction, TicTacToeUndo>,
+        StateHashing<TicTacToeState>
 {
-    /*
-     * Number of marks in a row that a Player must have in order to consider
-     * having won
-     */
-    private static final int N_IN_A_ROW = 3;
+    /* Classic TicTacToe: 3-in-a-row on a 3x3 board */
+    private static final int DEFAULT_DIMENSION = 3;
+    private static final int DEFAULT_N_IN_A_ROW = 3;
     private static final int NUMBER_OF_PLAYERS = 2;
 
     /* The default Mark that starts the game */
     private static final TicTacToeMark MARK_GOES_FIRST = TicTacToeMark.X;
 
+    private final int width_;
+    private final int height_;
     /*
-     * Generate unit vectors to point towards every possible direction that we
-     * can "walk" along the TicTacToeState. These "paths" are unique lines
-     * representing the x axis, the y axis, the line y = x, and the line y = -x
+     * Number of marks in a row that a Player must have in order to consider
+     * having won
      */
-    private static final int ITERABLE_PATH_COUNT = 4;
-    private static final int INVERSE = -1;
-    private static final Collection<Vector2> PATHS = new ArrayList<Vector2>(ITERABLE_PATH_COUNT);
+    private final int nInARow_;
 
-    /*
-     * Initialize PATHS with all paths (size == ITERABLE_PATH_COUNT). Outside of
-     * this, PATHS should never be modified
+    public TicTacToeRules()
+    {
+        this(DEFAULT_DIMENSION, DEFAULT_DIMENSION, DEFAULT_N_IN_A_ROW);
+    }
+
+    /**
+     * @param width
+     *            Width of the board (m)
+     * @param height
+     *            Height of the board (n)
+     * @param nInARow
+     *            Number of marks in a row needed to win (k)
      */
-    static
+    protected TicTacToeRules(final int width, final int height, final int nInARow)
     {
-        for(int dX = -1; dX <= 1; ++dX)
-        {
-            for(int dY = -1; dY <= 1; ++dY)
-            {
-                if(dX == 0 && dY == 0)
-                {
-                    /*
-                     * These directions specify actual "movement", which a
-                     * 0-direction vector does not have...
-                     */
-                    continue;
-                }
-
-                final Vector2 unitVector = new Vector2(dX, dY);
-                /*
-                 * Only append if we don't already contain our inverse (vector
-                 * for the same line)
-                 */
-                if(!PATHS.contains(unitVector.multiply(INVERSE)))
-                {
-                    PATHS.add(unitVector);
-                }
-            }
-        }
+        Validate.isTrue(width > 0 && height > 0, "Cannot play on a board with no spaces.");
+        Validate.isTrue(nInARow > 0, "Cannot win with a non-positive number of marks in a row.");
+        Validate.isTrue(nInARow <= Math.max(width, height),
+                "Cannot win with more marks in a row than fit on the board.");
+        width_ = width;
+        height_ = height;
+        nInARow_ = nInARow;
+    }
+
+    public int getWidth()
+    {
+        return width_;
+    }
+
+    public int getHeight()
+    {
+        return height_;
+    }
+
+    public int getNInARow()
+    {
+        return nInARow_;
     }
 
     @Override
@@ -95,15 +100,48 @@ public class TicTacToeRules implements Rules<TicTacToeState, TicTacToeAction>
     @Override
     public TicTacToeState transition(final TicTacToeState state, final TicTacToeAction action)
     {
+        validateMove(state, action);
+        /* Copy the old state over */
+        final TicTacToeState newState = new TicTacToeState(state);
+        /* Mark the board */
+        newState.setMarkForPosition(action.getPosition(), action.getMark());
+        finishMove(newState, action);
+        return newState;
+    }
+
+    @Override
+    public TicTacToeUndo apply(final TicTacToeState state, final TicTacToeAction action)
+    {
+        validateMove(state, action);
+        final TicTacToeUndo undo = state.setMarkForPositionReversibly(action.getPosition(),
+                action.getMark());
+        finishMove(state, action);
+        return undo;
+    }
+
+    @Override
+    public void undo(final TicTacToeState state, final TicTacToeUndo undo)
+    {
+        Validate.notNull(state, "Cannot undo a move on a null TicTacToeBoard.");
+        Validate.notNull(undo, "Cannot undo a move without its undo token.");
+        state.undo(undo);
+    }
+
+    private static void validateMove(final TicTacToeState state, final TicTacToeAction action)
+    {
+        if(!Validate.isEnabled(ValidationLevel.BOUNDARY))
+        {
+            return;
+        }
         Validate.notNull(state, "Cannot apply an action to a null TicTacToeBoard.");
         Validate.notNull(action, "Cannot apply a null action to a TicTacToeBoard.");
         Validate.isFalse(state.isTerminal(),
                 "Cannot make a move for a state that is already terminal.");
+    }
 
-        /* Copy the old state over */
-        final TicTacToeState newState = new TicTacToeState(state);
-        /* Mark the board */
-        newState.setMarkForPosition(action.getPosition(), action.getMark());
+    /* Score the mark just placed by $action, and pass the turn on */
+    private void finishMove(final TicTacToeState newState, final TicTacToeAction action)
+    {
         /* Check to see if this move won the game */
         if(isWinningMove(newState, action))
         {
@@ -126,8 +164,6 @@ public class TicTacToeRules implements Rules<TicTacToeState, TicTacToeAction>
             newState.setCurrentPlayer(newState.getPlayer((action.getMark() == TicTacToeMark.X) ? TicTacToeMark.O
                     : TicTacToeMark.X));
         }
-
-        return newState;
     }
 
     @Override
@@ -142,14 +178,8 @@ public class TicTacToeRules implements Rules<TicTacToeState, TicTacToeAction>
         Validate.notNull(state, "Null states have no available actions.");
         Validate.isTrue(!state.isTerminal(), "Terminal states cannot have actions taken on them.");
 
-        /* Grab all positions that don't currently have a mark (null mapping) */
-        final Collection<Vector2> emptyPositions = state.getBoardAsMap().keySet().stream()
-                .filter((position) -> state.getMarkForPosition(position) == null)
-                .collect(Collectors.toList());
-        final TicTacToeMark mark = state.getMarkForPlayer(player);
-        /* ...and turn them into actions */
-        return emptyPositions.stream().map(position -> new TicTacToeAction(position, mark))
-                .collect(Collectors.toList());
+        /* A read-only view of the (shared) actions for every unmarked space */
+        return state.getAvailableActions(state.getMarkForPlayer(player));
     }
 
     @Override
@@ -172,34 +202,14 @@ public class TicTacToeRules implements Rules<TicTacToeState, TicTacToeAction>
         return state.getPlayerScore(player);
     }
 
-    private boolean isWinningMove(final TicTacToeState state, final TicTacToeAction action)
+    /**
+     * @return Whether or not $action, already applied to $state, completed a
+     *         line of n-in-a-row
+     */
+    protected boolean isWinningMove(final TicTacToeState state, final TicTacToeAction action)
     {
-        final Vector2 position = action.getPosition();
-        for(final Vector2 path : PATHS)
-        {
-            int totalPathLength = 1;
-            /*
-             * Walk in both directions until we hit the end of the board or we
-             * hit a mark that isn't ours
-             */
-            final Vector2[] directions = { path, path.multiply(INVERSE) };
-            for(final Vector2 direction : directions)
-            {
-                for(Vector2 currentPosition = position.add(direction); state
-                        .isPositionWithinBoard(currentPosition)
-                        && state.getMarkForPosition(currentPosition) == action.getMark(); currentPosition = currentPosition
-                        .add(direction))
-                {
-                    ++totalPathLength;
-                }
-            }
-            if(totalPathLength >= N_IN_A_ROW)
-            {
-                return true;
-            }
-
-        }
-        return false;
+        /* Checked against precomputed line masks through the marked position */
+        return state.completesLine(action.getPosition(), nInARow_);
     }
 
     @Override
@@ -211,7 +221,7 @@ public class TicTacToeRules implements Rules<TicTacToeState, TicTacToeAction>
     @Override
     public TicTacToeState generateInitialState(final Set<Player> players)
     {
-        return new TicTacToeState(players, N_IN_A_ROW);
+        return new TicTacToeState(players, width_, height_);
     }
 
     @Override
@@ -226,4 +236,22 @@ public class TicTacToeRules implements Rules<TicTacToeState, TicTacToeAction>
     {
         return new TicTacToeState(state);
     }
+
+    /**
+     * Transitions always mark a copy of the board, so a state can be viewed
+     * as it is
+     */
+    @Override
+    public TicTacToeState readOnlyView(final TicTacToeState state)
+    {
+        Validate.notNull(state, "Cannot view a null state.");
+        return state;
+    }
+
+    @Override
+    public long stateHash(final TicTacToeState state)
+    {
+        Validate.notNull(state, "Cannot hash a null state.");
+        return state.getHash();
+    }
 }
@@ -1,38 +1,81 @@
 package tictactoe;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.stream.Collectors;
+import java.util.Objects;
 
 import utils.Validate;
 import utils.Vector2;
 import core.Player;
+import core.PlayerIndex;
 import core.Score;
 
 public class TicTacToeState
 {
+    private static final TicTacToeMark [] MARKS = TicTacToeMark.values();
+    /* Run-length counters are kept in chunks of 64 */
+    private static final int RUN_CHUNK_SHIFT = 6;
+    private static final int RUN_CHUNK_MASK = (1 << RUN_CHUNK_SHIFT) - 1;
+
     private int width_;
     private int height_;
+    /* Geometry shared by all boards of this size */
+    private BoardLayout layout_;
+    /*
+     * The board is stored as one bitset per mark, a bit per space. Boards of up
+     * to 8 x 8 fit in a single long per mark, so copying a state copies no
+     * arrays at all. Larger boards fall back to arrays of words (null
+     * otherwise), indexed by mark ordinal.
+     */
+    private long xBits_;
+    private long oBits_;
+    private long [][] wideBits_;
+    /*
+     * Optional run-length counters for constant-time win detection on large
+     * boards (null unless enabled). For each line direction, then each space:
+     * the length of the run of same marks through that space, split into
+     * chunks of 64 counters. Only the two ends of every run (and the most
+     * recently marked space) are kept current; that is all an update ever
+     * needs to read.
+     */
+    private short [][] runs_;
+    private int lastMarkedIndex_ = -1;
+    /*
+     * wideBits_ and runs_ are copy-on-write: copies share them, and marking a
+     * space copies only the arrays it writes to, so copying a state costs the
+     * same on any size of board. These flag the mark arrays of wideBits_ and
+     * the chunks of runs_ that this state has copied (or created) for itself,
+     * and may write in place.
+     */
+    private boolean [] ownedWideBits_;
+    private boolean [] ownedRuns_;
     /*
-     * With a map of positions to TicTacToeMarks representing the board, we can
-     * have arbitrary TicTacToe boards (non-rectangular). Currently there are no
-     * constructors to support this, but the fact remains - it is possible.
+     * Set once a copy shares wideBits_ and runs_: both states must then copy
+     * the arrays of mark arrays and chunks before writing to them
      */
-    private Map<Vector2, TicTacToeMark> board_;
-    /* Keep track of which player uses which mark */
-    private Map<Player, TicTacToeMark> playerMarks_;
-    /* Keep track of player scores */
-    private Map<Player, Score> playerScores_;
+    private boolean arraysShared_ = false;
+    /*
+     * Keep track of which player uses which mark: a player's index is the
+     * ordinal of their mark. Immutable, so copies share it.
+     */
+    private PlayerIndex players_;
+    /*
+     * Keep track of player scores, by player index. Copies share this array;
+     * setScore replaces it rather than modifying it in place.
+     */
+    private double [] playerScores_;
     /* Keep track of the current player */
     private Player currentPlayer_;
     /* Keep track of the number of marks placed on the board */
     private int marksPlaced_ = 0;
     private boolean terminal_ = false;
+    /*
+     * Zobrist hash of the marks on the board and whose turn it is, kept up to
+     * date as marks are placed and turns change
+     */
+    private long hash_ = 0L;
 
     /*
      * We need default constructors in order to serialize our data via Jackson.
@@ -79,30 +122,24 @@ public class TicTacToeState
         width_ = width;
         height_ = height;
 
-        board_ = new HashMap<Vector2, TicTacToeMark>(width * height);
-        initializeBoard();
-
-        /* Assign marks to players in the order they appear */
-        playerMarks_ = new HashMap<Player, TicTacToeMark>(players.size());
-        /*
-         * Don't initialize player scores to anything - scores will be assigned
-         * if and when a score should be. We leave the getScore() option to
-         * determine what exactly a null score should be
-         */
-        playerScores_ = new HashMap<Player, Score>(players.size());
-        Validate.isTrue(TicTacToeMark.values().length == players.size(), String.format(
-                "There must be exactly one player for each mark!%n" + "Got: %d players, %d marks.",
-                players.size(), TicTacToeMark.values().length));
-
-        /*
-         * Java needs a bidirectional Map so much. Need to determine an
-         * assignment of players to marks.
-         */
-        final List<Player> orderedPlayers = new ArrayList<>(players);
-        for(int i = 0; i < orderedPlayers.size(); i++)
+        layout_ = BoardLayout.forBoard(width, height);
+        if(!layout_.isCompact())
         {
-            playerMarks_.put(orderedPlayers.get(i), TicTacToeMark.values()[i]);
+            final int words = (layout_.spaces() + Long.SIZE - 1) / Long.SIZE;
+            wideBits_ = new long [TicTacToeMark.values().length] [words];
+            ownedWideBits_ = new boolean [wideBits_.length];
+            Arrays.fill(ownedWideBits_, true);
         }
+
+        Validate.isTrue(TicTacToeMark.values().length == players.size(),
+                () -> String.format("There must be exactly one player for each mark!%n"
+                        + "Got: %d players, %d marks.", players.size(),
+                        TicTacToeMark.values().length));
+
+        /* Assign marks to players in the order they appear */
+        players_ = new PlayerIndex(players);
+        /* Nobody has scored yet */
+        playerScores_ = new double [players_.size()];
         /*
          * The rules should determine what player goes first, so we initialize
          * currentPlayer_ to null
@@ -113,7 +150,8 @@ public class TicTacToeState
     /**
      * Generates a mutable copy of the provided board. Taking a copy of another
      * board will divorce the two states completely; modifying one board will
-     * have no effect on the other.
+     * have no effect on the other. Nothing proportional to the size of the
+     * board is copied until one of them is marked.
      *
      * @param copy
      *            TicTacToeBoard to copy. Must not be null.
@@ -123,69 +161,90 @@ public class TicTacToeState
         Validate.notNull(copy, "Cannot copy a null TicTacToeBoard!");
         width_ = copy.width_;
         height_ = copy.height_;
+        layout_ = copy.layout_;
         marksPlaced_ = copy.marksPlaced_;
-
-        board_ = new HashMap<Vector2, TicTacToeMark>(copy.board_);
-        playerMarks_ = new HashMap<Player, TicTacToeMark>(copy.playerMarks_);
-        playerScores_ = new HashMap<Player, Score>(copy.playerScores_);
+        currentPlayer_ = copy.currentPlayer_;
+        terminal_ = copy.terminal_;
+        hash_ = copy.hash_;
+
+        xBits_ = copy.xBits_;
+        oBits_ = copy.oBits_;
+        lastMarkedIndex_ = copy.lastMarkedIndex_;
+        /* Immutable or copy-on-write, so safe to share */
+        wideBits_ = copy.wideBits_;
+        runs_ = copy.runs_;
+        arraysShared_ = true;
+        copy.arraysShared_ = true;
+        players_ = copy.players_;
+        playerScores_ = copy.playerScores_;
     }
 
-    private void initializeBoard()
+    /**
+     * Starts maintaining run-length counters, so that
+     * getLongestRunThrough(...) is a constant-time lookup for the most
+     * recently marked position regardless of board size. Must be enabled
+     * before any marks are placed.
+     */
+    void trackRuns()
     {
-        for(int i = 0; i < width_; ++i)
-        {
-            for(int j = 0; j < height_; ++j)
-            {
-                final Vector2 position = new Vector2(i, j);
-                board_.put(position, null);
-            }
-        }
+        Validate.isTrue(marksPlaced_ == 0, "Run tracking must be enabled on an empty board");
+        final int counters = BoardLayout.LINE_DIRECTIONS.length * layout_.spaces();
+        runs_ = new short [(counters + RUN_CHUNK_MASK) >>> RUN_CHUNK_SHIFT] [RUN_CHUNK_MASK + 1];
+        ownedRuns_ = new boolean [runs_.length];
+        Arrays.fill(ownedRuns_, true);
     }
 
     public TicTacToeMark getMarkForPlayer(final Player player)
     {
-        Validate.isTrue(playerMarks_.containsKey(player),
-                String.format("No known marks for player %s", player));
-        return playerMarks_.get(player);
+        final int index = players_.indexOf(player);
+        Validate.isTrue(index >= 0, () -> String.format("No known marks for player %s", player));
+        return MARKS[index];
     }
 
     /* Find the player who corresponds with a particular mark on the game board */
-    /*
-     * TODO?: Implement a bidirectional map like in the thirty different
-     * excellent libraries listed on StackOverFlow?
-     */
     public Player getPlayer(final TicTacToeMark mark)
     {
         Validate.notNull(mark, "Null marks have no players.");
-        Validate.isTrue(playerMarks_.values().contains(mark),
-                "Mark not found in all the marks this state knows about.");
-
-        final List<Entry<Player, TicTacToeMark>> matchingPlayers = playerMarks_.entrySet().stream()
-                .filter((entry) -> entry.getValue() == mark).collect(Collectors.toList());
-
-        Validate.notEmpty(matchingPlayers);
         /*
-         * Validate the one-to-one mapping of players to marks. This is an
-         * assumption we make about the way the game will be played!
+         * The constructor guarantees a one-to-one mapping of players to marks,
+         * so this is a simple lookup
          */
-        Validate.isTrue(matchingPlayers.size() == 1,
-                "Found more than one player who places this mark.");
-        return matchingPlayers.get(0).getKey();
+        return players_.get(mark.ordinal());
+    }
+
+    /**
+     * @return Numbering of the players; a player's number is the ordinal of
+     *         their mark
+     */
+    public PlayerIndex getPlayerIndex()
+    {
+        return players_;
     }
 
     public void setScore(final Player player, final Score score)
     {
-        playerScores_.put(player, score);
+        final int index = players_.indexOf(player);
+        Validate.isTrue(index >= 0, () -> String.format("Cannot score unknown player %s", player));
+        Validate.notNull(score, "Cannot assign a null score");
+        /* Scores may be shared with copies of this state; never modify them */
+        final double [] playerScores = playerScores_.clone();
+        playerScores[index] = score.getValue();
+        playerScores_ = playerScores;
     }
 
     public Score getPlayerScore(final Player player)
     {
-        return playerScores_.getOrDefault(player, new Score());
+        final int index = players_.indexOf(player);
+        return new Score((index < 0) ? 0 : playerScores_[index]);
     }
 
+    /**
+     * @return Read-only view of every player's score; 0 until they have
+     *         scored. Later changes to this state do not show through.
+     */
     public Map<Player, Score> getPlayerScores()
     {
-        return new HashMap<Player, Score>(playerScores_);
+        return players_.asScores(playerScores_);
     }
 
     public void makeTerminal()
@@ -210,7 +269,7 @@ public class TicTacToeState
 
     public int getTotalPossibleMoves()
     {
-        return board_.size();
+        return layout_.spaces();
     }
 
     /* Get the number of actions taken to have arrived at this state */
@@ -227,34 +286,300 @@ public class TicTacToeState
     public void setCurrentPlayer(final Player player)
     {
         // TODO: Validate ?
+        hash_ ^= turnKey(currentPlayer_) ^ turnKey(player);
         currentPlayer_ = player;
     }
 
+    /**
+     * @return Zobrist key for it being $player's turn; 0 for nobody's turn
+     */
+    private long turnKey(final Player player)
+    {
+        final int index = (player == null) ? -1 : players_.indexOf(player);
+        return (index < 0) ? 0L : layout_.zobristTurnKey(MARKS[index]);
+    }
+
+    /**
+     * @return Zobrist hash of the marks on the board and whose turn it is.
+     *         Constant time; updated with every mark placed.
+     */
+    public long getHash()
+    {
+        return hash_;
+    }
+
     public Map<Vector2, TicTacToeMark> getBoardAsMap()
     {
-        return new HashMap<Vector2, TicTacToeMark>(board_);
+        final Map<Vector2, TicTacToeMark> board = new HashMap<Vector2, TicTacToeMark>(
+                layout_.spaces());
+        for(int index = 0; index < layout_.spaces(); ++index)
+        {
+            board.put(layout_.positionOf(index), getMarkForIndex(index));
+        }
+        return board;
     }
 
     public TicTacToeMark[][] getBoardAsArray()
     {
         final TicTacToeMark[][] board = new TicTacToeMark[width_][height_];
-        board_.entrySet().forEach(positionToMark ->
+        for(int index = 0; index < layout_.spaces(); ++index)
         {
-            final Vector2 position = positionToMark.getKey();
-            final TicTacToeMark mark = positionToMark.getValue();
-            board[position.getX()][position.getY()] = mark;
-        });
+            final Vector2 position = layout_.positionOf(index);
+            board[position.getX()][position.getY()] = getMarkForIndex(index);
+        }
         return board;
     }
 
     public boolean isPositionWithinBoard(final Vector2 position)
     {
-        return board_.containsKey(position);
+        return layout_.contains(position);
     }
 
     public TicTacToeMark getMarkForPosition(final Vector2 position)
     {
-        return board_.get(position);
+        if(!layout_.contains(position))
+        {
+            return null;
+        }
+        return getMarkForIndex(layout_.indexOf(position));
+    }
+
+    /**
+     * Enumerates the actions available to a mark: one for every empty space on
+     * the board. The empty spaces are exactly the bits missing from both
+     * marks' bitboards, which every mark placement keeps up to date, and
+     * actions are shared instances cached per board size. Enumerating moves
+     * therefore allocates nothing beyond the returned (read-only, snapshot)
+     * view.
+     *
+     * @param mark
+     *            Mark that would be placed
+     * @return Read-only collection of actions placing $mark on an empty space
+     */
+    public Collection<TicTacToeAction> getAvailableActions(final TicTacToeMark mark)
+    {
+        Validate.notNull(mark, "Null marks have no available actions.");
+        if(wideBits_ == null)
+        {
+            return new AvailableActions(layout_, mark, ~(xBits_ | oBits_) & layout_.compactMask());
+        }
+
+        final int words = wideBits_[0].length;
+        final long [] emptyWords = new long [words];
+        for(int word = 0; word < words; ++word)
+        {
+            long occupied = 0L;
+            for(final long [] markBits : wideBits_)
+            {
+                occupied |= markBits[word];
+            }
+            emptyWords[word] = ~occupied;
+        }
+        /* Clear the bits past the last space */
+        final int usedBits = layout_.spaces() % Long.SIZE;
+        if(usedBits != 0)
+        {
+            emptyWords[words - 1] &= (1L << usedBits) - 1;
+        }
+        return new AvailableActions(layout_, mark, emptyWords);
+    }
+
+    /**
+     * Determines whether the mark on a position is part of at least
+     * $lineLength of the same mark in a row (horizontally, vertically or
+     * diagonally).
+     *
+     * @param position
+     *            Position to check. Positions outside the board or without a
+     *            mark are never part of a line.
+     * @param lineLength
+     *            Number of marks in a row that make up a line
+     * @return True if the position is part of a line, false otherwise
+     */
+    public boolean completesLine(final Vector2 position, final int lineLength)
+    {
+        final TicTacToeMark mark = getMarkForPosition(position);
+        if(mark == null)
+        {
+            return false;
+        }
+        final int index = layout_.indexOf(position);
+        if(!layout_.isCompact())
+        {
+            return layout_.longestRunThrough(wideBits_[mark.ordinal()], index) >= lineLength;
+        }
+
+        final long marked = (mark == TicTacToeMark.X) ? xBits_ : oBits_;
+        for(final long line : layout_.lineMasks(lineLength)[index])
+        {
+            if((marked & line) == line)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Measures the longest line of identical marks (horizontal, vertical or
+     * diagonal) that passes through a position. When run tracking is enabled
+     * this is a constant-time lookup for the most recently marked position;
+     * otherwise the lines through the position are walked.
+     *
+     * @param position
+     *            Position to measure through
+     * @return Length of the longest line, or 0 if the position is unmarked or
+     *         outside of the board
+     */
+    public int getLongestRunThrough(final Vector2 position)
+    {
+        final TicTacToeMark mark = getMarkForPosition(position);
+        if(mark == null)
+        {
+            return 0;
+        }
+        final int index = layout_.indexOf(position);
+        if(runs_ != null && index == lastMarkedIndex_)
+        {
+            int longestRun = 0;
+            for(int direction = 0; direction < BoardLayout.LINE_DIRECTIONS.length; ++direction)
+            {
+                longestRun = Math.max(longestRun, readRun(direction * layout_.spaces() + index));
+            }
+            return longestRun;
+        }
+        final long [] marked = (wideBits_ != null) ? wideBits_[mark.ordinal()]
+                : new long [] { (mark == TicTacToeMark.X) ? xBits_ : oBits_ };
+        return layout_.longestRunThrough(marked, index);
+    }
+
+    /*
+     * A newly marked space joins the run ending just before it and the run
+     * starting just after it, in each direction. Both neighbours are ends of
+     * their runs (the new space was empty), so their counters are current;
+     * the merged length is written to both new ends and to the space itself.
+     */
+    private void updateRuns(final int index, final TicTacToeMark mark, final TicTacToeUndo undo)
+    {
+        final int x = index % width_;
+        final int y = index / width_;
+        final int spaces = layout_.spaces();
+        for(int direction = 0; direction < BoardLayout.LINE_DIRECTIONS.length; ++direction)
+        {
+            final int dX = BoardLayout.LINE_DIRECTIONS[direction][0];
+            final int dY = BoardLayout.LINE_DIRECTIONS[direction][1];
+            final int offset = direction * spaces;
+            final int before = layout_.contains(x - dX, y - dY)
+                    && hasMark(layout_.indexOf(x - dX, y - dY), mark) ? readRun(offset
+                    + layout_.indexOf(x - dX, y - dY)) : 0;
+            final int after = layout_.contains(x + dX, y + dY)
+                    && hasMark(layout_.indexOf(x + dX, y + dY), mark) ? readRun(offset
+                    + layout_.indexOf(x + dX, y + dY)) : 0;
+            final short run = (short) (before + 1 + after);
+            writeRun(offset + index, run, undo);
+            writeRun(offset + layout_.indexOf(x - dX * before, y - dY * before), run, undo);
+            writeRun(offset + layout_.indexOf(x + dX * after, y + dY * after), run, undo);
+        }
+    }
+
+    private short readRun(final int slot)
+    {
+        return runs_[slot >>> RUN_CHUNK_SHIFT][slot & RUN_CHUNK_MASK];
+    }
+
+    private void writeRun(final int slot, final short run, final TicTacToeUndo undo)
+    {
+        if(undo != null)
+        {
+            undo.recordRunWrite(slot, readRun(slot));
+        }
+        unshareArrays();
+        final int chunk = slot >>> RUN_CHUNK_SHIFT;
+        if(!ownedRuns_[chunk])
+        {
+            runs_[chunk] = runs_[chunk].clone();
+            ownedRuns_[chunk] = true;
+        }
+        runs_[chunk][slot & RUN_CHUNK_MASK] = run;
+    }
+
+    /* Sets or clears a space's bit in the mark's array of words */
+    private void writeWideBit(final TicTacToeMark mark, final int index, final boolean set)
+    {
+        unshareArrays();
+        final int ordinal = mark.ordinal();
+        if(!ownedWideBits_[ordinal])
+        {
+            wideBits_[ordinal] = wideBits_[ordinal].clone();
+            ownedWideBits_[ordinal] = true;
+        }
+        if(set)
+        {
+            wideBits_[ordinal][index >>> 6] |= 1L << index;
+        }
+        else
+        {
+            wideBits_[ordinal][index >>> 6] &= ~(1L << index);
+        }
+    }
+
+    /*
+     * Takes this state's own copies of the arrays of mark arrays and chunks,
+     * if a copy shares them; the mark arrays and chunks themselves are only
+     * copied when written to
+     */
+    private void unshareArrays()
+    {
+        if(!arraysShared_)
+        {
+            return;
+        }
+        if(wideBits_ != null)
+        {
+            wideBits_ = wideBits_.clone();
+            ownedWideBits_ = new boolean [wideBits_.length];
+        }
+        if(runs_ != null)
+        {
+            runs_ = runs_.clone();
+            ownedRuns_ = new boolean [runs_.length];
+        }
+        arraysShared_ = false;
+    }
+
+    private boolean hasMark(final int index, final TicTacToeMark mark)
+    {
+        if(wideBits_ != null)
+        {
+            return BoardLayout.isSet(wideBits_[mark.ordinal()], index);
+        }
+        return ((mark == TicTacToeMark.X ? xBits_ : oBits_) & (1L << index)) != 0;
+    }
+
+    private TicTacToeMark getMarkForIndex(final int index)
+    {
+        if(wideBits_ != null)
+        {
+            for(final TicTacToeMark mark : TicTacToeMark.values())
+            {
+                if(BoardLayout.isSet(wideBits_[mark.ordinal()], index))
+                {
+                    return mark;
+                }
+            }
+            return null;
+        }
+
+        final long bit = 1L << index;
+        if((xBits_ & bit) != 0)
+        {
+            return TicTacToeMark.X;
+        }
+        if((oBits_ & bit) != 0)
+        {
+            return TicTacToeMark.O;
+        }
+        return null;
     }
 
     public void setMarkForPosition(final int x, final int y, final TicTacToeMark mark)
@@ -264,16 +589,126 @@ public class TicTacToeState
     }
 
     public void setMarkForPosition(final Vector2 position, final TicTacToeMark mark)
+    {
+        validateMark(position, mark);
+        placeMark(layout_.indexOf(position), mark, null);
+    }
+
+    /**
+     * Marks a position exactly like setMarkForPosition(...), also recording
+     * everything needed to take the mark back off with undo(...). Changes made
+     * to the state after this (eg scores, turns) are undone with it.
+     */
+    TicTacToeUndo setMarkForPositionReversibly(final Vector2 position, final TicTacToeMark mark)
+    {
+        validateMark(position, mark);
+        final int index = layout_.indexOf(position);
+        final TicTacToeUndo undo = new TicTacToeUndo(index, mark, currentPlayer_, terminal_,
+                playerScores_, lastMarkedIndex_, hash_, runs_ != null);
+        placeMark(index, mark, undo);
+        return undo;
+    }
+
+    /**
+     * Takes back the mark recorded in $undo, which must be the most recent
+     * mark placed, restoring the state to what it was before
+     */
+    void undo(final TicTacToeUndo undo)
+    {
+        Validate.isTrue(undo.index_ == lastMarkedIndex_,
+                "Marks must be undone in the reverse order to which they were placed");
+        final int index = undo.index_;
+        if(wideBits_ != null)
+        {
+            writeWideBit(undo.mark_, index, false);
+        }
+        else if(undo.mark_ == TicTacToeMark.X)
+        {
+            xBits_ &= ~(1L << index);
+        }
+        else
+        {
+            oBits_ &= ~(1L << index);
+        }
+        /* Restore overwritten counters newest first, in case a slot was written twice */
+        for(int write = undo.runWrites_ - 1; write >= 0; --write)
+        {
+            writeRun(undo.runSlots_[write], undo.runValues_[write], null);
+        }
+        currentPlayer_ = undo.previousPlayer_;
+        terminal_ = undo.previousTerminal_;
+        playerScores_ = undo.previousScores_;
+        lastMarkedIndex_ = undo.previousLastMarkedIndex_;
+        hash_ = undo.previousHash_;
+        --marksPlaced_;
+    }
+
+    private void validateMark(final Vector2 position, final TicTacToeMark mark)
     {
         Validate.isTrue(isPositionWithinBoard(position),
                 "Cannot set a mark for a position that isn't within the board!");
         Validate.isNull(getMarkForPosition(position),
                 "Cannot assign a mark to a position that has already been marked!");
         Validate.notNull(mark, "Cannot assign a null mark to a TicTacToeBoard!");
-        board_.put(position, mark);
+    }
+
+    /* Records overwritten run counters in $undo, unless it is null */
+    private void placeMark(final int index, final TicTacToeMark mark, final TicTacToeUndo undo)
+    {
+        if(wideBits_ != null)
+        {
+            writeWideBit(mark, index, true);
+        }
+        else if(mark == TicTacToeMark.X)
+        {
+            xBits_ |= 1L << index;
+        }
+        else
+        {
+            oBits_ |= 1L << index;
+        }
+        if(runs_ != null)
+        {
+            updateRuns(index, mark, undo);
+        }
+        hash_ ^= layout_.zobristKey(mark, index);
+        lastMarkedIndex_ = index;
         ++marksPlaced_;
     }
 
+    /**
+     * States are equal when they have the same players on the same marks, the
+     * same marks on the same board, the same player to move, and the same
+     * scores. How the state was reached (eg run tracking) does not matter.
+     */
+    @Override
+    public boolean equals(final Object other)
+    {
+        if(this == other)
+        {
+            return true;
+        }
+        if(!(other instanceof TicTacToeState))
+        {
+            return false;
+        }
+        final TicTacToeState otherState = (TicTacToeState) other;
+        return width_ == otherState.width_ && height_ == otherState.height_
+                && marksPlaced_ == otherState.marksPlaced_ && terminal_ == otherState.terminal_
+                && xBits_ == otherState.xBits_ && oBits_ == otherState.oBits_
+                && Arrays.deepEquals(wideBits_, otherState.wideBits_)
+                && Objects.equals(currentPlayer_, otherState.currentPlayer_)
+                && players_.players().equals(otherState.players_.players())
+                && Arrays.equals(playerScores_, otherState.playerScores_);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        /* Equal states have equal marks and turns, so equal Zobrist hashes */
+        return Long.hashCode(hash_);
+    }
+
     @Override
     public String toString()
     {
@@ -287,7 +722,7 @@ public class TicTacToeState
                             builder.append(Arrays.deepToString(row).replaceAll("null", "?")
                                     .concat(System.lineSeparator()));
                         });
-        playerMarks_.keySet().forEach(
+        players_.players().forEach(
                 (player) ->
                 {
                     builder.append(player.toString());
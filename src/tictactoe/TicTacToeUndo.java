@@ -0,0 +1,51 @@
+package tictactoe;
+
+import core.Player;
+
+/**
+ * Everything needed to take a mark back off a TicTacToeState: the space that
+ * was marked, what the rest of the state looked like beforehand, and the old
+ * value of every run-length counter that marking overwrote (if the state
+ * tracks runs). Opaque outside of this package.
+ */
+public final class TicTacToeUndo
+{
+    /* At most three counters are written per line direction */
+    private static final int MAX_RUN_WRITES = 3 * BoardLayout.LINE_DIRECTIONS.length;
+
+    final int index_;
+    final TicTacToeMark mark_;
+    final Player previousPlayer_;
+    final boolean previousTerminal_;
+    /* Copy-on-write in the state, so the array itself can be kept */
+    final double [] previousScores_;
+    final int previousLastMarkedIndex_;
+    final long previousHash_;
+
+    /* Counter slots written, and the values they held, in the order written */
+    final int [] runSlots_;
+    final short [] runValues_;
+    int runWrites_ = 0;
+
+    TicTacToeUndo(final int index, final TicTacToeMark mark, final Player previousPlayer,
+            final boolean previousTerminal, final double [] previousScores,
+            final int previousLastMarkedIndex, final long previousHash, final boolean tracksRuns)
+    {
+        index_ = index;
+        mark_ = mark;
+        previousPlayer_ = previousPlayer;
+        previousTerminal_ = previousTerminal;
+        previousScores_ = previousScores;
+        previousLastMarkedIndex_ = previousLastMarkedIndex;
+        previousHash_ = previousHash;
+        runSlots_ = tracksRuns ? new int [MAX_RUN_WRITES] : null;
+        runValues_ = tracksRuns ? new short [MAX_RUN_WRITES] : null;
+    }
+
+    void recordRunWrite(final int slot, final short previousValue)
+    {
+        runSlots_[runWrites_] = slot;
+        runValues_[runWrites_] = previousValue;
+        ++runWrites_;
+    }
+}
@@ -0,0 +1,46 @@
+package tictactoe;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import utils.RandomStream;
+import core.Player;
+import core.ReversibleRulesTest;
+import core.policies.RandomPolicy;
+
+/**
+ * Play seeded games of tic-tac-toe and m,n,k-games at random, applying every
+ * move in place and checking it against transition(...), then undoing every
+ * move again.
+ */
+public class TicTacToeUndoTest
+{
+    private static final int GAMES = 100;
+
+    public static void main(final String [] args)
+    {
+        final Set<Player> players = new LinkedHashSet<>(Arrays.asList(new Player("Player 1"),
+                new Player("Player 2")));
+
+        int moves = 0;
+        for(final TicTacToeRules rules : Arrays.asList(new TicTacToeRules(), new MNKRules(9, 9, 4),
+                new MNKRules(19, 19, 5)))
+        {
+            for(int game = 0; game < GAMES; ++game)
+            {
+                moves += ReversibleRulesTest.playAndUndo(rules,
+                        rules.generateInitialState(players, new RandomStream(game)),
+                        new RandomPolicy<>(game), TicTacToeUndoTest::describe, Integer.MAX_VALUE);
+            }
+        }
+        System.out.println(String.format("Applied and undid %d moves over %d games.", moves,
+                3 * GAMES));
+    }
+
+    private static String describe(final TicTacToeState state)
+    {
+        return String.format("%s%s %s %s %d", state, state.getPlayerScores(), state.isTerminal(),
+                state.getCurrentPlayer(), state.getNumberOfActionsTaken());
+    }
+}
@@ -32,6 +32,6 @@ public class ClosedRange<T extends Number & Comparable<T>> extends Range<T>
     @Override
     public String toString()
     {
-        return String.format("[%d, %d]", min_, max_);
+        return String.format("[%s, %s]", min_, max_);
     }
 }
@@ -0,0 +1,142 @@
+package utils;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Small, fast, seedable source of random numbers (SplitMix64), meant to be
+ * threaded through game setup, game states and policies so that any run can
+ * be replayed from its seed.
+ *
+ * Unlike java.util.Random, a RandomStream can be copied: the copy produces
+ * exactly the same numbers as the original from that point on, which lets
+ * game states that hold one be copied without changing what happens next.
+ * Streams can also be split into independent streams, or forked by index
+ * (eg one per game in a batch) without touching the parent at all, so
+ * parallel runs stay reproducible without sharing a generator between
+ * threads.
+ *
+ * Note: Not thread-safe. Give each thread its own stream via split() or
+ * fork(...).
+ */
+public final class RandomStream
+{
+    /* Odd constant that steps the state; 2^64 / golden ratio */
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    /* Keeps forked streams away from the parent's own sequence of states */
+    private static final long FORK_SALT = 0x632be59bd9b4e019L;
+
+    private long state_;
+
+    /**
+     * Creates a stream from an arbitrary seed. Use this only when runs do not
+     * need to be reproducible.
+     */
+    public RandomStream()
+    {
+        this(ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Creates a stream that will always produce the same numbers for the same
+     * seed
+     *
+     * @param seed
+     *            Seed for the stream
+     */
+    public RandomStream(final long seed)
+    {
+        state_ = seed;
+    }
+
+    /**
+     * Copies a stream. The copy and the original produce the same numbers from
+     * here on, independently of each other.
+     *
+     * @param copy
+     *            Stream to copy
+     */
+    public RandomStream(final RandomStream copy)
+    {
+        Validate.notNull(copy, "Cannot copy a null RandomStream");
+        state_ = copy.state_;
+    }
+
+    public long nextLong()
+    {
+        state_ += GOLDEN_GAMMA;
+        return mix64(state_);
+    }
+
+    public int nextInt()
+    {
+        return (int) (nextLong() >>> 32);
+    }
+
+    /**
+     * @param bound
+     *            Exclusive upper bound. Must be positive.
+     * @return Uniformly distributed int in [0, $bound)
+     */
+    public int nextInt(final int bound)
+    {
+        Validate.isTrue(bound > 0, "Cannot pick a random number below a non-positive bound");
+        final int mask = bound - 1;
+        int value = nextInt();
+        if((bound & mask) == 0)
+        {
+            /* Powers of two need no rejection */
+            return value & mask;
+        }
+        /* Reject the values that would bias the result towards low numbers */
+        for(int unsigned = value >>> 1; unsigned + mask - (value = unsigned % bound) < 0; unsigned = nextInt() >>> 1)
+        {
+        }
+        return value;
+    }
+
+    /**
+     * @return Uniformly distributed double in [0, 1)
+     */
+    public double nextDouble()
+    {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    public boolean nextBoolean()
+    {
+        return nextLong() < 0;
+    }
+
+    /**
+     * Creates a new, statistically independent stream, advancing this one
+     *
+     * @return The new stream
+     */
+    public RandomStream split()
+    {
+        return new RandomStream(mix64(nextLong() ^ FORK_SALT));
+    }
+
+    /**
+     * Derives the $index'th child of this stream without advancing it: the
+     * same stream forked with the same index always produces the same child.
+     * Useful for handing every item of a batch its own reproducible stream,
+     * regardless of which thread processes it or in which order.
+     *
+     * @param index
+     *            Index of the child stream
+     * @return The child stream
+     */
+    public RandomStream fork(final long index)
+    {
+        return new RandomStream(mix64(state_ ^ mix64(index * GOLDEN_GAMMA + FORK_SALT)));
+    }
+
+    /* Stafford's variant 13 of the MurmurHash3 finaliser, as used by SplitMix64 */
+    static long mix64(final long value)
+    {
+        long mixed = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        mixed = (mixed ^ (mixed >>> 27)) * 0x94d049bb133111ebL;
+        return mixed ^ (mixed >>> 31);
+    }
+}
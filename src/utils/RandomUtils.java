@@ -13,9 +13,46 @@ public class RandomUtils
         {
             return null;
         }
+        return elementAt(collection, ThreadLocalRandom.current().nextInt(collection.size()));
+    }
 
-        final int size = collection.size();
-        final int chosenIndex = ThreadLocalRandom.current().nextInt(size);
+    /**
+     * Picks a random element using the provided stream, so the choice can be
+     * reproduced
+     *
+     * @param collection
+     *            Collection to choose from
+     * @param random
+     *            Source of randomness
+     * @return A random element, or null if $collection is null or empty
+     */
+    public static <T> T randomOf(final Collection<T> collection, final RandomStream random)
+    {
+        Validate.notNull(random, "Cannot choose an element with a null RandomStream");
+        if(collection == null || collection.isEmpty())
+        {
+            return null;
+        }
+        return elementAt(collection, random.nextInt(collection.size()));
+    }
+
+    public static <T> T randomOf(final List<T> list, final RandomStream random)
+    {
+        Validate.notNull(random, "Cannot choose an element with a null RandomStream");
+        if(list == null || list.isEmpty())
+        {
+            return null;
+        }
+        return list.get(random.nextInt(list.size()));
+    }
+
+    /* Lists are indexed directly; anything else is iterated up to the index */
+    private static <T> T elementAt(final Collection<T> collection, final int chosenIndex)
+    {
+        if(collection instanceof List)
+        {
+            return ((List<T>) collection).get(chosenIndex);
+        }
         final Iterator<T> iterator = collection.iterator();
         for(int index = 0; iterator.hasNext() && index < chosenIndex; ++index)
         {
@@ -2,13 +2,24 @@ package utils;
 
 import java.util.Collection;
 import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * Poor-man's Apache Validation. Simple Validation for expressions/objects,
  * expand as needed.
+ *
+ * Messages that take work to build (formatting, printing collections) should
+ * be passed as Suppliers, which are only called when a check fails.
+ *
+ * Checks made by these methods always run. Call sites whose checks are
+ * costly or redundant for trusted callers can ask isEnabled(...) whether
+ * the current thread's ValidationLevel wants them.
  */
 public final class Validate
 {
+    private static final ThreadLocal<ValidationLevel> LEVEL = ThreadLocal
+            .withInitial(() -> ValidationLevel.FULL);
+
     // Internal checker
     private static void failIfTrue(final boolean expression, final String message)
     {
@@ -18,6 +29,50 @@ public final class Validate
         }
     }
 
+    // Internal checker, building the message only on failure
+    private static void failIfTrue(final boolean expression, final Supplier<String> message)
+    {
+        if(expression)
+        {
+            throw new IllegalArgumentException(message.get());
+        }
+    }
+
+    /**
+     * @return Validation level of the current thread; FULL unless set
+     *         otherwise
+     */
+    public static ValidationLevel getLevel()
+    {
+        return LEVEL.get();
+    }
+
+    /**
+     * Sets the validation level of the current thread. Callers should restore
+     * the previous level when they are done, in a finally block.
+     *
+     * @param level
+     *            New validation level
+     * @return Previous validation level
+     */
+    public static ValidationLevel setLevel(final ValidationLevel level)
+    {
+        notNull(level, "Cannot validate at a null level");
+        final ValidationLevel previous = LEVEL.get();
+        LEVEL.set(level);
+        return previous;
+    }
+
+    /**
+     * @param required
+     *            Level at which a check should be made
+     * @return Whether the current thread makes checks for $required
+     */
+    public static boolean isEnabled(final ValidationLevel required)
+    {
+        return LEVEL.get().includes(required);
+    }
+
     /**
      * Validates that the provided assertion is true. Throws an
      * IllegalArgumentException if it is not.
@@ -47,6 +102,21 @@ public final class Validate
         failIfTrue(!assertion, message);
     }
 
+    /**
+     * Validates that the provided assertion is true. Throws an
+     * IllegalArgumentException if it is not.
+     *
+     * @param assertion
+     *            Assertion to check for truthiness
+     * @param message
+     *            Builds the message for the IllegalArgumentException; only
+     *            called if thrown
+     */
+    public static void isTrue(final boolean assertion, final Supplier<String> message)
+    {
+        failIfTrue(!assertion, message);
+    }
+
     /**
      * Validates that the provided assertion is false. Throws an
      * IllegalArgumentException if it is not.
@@ -76,6 +146,21 @@ public final class Validate
         failIfTrue(assertion, message);
     }
 
+    /**
+     * Validates that the provided assertion is false. Throws an
+     * IllegalArgumentException if it is not.
+     *
+     * @param assertion
+     *            Assertion to check for truthiness
+     * @param message
+     *            Builds the message for the IllegalArgumentException; only
+     *            called if thrown
+     */
+    public static void isFalse(final boolean assertion, final Supplier<String> message)
+    {
+        failIfTrue(assertion, message);
+    }
+
     /**
      * Validates that the collection provided is either null or empty. Throws an
      * IllegalArgumentException if it is not.
@@ -103,6 +188,22 @@ public final class Validate
         failIfTrue(collection != null && !collection.isEmpty(), message);
     }
 
+    /**
+     * Validates that the collection provided is either null or empty. Throws an
+     * IllegalArgumentException if it is not.
+     *
+     * @param collection
+     *            Collection to check
+     * @param message
+     *            Builds the message for the IllegalArgumentException; only
+     *            called if thrown
+     */
+    public static <T> void isEmpty(final Collection<T> collection,
+            final Supplier<String> message)
+    {
+        failIfTrue(collection != null && !collection.isEmpty(), message);
+    }
+
     /**
      * Validates that the collection provided is either not null and not empty.
      * Throws an IllegalArgumentException if it is not.
@@ -130,6 +231,22 @@ public final class Validate
         failIfTrue(collection == null || collection.isEmpty(), message);
     }
 
+    /**
+     * Validates that the collection provided is either not null and not empty.
+     * Throws an IllegalArgumentException if it is not.
+     *
+     * @param collection
+     *            Collection to check
+     * @param message
+     *            Builds the message for the IllegalArgumentException; only
+     *            called if thrown
+     */
+    public static <T> void notEmpty(final Collection<T> collection,
+            final Supplier<String> message)
+    {
+        failIfTrue(collection == null || collection.isEmpty(), message);
+    }
+
     /**
      * Validates that the collection provided is either not null and not empty.
      * Throws an IllegalArgumentException if it is not.
@@ -157,6 +274,21 @@ public final class Validate
         failIfTrue(map == null || map.isEmpty(), message);
     }
 
+    /**
+     * Validates that the map provided is either not null and not empty.
+     * Throws an IllegalArgumentException if it is not.
+     *
+     * @param map
+     *            Map to check
+     * @param message
+     *            Builds the message for the IllegalArgumentException; only
+     *            called if thrown
+     */
+    public static <T, U> void notEmpty(final Map<T, U> map, final Supplier<String> message)
+    {
+        failIfTrue(map == null || map.isEmpty(), message);
+    }
+
     /**
      * Validates that the object provided is not null. Throws an
      * IllegalArgumentException if it is not.
@@ -184,6 +316,21 @@ public final class Validate
         failIfTrue(value == null, message);
     }
 
+    /**
+     * Validates that the object provided is not null. Throws an
+     * IllegalArgumentException if it is not.
+     *
+     * @param value
+     *            Value to check for null-ness
+     * @param message
+     *            Builds the message for the IllegalArgumentException; only
+     *            called if thrown
+     */
+    public static void notNull(final Object value, final Supplier<String> message)
+    {
+        failIfTrue(value == null, message);
+    }
+
     /**
      * Checks to see if the provided value is not null.
      *
@@ -209,6 +356,20 @@ public final class Validate
         failIfTrue(value != null, message);
     }
 
+    /**
+     * Checks to see if the provided value is null.
+     *
+     * @param value
+     *            Value to check for null-ness
+     * @param message
+     *            Builds the message for the IllegalArgumentException; only
+     *            called if thrown
+     */
+    public static void isNull(final Object value, final Supplier<String> message)
+    {
+        failIfTrue(value != null, message);
+    }
+
     /**
      * Validates that the value is within the open interval [min, max]. Throws
      * an IllegalArgumentException if it is not. Note: This method should
@@ -233,6 +394,6 @@ public final class Validate
             final Range<T> range)
     {
         notNull(range, "Cannot determine if a value is within a null range");
-        isTrue(range.isValueWithin(value), String.format("%d was not within %s", value, range));
+        isTrue(range.isValueWithin(value), () -> String.format("%s was not within %s", value, range));
     }
 }
@@ -0,0 +1,38 @@
+package utils;
+
+/**
+ * How thoroughly game code checks its inputs, from most to least thorough.
+ * The level is chosen per thread with Validate.setLevel(...); checks are
+ * always on unless code that knows its callers lowers it.
+ */
+public enum ValidationLevel
+{
+    /*
+     * Check everything, including whether an action is one the rules would
+     * have offered; for states and actions from untrusted sources, such as
+     * players across a network
+     */
+    FULL,
+    /*
+     * Check arguments where they enter the rules (nulls, turn order, terminal
+     * states), but trust that actions came from getAvailableActions(...)
+     * rather than working out every legal action again
+     */
+    BOUNDARY,
+    /*
+     * Skip the per-move checks as well; for code that only ever plays the
+     * rules against themselves. Setup checks, such as in constructors, are
+     * always made.
+     */
+    OFF;
+
+    /**
+     * @param required
+     *            Level at which a check is made
+     * @return Whether checks for $required are made at this level
+     */
+    public boolean includes(final ValidationLevel required)
+    {
+        return ordinal() <= required.ordinal();
+    }
+}
@@ -0,0 +1,71 @@
+package utils;
+
+/**
+ * Random 64-bit keys for Zobrist hashing. A state's hash is the XOR of the
+ * keys of every feature it has (eg "X on space 4"), so a move can update the
+ * hash in constant time by XOR-ing out the keys of the features it removes
+ * and XOR-ing in the keys of the features it adds.
+ *
+ * Keys are either tabulated up front, for small dense sets of features, or
+ * derived on demand from any long with keyOf(...), for feature sets too large
+ * or sparse to tabulate (eg coordinates on an unbounded board). Both are
+ * fixed by their seed, so hashes are the same from one run to the next.
+ */
+public final class ZobristKeys
+{
+    /* Keeps derived keys apart from the numbers a RandomStream would produce */
+    private static final long DERIVED_KEY_SALT = 0x2545f4914f6cdd1dL;
+
+    private final long [] keys_;
+
+    /**
+     * Tabulates keys for the features 0 to $size - 1
+     *
+     * @param size
+     *            Number of features. Must not be negative.
+     * @param seed
+     *            Seed for the keys; the same size and seed always give the
+     *            same keys
+     */
+    public ZobristKeys(final int size, final long seed)
+    {
+        Validate.isTrue(size >= 0, "Cannot tabulate a negative number of Zobrist keys");
+        final RandomStream random = new RandomStream(seed);
+        keys_ = new long [size];
+        for(int feature = 0; feature < size; ++feature)
+        {
+            keys_[feature] = random.nextLong();
+        }
+    }
+
+    public int size()
+    {
+        return keys_.length;
+    }
+
+    /**
+     * @return The key for $feature, which must be in [0, size())
+     */
+    public long get(final int feature)
+    {
+        return keys_[feature];
+    }
+
+    /**
+     * @return The key for an arbitrary $feature; always the same for the same
+     *         feature
+     */
+    public static long keyOf(final long feature)
+    {
+        return RandomStream.mix64(feature ^ DERIVED_KEY_SALT);
+    }
+
+    /**
+     * @return The key for the feature identified by both $first and $second
+     *         (eg x and y coordinates)
+     */
+    public static long keyOf(final long first, final long second)
+    {
+        return keyOf(keyOf(first) + second);
+    }
+}
@@ -0,0 +1,210 @@
+package wumpusworld;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import utils.RandomStream;
+import utils.Validate;
+
+/**
+ * Generates dungeons ahead of time, on background worker threads, so that
+ * starting a game only has to take one off a queue. Generating a dungeon is
+ * by far the slowest part of starting a game of Wumpus World; with a supply,
+ * batches of games generate their dungeons in parallel with playing them.
+ *
+ * The queue is bounded: workers wait while it is full, and games wait while
+ * it is empty. Dungeon n is generated from a seed derived from the supply's
+ * seed and n alone, and every dungeon records its seed (getSeed()), so any
+ * game can be replayed. Which game draws which dungeon depends on how the
+ * workers are scheduled, unless there is only one worker.
+ *
+ * A supply may be shared by any number of games and threads. Close it to stop
+ * the workers; dungeons cannot be taken after that.
+ */
+public final class DungeonSupply implements AutoCloseable
+{
+    private static final int DEFAULT_CAPACITY = 64;
+    /* How often waiting games check whether the workers have stopped */
+    private static final long POLL_MILLIS = 100;
+
+    private final int width_;
+    private final int height_;
+    private final WumpusWorldDungeon.PitPlacement pitPlacement_;
+    private final long seed_;
+    /* Never advanced, only forked: one child per dungeon */
+    private final RandomStream random_;
+    /* Number of dungeons started so far; also the number of the next one */
+    private final AtomicLong started_ = new AtomicLong();
+    private final BlockingQueue<WumpusWorldDungeon> queue_;
+    private final List<Thread> workers_;
+    private volatile boolean closed_ = false;
+    /* First exception a worker died of, if any */
+    private volatile RuntimeException failure_ = null;
+
+    /**
+     * Creates a supply of default-sized dungeons with batched pits, generated
+     * by one worker per spare processor
+     *
+     * @param seed
+     *            Seed that every dungeon's seed is derived from
+     */
+    public DungeonSupply(final long seed)
+    {
+        this(WumpusWorldDungeon.DEFAULT_DUNGEON_WIDTH, WumpusWorldDungeon.DEFAULT_DUNGEON_HEIGHT,
+                WumpusWorldDungeon.PitPlacement.BATCHED, seed, DEFAULT_CAPACITY, Math.max(1,
+                        Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * @param width
+     *            Width of every dungeon
+     * @param height
+     *            Height of every dungeon
+     * @param pitPlacement
+     *            How pits are placed in every dungeon
+     * @param seed
+     *            Seed that every dungeon's seed is derived from
+     * @param capacity
+     *            Number of dungeons to keep ready
+     * @param workers
+     *            Number of threads generating dungeons
+     */
+    public DungeonSupply(final int width, final int height,
+            final WumpusWorldDungeon.PitPlacement pitPlacement, final long seed,
+            final int capacity, final int workers)
+    {
+        Validate.notNull(pitPlacement, "Cannot supply dungeons without a pit placement");
+        Validate.isTrue(capacity > 0, "Cannot supply dungeons through a queue with no capacity");
+        Validate.isTrue(workers > 0, "Cannot supply dungeons without any workers");
+        width_ = width;
+        height_ = height;
+        pitPlacement_ = pitPlacement;
+        seed_ = seed;
+        random_ = new RandomStream(seed);
+        queue_ = new ArrayBlockingQueue<WumpusWorldDungeon>(capacity);
+
+        /* Generate one dungeon up front, so bad dimensions fail here rather than in a worker */
+        queue_.add(generate(started_.getAndIncrement()));
+
+        workers_ = new ArrayList<Thread>(workers);
+        for(int worker = 0; worker < workers; ++worker)
+        {
+            final Thread thread = new Thread(this::generateDungeons, "DungeonSupply-" + worker);
+            thread.setDaemon(true);
+            workers_.add(thread);
+        }
+        workers_.forEach(Thread::start);
+    }
+
+    /**
+     * @return Seed that every dungeon's seed is derived from
+     */
+    public long getSeed()
+    {
+        return seed_;
+    }
+
+    /**
+     * @return Number of dungeons ready to be taken right now
+     */
+    public int available()
+    {
+        return queue_.size();
+    }
+
+    /**
+     * Takes the next ready dungeon, waiting for one to be generated if need
+     * be. Every dungeon is handed out once.
+     *
+     * @return A freshly generated dungeon, without any explorers
+     * @throws IllegalStateException
+     *             if the supply has been closed, its workers have failed, or
+     *             the calling thread is interrupted while waiting
+     */
+    public WumpusWorldDungeon take()
+    {
+        WumpusWorldDungeon dungeon = queue_.poll();
+        try
+        {
+            while(dungeon == null)
+            {
+                checkOpen();
+                dungeon = queue_.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+        catch(final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a dungeon", e);
+        }
+        return dungeon;
+    }
+
+    /**
+     * Stops the workers. Dungeons still queued are discarded.
+     */
+    @Override
+    public void close()
+    {
+        if(closed_)
+        {
+            return;
+        }
+        closed_ = true;
+        workers_.forEach(Thread::interrupt);
+        try
+        {
+            for(final Thread worker : workers_)
+            {
+                worker.join();
+            }
+        }
+        catch(final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        queue_.clear();
+    }
+
+    private void checkOpen()
+    {
+        if(failure_ != null)
+        {
+            throw new IllegalStateException("Dungeon generation failed", failure_);
+        }
+        if(closed_)
+        {
+            throw new IllegalStateException("Cannot take a dungeon from a closed supply");
+        }
+    }
+
+    private WumpusWorldDungeon generate(final long dungeon)
+    {
+        /* Forking doesn't touch the parent stream, so needs no locking */
+        return new WumpusWorldDungeon(width_, height_, pitPlacement_, random_.fork(dungeon)
+                .nextLong());
+    }
+
+    private void generateDungeons()
+    {
+        try
+        {
+            while(!closed_)
+            {
+                queue_.put(generate(started_.getAndIncrement()));
+            }
+        }
+        catch(final InterruptedException e)
+        {
+            /* Closed while waiting for room; nothing more to do */
+        }
+        catch(final RuntimeException e)
+        {
+            failure_ = e;
+        }
+    }
+}
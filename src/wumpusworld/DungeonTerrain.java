@@ -0,0 +1,188 @@
+package wumpusworld;
+
+import java.util.Arrays;
+
+import utils.Validate;
+import utils.Vector2;
+import utils.ZobristKeys;
+import wumpusworld.entities.DungeonTile;
+import wumpusworld.entities.DungeonTileType;
+
+/**
+ * The static layout of a WumpusWorldDungeon: a width x height grid of tile
+ * types, stored flat with index = x + y * width.
+ *
+ * Terrain may only be modified while its dungeon is being generated. After
+ * that it is sealed, and from then on every copy of the dungeon (and so every
+ * state of a game) shares the same instance instead of copying it, along
+ * with its Zobrist hash and the spaces where a breeze blows (next to a pit).
+ * DungeonTiles are only created when they are asked for.
+ */
+final class DungeonTerrain
+{
+    private static final DungeonTileType [] TILE_TYPES = DungeonTileType.values();
+
+    private final int width_;
+    private final int height_;
+    /* Tile type ordinal for every space */
+    private final byte [] tiles_;
+    private int pitCount_ = 0;
+    private boolean sealed_ = false;
+    /* Zobrist hash of every tile that isn't empty; computed when sealed */
+    private long hash_ = 0L;
+    /* Bit set of the spaces next to a pit, by index; computed when sealed */
+    private long [] breezes_;
+
+    /**
+     * Creates unsealed terrain of the specified size, with every tile empty
+     *
+     * @param width
+     *            Width of the terrain
+     * @param height
+     *            Height of the terrain
+     */
+    DungeonTerrain(final int width, final int height)
+    {
+        Validate.isTrue(width > 0 && height > 0, "Cannot create terrain with no spaces");
+        width_ = width;
+        height_ = height;
+        tiles_ = new byte [width * height];
+        Arrays.fill(tiles_, (byte) DungeonTileType.EMPTY.ordinal());
+    }
+
+    int width()
+    {
+        return width_;
+    }
+
+    int height()
+    {
+        return height_;
+    }
+
+    int spaces()
+    {
+        return tiles_.length;
+    }
+
+    int pitCount()
+    {
+        return pitCount_;
+    }
+
+    boolean contains(final int x, final int y)
+    {
+        return x >= 0 && x < width_ && y >= 0 && y < height_;
+    }
+
+    boolean contains(final Vector2 space)
+    {
+        return space != null && contains(space.getX(), space.getY());
+    }
+
+    int indexOf(final int x, final int y)
+    {
+        return x + y * width_;
+    }
+
+    DungeonTileType tileTypeAt(final int x, final int y)
+    {
+        return TILE_TYPES[tiles_[indexOf(x, y)]];
+    }
+
+    /**
+     * @return The tile at $space, or null if $space is outside of the terrain
+     */
+    DungeonTile tileAt(final Vector2 space)
+    {
+        if(!contains(space))
+        {
+            return null;
+        }
+        return new DungeonTile(tileTypeAt(space.getX(), space.getY()), space);
+    }
+
+    /**
+     * @return Whether or not $space is within the terrain and its tile can be
+     *         walked over
+     */
+    boolean isPassable(final int x, final int y)
+    {
+        return contains(x, y) && DungeonTileType.isPassable(tileTypeAt(x, y));
+    }
+
+    void setTileType(final int x, final int y, final DungeonTileType tileType)
+    {
+        Validate.isFalse(sealed_, "Cannot modify terrain once its dungeon has been generated");
+        Validate.notNull(tileType, "Cannot set a null tile type");
+        Validate.isTrue(contains(x, y), "Cannot set a tile type outside of the terrain");
+        final int index = indexOf(x, y);
+        if(TILE_TYPES[tiles_[index]] == DungeonTileType.PIT)
+        {
+            --pitCount_;
+        }
+        if(tileType == DungeonTileType.PIT)
+        {
+            ++pitCount_;
+        }
+        tiles_[index] = (byte) tileType.ordinal();
+    }
+
+    /**
+     * Forbids any further modification, so the terrain can be shared, and
+     * hashes it
+     */
+    void seal()
+    {
+        sealed_ = true;
+        hash_ = 0L;
+        breezes_ = new long [(tiles_.length + Long.SIZE - 1) / Long.SIZE];
+        for(int index = 0; index < tiles_.length; ++index)
+        {
+            if(TILE_TYPES[tiles_[index]] != DungeonTileType.EMPTY)
+            {
+                hash_ ^= ZobristKeys.keyOf(tiles_[index], index);
+            }
+            if(TILE_TYPES[tiles_[index]] == DungeonTileType.PIT)
+            {
+                final int x = index % width_;
+                final int y = index / width_;
+                markBreeze(x - 1, y);
+                markBreeze(x + 1, y);
+                markBreeze(x, y - 1);
+                markBreeze(x, y + 1);
+            }
+        }
+    }
+
+    private void markBreeze(final int x, final int y)
+    {
+        if(contains(x, y))
+        {
+            final int index = indexOf(x, y);
+            breezes_[index / Long.SIZE] |= 1L << index;
+        }
+    }
+
+    /**
+     * @return Whether or not $space is within the terrain and next to a pit,
+     *         once sealed
+     */
+    boolean isBreezy(final Vector2 space)
+    {
+        if(!contains(space))
+        {
+            return false;
+        }
+        final int index = indexOf(space.getX(), space.getY());
+        return (breezes_[index / Long.SIZE] & (1L << index)) != 0;
+    }
+
+    /**
+     * @return Zobrist hash of the terrain, once sealed
+     */
+    long hash()
+    {
+        return hash_;
+    }
+}
@@ -1,5 +1,9 @@
 package wumpusworld;
 
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
 import wumpusworld.entities.DungeonEntity;
 import wumpusworld.entities.DungeonTile;
 import wumpusworld.entities.Gold;
@@ -9,6 +13,46 @@ public enum Percept
 {
     BREEZE, BUMP, GLITTER, STENCH, DEATH_SCREAM;
 
+    /*
+     * Every possible set of percepts, unmodifiable, indexed by mask; there are
+     * few enough of them to build up front and hand out again and again
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static final Set<Percept> [] SETS_BY_MASK = new Set [1 << values().length];
+    static
+    {
+        for(int mask = 0; mask < SETS_BY_MASK.length; ++mask)
+        {
+            final Set<Percept> percepts = EnumSet.noneOf(Percept.class);
+            for(final Percept percept : values())
+            {
+                if((mask & percept.mask()) != 0)
+                {
+                    percepts.add(percept);
+                }
+            }
+            SETS_BY_MASK[mask] = Collections.unmodifiableSet(percepts);
+        }
+    }
+
+    /**
+     * @return The bit standing for this percept in a mask of percepts
+     */
+    public int mask()
+    {
+        return 1 << ordinal();
+    }
+
+    /**
+     * @param mask
+     *            Bits of the percepts in the set, as given by mask()
+     * @return The set of percepts in $mask; shared, so unmodifiable
+     */
+    public static Set<Percept> setOf(final int mask)
+    {
+        return SETS_BY_MASK[mask];
+    }
+
     public static Percept perceptFor(final DungeonEntity entity)
     {
         if((entity instanceof DungeonTile))
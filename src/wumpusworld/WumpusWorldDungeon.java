@@ -1,24 +1,27 @@
 package wumpusworld;
 
-import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
-import java.util.Objects;
-import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import utils.ClosedRange;
+import utils.RandomStream;
 import utils.RandomUtils;
 import utils.Validate;
 import utils.Vector2;
+import utils.ZobristKeys;
+import wumpusworld.entities.BowAndArrow;
 import wumpusworld.entities.DungeonEntity;
 import wumpusworld.entities.DungeonExplorer;
 import wumpusworld.entities.DungeonTile;
@@ -47,11 +50,39 @@ public class WumpusWorldDungeon
     private static final int MINIMUM_DUNGEON_HEIGHT = 4;
     private static final int MINIMUM_DUNGEON_WIDTH = 4;
     /*
-     * SecureRandom simply for high entropy dungeons. If we need to speed things
-     * up, ThreadLocalRandom will work in a pinch, but our RandomGen isn't the
-     * bottleneck right now, so worry about that later
+     * Determine an arbitrary upper-bound on the number of attempts that we
+     * make for placing a single pit - if we continually fail, that means the
+     * dungeon is too obstacle-saturated
      */
-    private static final Random RGEN = new SecureRandom();
+    private static final int MAX_PIT_PLACEMENT_RETRIES = 50;
+
+    /* Distinguish the kinds of entity hashed into a dungeon's Zobrist hash */
+    private static final long LADDER_FEATURE = 1;
+    private static final long WUMPUS_FEATURE = 2;
+    private static final long DEAD_WUMPUS_FEATURE = 3;
+    private static final long GOLD_FEATURE = 4;
+    private static final long LOADED_BOW_FEATURE = 5;
+    private static final long EMPTY_BOW_FEATURE = 6;
+    private static final long OTHER_ENTITY_FEATURE = 7;
+
+    /**
+     * How pits are placed while a dungeon is being generated
+     */
+    public enum PitPlacement
+    {
+        /*
+         * One pit at a time, each followed by an A* search from the gold to the
+         * ladder. Dungeons larger than 350 x 350 or so generate slowly.
+         */
+        INCREMENTAL,
+        /*
+         * Many pits at a time, each batch followed by a single breadth-first
+         * search from the gold to the ladder. A batch that cuts the gold off
+         * is rolled back and retried at half the size. Paths only follow
+         * cardinal moves, the way explorers actually move.
+         */
+        BATCHED
+    }
 
     /**
      * Determines what percentage (within some bounds) of the dungeon should be
@@ -60,7 +91,7 @@ public class WumpusWorldDungeon
      * @return Random percentage value to use to determine the amount of pits a
      *         dungeon should have
      */
-    private static double pitPercentage()
+    private double pitPercentage()
     {
         /* This range of percentages is chosen arbitrarily */
         final double minPercentage = 0.121;
@@ -70,7 +101,7 @@ public class WumpusWorldDungeon
         double pitPercentage;
         do
         {
-            pitPercentage = RGEN.nextDouble();
+            pitPercentage = random_.nextDouble();
         }
         while(!(validPitPercentages.isValueWithin(pitPercentage)));
 
@@ -78,23 +109,39 @@ public class WumpusWorldDungeon
     }
 
     /*
-     * Utilizing a map instead of a grid allows us to have possible
-     * non-rectangular dungeons
+     * Flat grid of tile types. Never modified once the dungeon has been
+     * generated, so copies share it rather than copying every tile.
      */
-    private final Map<Vector2, DungeonTile> dungeon_;
+    private final DungeonTerrain terrain_;
 
-    private final Collection<DungeonEntity> dungeonEntities_;
+    /*
+     * Every entity that stays where it was put (ladder, gold, wumpus, dropped
+     * items), indexed by the space it is on
+     */
+    private final Map<Vector2, List<DungeonEntity>> entitiesBySpace_;
+    /*
+     * Explorers move every turn, so rather than keeping the spatial index up
+     * to date they are found through their owners; there are only ever a
+     * handful of them
+     */
+    private final Map<Player, DungeonExplorer> explorers_;
+
+    /* Typed slots for the entities that every dungeon has exactly one of */
+    private Ladder ladder_;
+    /* The gold placed when the dungeon was generated */
+    private Gold gold_;
+    private Wumpus wumpus_;
 
     /*
-     * Performance optimizations - store the min & max possible X & Y
-     * coordinates for this dungeon. This allows some cool stuff like
-     * non-rectangular dungeons
+     * Zobrist hash of every entity in the spatial index, updated as they are
+     * added and removed
      */
-    private final int maxXCoordinate_;
-    private final int maxYCoordinate_;
+    private long entitiesHash_ = 0L;
 
-    private final int minXCoordinate_;
-    private final int minYCoordinate_;
+    private final PitPlacement pitPlacement_;
+    /* Seed the dungeon was generated from; the same seed builds the same dungeon */
+    private final long seed_;
+    private final RandomStream random_;
 
     /**
      * Procedurally constructs a WumpusWorldDungeon of default width & height.
@@ -107,53 +154,65 @@ public class WumpusWorldDungeon
         this(DEFAULT_DUNGEON_WIDTH, DEFAULT_DUNGEON_HEIGHT);
     }
 
+    /**
+     * Procedurally constructs a WumpusWorldDungeon of the specified width &
+     * height from a random seed, placing pits in batches. Width and Height
+     * must be valid numbers (non-negative, at least as large as the smallest
+     * possible dungeon, 4x4)
+     *
+     * Note: The constructed Dungeon is guaranteed to be solvable
+     *
+     * @param width
+     *            Width of the dungeon
+     * @param height
+     *            Height of the dungeon
+     */
+    public WumpusWorldDungeon(final int width, final int height)
+    {
+        this(width, height, PitPlacement.BATCHED, ThreadLocalRandom.current().nextLong());
+    }
+
     /**
      * Procedurally constructs a WumpusWorldDungeon of the specified width &
      * height. Width and Height must be valid numbers (non-negative, at least as
      * large as the smallest possible dungeon, 4x4)
      *
-     * Note: Due to the procedural generation of the dungeon, dungeons larger
-     * than 350 x 350 or so will suffer slow generation times.
-     *
      * Note: The constructed Dungeon is guaranteed to be solvable
      *
      * @param width
      *            Width of the dungeon
      * @param height
      *            Height of the dungeon
+     * @param pitPlacement
+     *            How to place pits
+     * @param seed
+     *            Seed for the dungeon's random choices. The same size, pit
+     *            placement and seed always generate the same dungeon.
      */
-    public WumpusWorldDungeon(final int width, final int height)
+    public WumpusWorldDungeon(final int width, final int height,
+            final PitPlacement pitPlacement, final long seed)
     {
         Validate.isTrue(width >= MINIMUM_DUNGEON_WIDTH,
-                String.format("Cannot create a dungeon with width < %d", MINIMUM_DUNGEON_WIDTH));
+                () -> String.format("Cannot create a dungeon with width < %d",
+                        MINIMUM_DUNGEON_WIDTH));
         Validate.isTrue(height >= MINIMUM_DUNGEON_HEIGHT,
-                String.format("Cannot create a dungeon with width < %d", MINIMUM_DUNGEON_HEIGHT));
-
-        dungeon_ = new HashMap<Vector2, DungeonTile>(DEFAULT_DUNGEON_WIDTH * DEFAULT_DUNGEON_HEIGHT);
-        dungeonEntities_ = new HashSet<DungeonEntity>();
+                () -> String.format("Cannot create a dungeon with height < %d",
+                        MINIMUM_DUNGEON_HEIGHT));
+        Validate.notNull(pitPlacement, "Cannot create a dungeon without a pit placement");
 
-        /*
-         * Fill up the dungeon with null (empty) spaces. We need some kind of
-         * keyset enumeration on the map so that the dungeon consists of actual
-         * "spaces", or "tiles"
-         */
-        for(int i = 0; i < width; ++i)
-        {
-            for(int j = 0; j < height; ++j)
-            {
-                final Vector2 space = new Vector2(i, j);
-                dungeon_.put(space, new DungeonTile(DungeonTileType.EMPTY, space));
-            }
-        }
+        pitPlacement_ = pitPlacement;
+        seed_ = seed;
+        random_ = new RandomStream(seed);
 
-        /* Determine x & y bounds */
-        minXCoordinate_ = minimumXCoordinate();
-        maxXCoordinate_ = maximumXCoordinate();
-        minYCoordinate_ = minimumYCoordinate();
-        maxYCoordinate_ = maximumYCoordinate();
+        /* Every tile starts out empty */
+        terrain_ = new DungeonTerrain(width, height);
+        entitiesBySpace_ = new HashMap<>();
+        explorers_ = new HashMap<>();
 
         /* Finally, place everything */
         setupDungeon();
+        /* From here on the terrain is shared by every copy of this dungeon */
+        terrain_.seal();
     }
 
     /**
@@ -167,28 +226,126 @@ public class WumpusWorldDungeon
     public WumpusWorldDungeon(final WumpusWorldDungeon copy)
     {
         Validate.notNull(copy, "Cannot create a copy of a null WumpusWorldDungeon");
-        dungeon_ = new HashMap<Vector2, DungeonTile>(copy.dungeon_);
-        minXCoordinate_ = copy.minXCoordinate_;
-        minYCoordinate_ = copy.minYCoordinate_;
-        maxXCoordinate_ = copy.maxXCoordinate_;
-        maxYCoordinate_ = copy.maxYCoordinate_;
-        dungeonEntities_ = copy.dungeonEntities_.stream().map(entity -> entity.copy())
-                .collect(Collectors.toList());
+        /* Terrain is immutable once generated, so it can be shared */
+        terrain_ = copy.terrain_;
+        pitPlacement_ = copy.pitPlacement_;
+        seed_ = copy.seed_;
+        random_ = new RandomStream(copy.random_);
+        entitiesBySpace_ = new HashMap<>(copy.entitiesBySpace_.size() * 2);
+        explorers_ = new HashMap<>(copy.explorers_.size() * 2);
+        copy.entitiesBySpace_.values().forEach(entities -> entities.forEach(entity ->
+        {
+            final DungeonEntity entityCopy = entity.copy();
+            addEntity(entityCopy);
+            if(entity == copy.gold_)
+            {
+                gold_ = (Gold) entityCopy;
+            }
+        }));
+        copy.explorers_.values().forEach(explorer -> addEntity(explorer.copy()));
     }
 
     public void addDungeonExplorerForPlayer(final Player player)
     {
         Validate.notNull(player, "Cannot create a DungeonExplorer for a null player");
-        Validate.isFalse(
-                dungeonEntities_.stream().anyMatch(
-                        entity -> entity instanceof DungeonExplorer
-                                && ((DungeonExplorer) entity).getOwner().equals(player)),
+        Validate.isFalse(explorers_.containsKey(player),
                 "Cannot have multiple DungeonExplorers for the same player " + player);
         final Vector2 ladder = ladderSpace();
         /* Mix up what direction the adventurer starts, just for shits */
-        final Vector2 randomDirection = RandomUtils.randomOf(Vector2.cardinalDirections());
+        final Vector2 randomDirection = RandomUtils.randomOf(Vector2.cardinalDirections(),
+                random_);
         final DungeonExplorer explorer = new DungeonExplorer(player, ladder, randomDirection);
-        dungeonEntities_.add(explorer);
+        addEntity(explorer);
+    }
+
+    /**
+     * Adds an entity to the spatial index (or, for explorers, to the explorers
+     * by owner) and fills in its typed slot, if it has one
+     *
+     * @param entity
+     *            Entity to add. Must not move while it is in the index, unless
+     *            it is a DungeonExplorer.
+     */
+    private void addEntity(final DungeonEntity entity)
+    {
+        if(entity instanceof DungeonExplorer)
+        {
+            final DungeonExplorer explorer = (DungeonExplorer) entity;
+            explorers_.put(explorer.getOwner(), explorer);
+            return;
+        }
+        entitiesBySpace_.computeIfAbsent(entity.getPosition(), space -> new ArrayList<>(1)).add(
+                entity);
+        entitiesHash_ ^= zobristKey(entity);
+        if(entity instanceof Ladder)
+        {
+            ladder_ = (Ladder) entity;
+        }
+        else if(entity instanceof Wumpus)
+        {
+            wumpus_ = (Wumpus) entity;
+        }
+    }
+
+    private void removeEntity(final DungeonEntity entity)
+    {
+        final List<DungeonEntity> entitiesOnSpace = entitiesBySpace_.get(entity.getPosition());
+        /*
+         * By identity: equal items (eg the generated gold and a dropped copy)
+         * may share a space
+         */
+        final int index = (entitiesOnSpace == null) ? -1 : indexOfIdentical(entitiesOnSpace,
+                entity);
+        if(index < 0)
+        {
+            return;
+        }
+        entitiesOnSpace.remove(index);
+        if(entitiesOnSpace.isEmpty())
+        {
+            entitiesBySpace_.remove(entity.getPosition());
+        }
+        entitiesHash_ ^= zobristKey(entity);
+        if(entity == ladder_)
+        {
+            ladder_ = null;
+        }
+        else if(entity == gold_)
+        {
+            gold_ = null;
+        }
+        else if(entity == wumpus_)
+        {
+            wumpus_ = null;
+        }
+    }
+
+    private static int indexOfIdentical(final List<DungeonEntity> entities,
+            final DungeonEntity entity)
+    {
+        for(int index = 0; index < entities.size(); ++index)
+        {
+            if(entities.get(index) == entity)
+            {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return Whether or not any DungeonExplorer is standing on $space
+     */
+    private boolean hasExplorerOnSpace(final Vector2 space)
+    {
+        for(final DungeonExplorer explorer : explorers_.values())
+        {
+            if(explorer.getPosition().equals(space))
+            {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -205,7 +362,7 @@ public class WumpusWorldDungeon
      */
     private boolean areSpacesConnected(final Vector2 source, final Vector2 goal)
     {
-        if(!dungeon_.containsKey(source) || !dungeon_.containsKey(goal))
+        if(!contains(source) || !contains(goal))
         {
             /*
              * There is no way that two spaces that are not in the map are
@@ -270,9 +427,96 @@ public class WumpusWorldDungeon
      */
     private boolean canReachLadder(final Vector2 source)
     {
+        if(pitPlacement_ == PitPlacement.BATCHED)
+        {
+            return isCardinalPathBetween(source, ladderSpace());
+        }
         return areSpacesConnected(source, ladderSpace());
     }
 
+    /**
+     * Breadth-first search over cardinal moves between two spaces, run
+     * directly over terrain indices so that it stays cheap on very large
+     * dungeons.
+     *
+     * @param source
+     *            Space to start the path from
+     * @param goal
+     *            Space that the path will end, if a path exists
+     * @return True if a path can be made, false otherwise
+     */
+    private boolean isCardinalPathBetween(final Vector2 source, final Vector2 goal)
+    {
+        if(!contains(source) || !contains(goal))
+        {
+            return false;
+        }
+        final int width = terrain_.width();
+        final int height = terrain_.height();
+        final int sourceIndex = terrain_.indexOf(source.getX(), source.getY());
+        final int goalIndex = terrain_.indexOf(goal.getX(), goal.getY());
+
+        /* Treat anything impassable standing on the terrain as already seen */
+        final boolean [] discovered = new boolean [terrain_.spaces()];
+        entitiesBySpace_.forEach((space, entities) ->
+        {
+            if(entities.stream().anyMatch(entity -> !entity.isPassable()))
+            {
+                discovered[terrain_.indexOf(space.getX(), space.getY())] = true;
+            }
+        });
+        explorers_.values().forEach(
+                explorer -> discovered[terrain_.indexOf(explorer.getPosition().getX(), explorer
+                        .getPosition().getY())] = true);
+
+        final int [] queue = new int [terrain_.spaces()];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = sourceIndex;
+        discovered[sourceIndex] = true;
+        while(head < tail)
+        {
+            final int index = queue[head++];
+            if(index == goalIndex)
+            {
+                return true;
+            }
+            final int x = index % width;
+            final int y = index / width;
+            if(x > 0)
+            {
+                tail = discover(index - 1, discovered, queue, tail);
+            }
+            if(x < width - 1)
+            {
+                tail = discover(index + 1, discovered, queue, tail);
+            }
+            if(y > 0)
+            {
+                tail = discover(index - width, discovered, queue, tail);
+            }
+            if(y < height - 1)
+            {
+                tail = discover(index + width, discovered, queue, tail);
+            }
+        }
+        return false;
+    }
+
+    /* Queues up a space for the breadth-first search, if it can be walked on */
+    private int discover(final int index, final boolean [] discovered, final int [] queue,
+            final int tail)
+    {
+        if(discovered[index]
+                || !terrain_.isPassable(index % terrain_.width(), index / terrain_.width()))
+        {
+            return tail;
+        }
+        discovered[index] = true;
+        queue[tail] = index;
+        return tail + 1;
+    }
+
     private boolean arePitsTooCloseTooLadder()
     {
         /*
@@ -316,25 +560,31 @@ public class WumpusWorldDungeon
         if(entity instanceof DungeonTile)
         {
             final Vector2 tilePosition = entity.getPosition();
-            return dungeon_.containsKey(tilePosition);
+            return terrain_.contains(tilePosition);
+        }
+        if(entity instanceof DungeonExplorer)
+        {
+            return explorers_.containsValue(entity);
         }
 
-        return dungeonEntities_.contains(entity);
+        final List<DungeonEntity> entitiesOnSpace = (entity == null) ? null : entitiesBySpace_
+                .get(entity.getPosition());
+        return entitiesOnSpace != null && entitiesOnSpace.contains(entity);
     }
 
     public boolean contains(final Vector2 space)
     {
-        return dungeon_.containsKey(space);
+        return terrain_.contains(space);
     }
 
     private boolean containsGold()
     {
-        return dungeonEntities_.stream().anyMatch(entity -> entity instanceof Gold);
+        return gold_ != null;
     }
 
     private boolean containsLadder()
     {
-        return dungeonEntities_.stream().anyMatch(entity -> entity instanceof Ladder);
+        return ladder_ != null;
     }
 
     private Set<DungeonEntity> dungeonContents()
@@ -355,49 +605,108 @@ public class WumpusWorldDungeon
         final int width = width();
         final int height = height();
         final DungeonEntity [][] dungeon = new DungeonEntity [width] [height];
-        dungeon_.entrySet().forEach(spaceToRoomContents ->
+        for(int x = 0; x < width; ++x)
         {
-            final Vector2 space = spaceToRoomContents.getKey();
-            final DungeonEntity contents = spaceToRoomContents.getValue();
-            dungeon[space.getX()][space.getY()] = contents;
-        });
+            for(int y = 0; y < height; ++y)
+            {
+                dungeon[x][y] = terrain_.tileAt(new Vector2(x, y));
+            }
+        }
         /*
          * Override the "tile" value with whatever is there currently. TODO:
          * Change this to Collection<DungeonEntity>[][]
          */
-        dungeonEntities_.forEach(entity ->
+        entitiesBySpace_.values().forEach(entities -> entities.forEach(entity ->
         {
             final Vector2 space = entity.getPosition();
             dungeon[space.getX()][space.getY()] = entity;
+        }));
+        explorers_.values().forEach(explorer ->
+        {
+            final Vector2 space = explorer.getPosition();
+            dungeon[space.getX()][space.getY()] = explorer;
         });
         return dungeon;
     }
 
     public DungeonExplorer getDungeonExplorer(final Player player)
     {
-        return (DungeonExplorer) dungeonEntities_.stream()
-                .filter(entity -> entity instanceof DungeonExplorer)
-                .filter(explorer -> ((DungeonExplorer) explorer).getOwner().equals(player))
-                .findFirst().orElse(null);
+        return explorers_.get(player);
+    }
+
+    /**
+     * @return The dungeon's wumpus, dead or alive
+     */
+    public Wumpus getWumpus()
+    {
+        return wumpus_;
+    }
+
+    /**
+     * What an explorer standing on $space would perceive of the dungeon: a
+     * breeze next to a pit, a stench next to the living wumpus and glitter
+     * where gold lies on the floor. Pits never move, so breezes are looked up
+     * in the terrain; there is only the one wumpus to smell, and only the
+     * space itself to search for gold.
+     *
+     * @return Mask of the percepts, as given by Percept.mask()
+     */
+    public int perceptMaskForSpace(final Vector2 space)
+    {
+        int mask = 0;
+        if(terrain_.isBreezy(space))
+        {
+            mask |= Percept.BREEZE.mask();
+        }
+        if(wumpus_ != null && !wumpus_.isDead())
+        {
+            final Vector2 wumpusSpace = wumpus_.getPosition();
+            if(Math.abs(wumpusSpace.getX() - space.getX())
+                    + Math.abs(wumpusSpace.getY() - space.getY()) == 1)
+            {
+                mask |= Percept.STENCH.mask();
+            }
+        }
+        final List<DungeonEntity> staticEntities = entitiesBySpace_.get(space);
+        if(staticEntities != null)
+        {
+            for(final DungeonEntity entity : staticEntities)
+            {
+                if(entity instanceof Gold)
+                {
+                    mask |= Percept.GLITTER.mask();
+                }
+            }
+        }
+        return mask;
     }
 
     public Collection<DungeonEntity> getEntitiesOnSpace(final Vector2 space)
     {
         final Collection<DungeonEntity> entitiesOnSpace = new ArrayList<DungeonEntity>();
-        if(dungeon_.containsKey(space))
+        final DungeonTile tile = terrain_.tileAt(space);
+        if(tile != null)
         {
-            final DungeonTile tile = dungeon_.get(space);
             entitiesOnSpace.add(tile);
         }
-        dungeonEntities_.stream().filter(entity -> entity.getPosition().equals(space))
-                .forEach(entity -> entitiesOnSpace.add(entity));
+        final List<DungeonEntity> staticEntities = entitiesBySpace_.get(space);
+        if(staticEntities != null)
+        {
+            entitiesOnSpace.addAll(staticEntities);
+        }
+        for(final DungeonExplorer explorer : explorers_.values())
+        {
+            if(explorer.getPosition().equals(space))
+            {
+                entitiesOnSpace.add(explorer);
+            }
+        }
         return entitiesOnSpace;
     }
 
     public Collection<Player> getPlayers()
     {
-        return dungeonEntities_.stream().filter(entity -> entity instanceof DungeonExplorer)
-                .map(entity -> ((DungeonExplorer) entity).getOwner()).collect(Collectors.toSet());
+        return new HashSet<>(explorers_.keySet());
     }
 
     /**
@@ -407,27 +716,37 @@ public class WumpusWorldDungeon
      */
     private Vector2 goldSpace()
     {
-        return dungeonEntities_.stream().filter(entity -> (entity instanceof Gold)).findFirst()
-                .get().getPosition();
+        return gold_.getPosition();
     }
 
     private boolean hasEmptySpaces()
     {
-        final Set<Vector2> emptySpaces = dungeon_.values().stream()
-                .filter(tile -> tile.getTileType() == DungeonTileType.EMPTY)
-                .map(tile -> tile.getPosition()).collect(Collectors.toSet());
-        dungeonEntities_.forEach(entity ->
-        {
-            final Vector2 space = entity.getPosition();
-            emptySpaces.remove(space);
-        });
-        return !emptySpaces.isEmpty();
+        /* Empty tiles, less the empty tiles that something is standing on */
+        final Set<Vector2> occupiedEmptySpaces = Stream
+                .concat(entitiesBySpace_.keySet().stream(),
+                        explorers_.values().stream().map(explorer -> explorer.getPosition()))
+                .filter(space -> contains(space)
+                        && terrain_.tileTypeAt(space.getX(), space.getY()) == DungeonTileType.EMPTY)
+                .collect(Collectors.toSet());
+        return terrain_.spaces() - terrain_.pitCount() > occupiedEmptySpaces.size();
     }
 
     private boolean hasPits()
     {
-        return dungeon_.values().stream()
-                .anyMatch(tile -> tile.getTileType() == DungeonTileType.PIT);
+        return terrain_.pitCount() > 0;
+    }
+
+    /**
+     * @return Seed the dungeon was generated from
+     */
+    public long getSeed()
+    {
+        return seed_;
+    }
+
+    public PitPlacement getPitPlacement()
+    {
+        return pitPlacement_;
     }
 
     /**
@@ -436,30 +755,27 @@ public class WumpusWorldDungeon
      */
     public int height()
     {
-        return (maxYCoordinate_ - minYCoordinate_) + 1;
+        return terrain_.height();
     }
 
     private boolean isBlank()
     {
-        return dungeonEntities_.isEmpty()
-                && (!dungeon_.values().stream()
-                        .anyMatch(tile -> tile.getTileType() != DungeonTileType.EMPTY));
+        return entitiesBySpace_.isEmpty() && explorers_.isEmpty() && !hasPits();
     }
 
     private boolean isSpaceOccupied(final Vector2 space)
     {
-        if(!dungeon_.containsKey(space))
+        if(!contains(space))
         {
             return false;
         }
 
-        final DungeonTile tile = dungeon_.get(space);
-        if(tile.getTileType() != DungeonTileType.EMPTY)
+        if(terrain_.tileTypeAt(space.getX(), space.getY()) != DungeonTileType.EMPTY)
         {
             return true;
         }
 
-        return dungeonEntities_.stream().anyMatch(entity -> entity.getPosition().equals(space));
+        return entitiesBySpace_.containsKey(space) || hasExplorerOnSpace(space);
     }
 
     /**
@@ -475,15 +791,25 @@ public class WumpusWorldDungeon
      */
     private boolean isSpacePassable(final Vector2 position)
     {
-        final boolean dungeonTilePassable = dungeon_.containsKey(position)
-                && dungeon_.get(position).isPassable();
-        if(dungeonTilePassable)
+        final boolean dungeonTilePassable = position != null
+                && terrain_.isPassable(position.getX(), position.getY());
+        if(!dungeonTilePassable || hasExplorerOnSpace(position))
         {
-            return !dungeonEntities_.stream()
-                    .filter(entity -> Objects.equals(entity.getPosition(), position))
-                    .anyMatch(entity -> !entity.isPassable());
+            /* Explorers are never passable */
+            return false;
         }
-        return false;
+        final List<DungeonEntity> entitiesOnSpace = entitiesBySpace_.get(position);
+        if(entitiesOnSpace != null)
+        {
+            for(final DungeonEntity entity : entitiesOnSpace)
+            {
+                if(!entity.isPassable())
+                {
+                    return false;
+                }
+            }
+        }
+        return true;
     }
 
     /**
@@ -493,52 +819,7 @@ public class WumpusWorldDungeon
      */
     public Vector2 ladderSpace()
     {
-        return dungeonEntities_.stream().filter(entity -> (entity instanceof Ladder)).findFirst()
-                .get().getPosition();
-    }
-
-    /**
-     * Functionally determines the maximum X coordinate in the dungeon by
-     * iterating over every space in the dungeon
-     *
-     * @return Maximum X coordinate of the dungeon, 0-indexed
-     */
-    private int maximumXCoordinate()
-    {
-        return dungeon_.keySet().stream().map(space -> space.getX()).max(Integer::compare).get();
-    }
-
-    /**
-     * Functionally determines the maximum Y coordinate in the dungeon by
-     * iterating over every space in the dungeon
-     *
-     * @return Maximum Y coordinate of the dungeon, 0-indexed
-     */
-    private int maximumYCoordinate()
-    {
-        return dungeon_.keySet().stream().map(space -> space.getY()).max(Integer::compare).get();
-    }
-
-    /**
-     * Functionally determines the minimum X coordinate in the dungeon by
-     * iterating over every space in the dungeon
-     *
-     * @return Minimum X coordinate of the dungeon, 0-indexed
-     */
-    private int minimumXCoordinate()
-    {
-        return dungeon_.keySet().stream().map(space -> space.getX()).min(Integer::compare).get();
-    }
-
-    /**
-     * Functionally determines the minimum Y coordinate in the dungeon by
-     * iterating over every space in the dungeon
-     *
-     * @return Minimum Y coordinate of the dungeon, 0-indexed
-     */
-    private int minimumYCoordinate()
-    {
-        return dungeon_.keySet().stream().map(space -> space.getY()).min(Integer::compare).get();
+        return ladder_.getPosition();
     }
 
     /**
@@ -562,12 +843,11 @@ public class WumpusWorldDungeon
          * Make sure the chosen position exists in the map, doesn't have
          * anything on it, and is reachable from the ladder
          */
-        while(!dungeon_.containsKey(goldSpace) || isSpaceOccupied(goldSpace)
-                || !canReachLadder(goldSpace));
+        while(!contains(goldSpace) || isSpaceOccupied(goldSpace) || !canReachLadder(goldSpace));
 
-        final DungeonTile goldTile = dungeon_.get(goldSpace);
-        final Gold gold = new Gold(goldTile);
-        dungeonEntities_.add(gold);
+        final DungeonTile goldTile = terrain_.tileAt(goldSpace);
+        gold_ = new Gold(goldTile);
+        addEntity(gold_);
     }
 
     /**
@@ -580,7 +860,7 @@ public class WumpusWorldDungeon
      */
     private void placeLadder()
     {
-        Validate.isTrue(isBlank(), String.format(
+        Validate.isTrue(isBlank(), () -> String.format(
                 "Cannot place a ladder in a pre-populated dungeon or a"
                         + " dungeon without any empty spaces."
                         + " This dungeon already contains %s", dungeonContents()));
@@ -595,10 +875,9 @@ public class WumpusWorldDungeon
          * there's no need to double check any condition besides that the chosen
          * space actually exists in the dungeon
          */
-        while(!dungeon_.containsKey(ladderSpace));
+        while(!contains(ladderSpace));
 
-        final Ladder ladder = new Ladder(ladderSpace);
-        dungeonEntities_.add(ladder);
+        addEntity(new Ladder(ladderSpace));
     }
 
     /**
@@ -616,41 +895,47 @@ public class WumpusWorldDungeon
      */
     private void placePits()
     {
-        Validate.isTrue(containsLadder() && containsGold() && hasEmptySpaces(), String.format(
-                "Cannot place pits in a dungeon without a ladder, "
+        Validate.isTrue(containsLadder() && containsGold() && hasEmptySpaces(),
+                () -> String.format("Cannot place pits in a dungeon without a ladder, "
                         + "without gold, or without empty spaces."
                         + " This dungeon already contains %s", dungeonContents()));
 
         final double pitPercentage = pitPercentage();
-        final long numPits = Math.round(dungeon_.size() * pitPercentage);
-        int numPlacementRetries = 0;
-        /*
-         * Determine an arbitrary upper-bound on the number of attempts that we
-         * make for placing a single pit - if we continually fail, that means
-         * the dungeon is too obstacle-saturated
-         */
-        final int maxPlacementRetries = 50;
+        final int numPits = (int) Math.round(terrain_.spaces() * pitPercentage);
+        switch(pitPlacement_)
+        {
+        case BATCHED:
+            placePitsInBatches(numPits);
+            break;
+        default:
+            placePitsIncrementally(numPits);
+            break;
+        }
+    }
 
-        for(int pitCount = 0; pitCount < numPits && numPlacementRetries < maxPlacementRetries;)
+    /**
+     * Places pits one at a time, checking that the gold can still reach the
+     * ladder after each one
+     *
+     * @param numPits
+     *            Number of pits to try to place
+     */
+    private void placePitsIncrementally(final int numPits)
+    {
+        int numPlacementRetries = 0;
+        for(int pitCount = 0; pitCount < numPits
+                && numPlacementRetries < MAX_PIT_PLACEMENT_RETRIES;)
         {
-            /*
-             * TODO: Currently, we place a pit then check if a path exists from
-             * gold to entrance. Generally, the pit placement is ok. We could
-             * optimize this by batching up the pits before checking if a path
-             * exists (IE, many pit placements, one path check, rolling all back
-             * if not ok). Pit placement / generation is very cheap, but right
-             * now, this method is fast enough.
-             */
             Vector2 pitSpace;
             do
             {
                 pitSpace = probableSpace();
             }
             /* Make sure we've picked a valid, empty space */
-            while(!dungeon_.containsKey(pitSpace) || isSpaceOccupied(pitSpace));
+            while(!contains(pitSpace) || isSpaceOccupied(pitSpace));
 
             /* Place the pit so we can evaluate it's "goodness" */
-            dungeon_.replace(pitSpace, new DungeonTile(DungeonTileType.PIT, pitSpace));
+            terrain_.setTileType(pitSpace.getX(), pitSpace.getY(), DungeonTileType.PIT);
             if(!arePitsTooCloseTooLadder() && canReachLadderFromGold())
             {
                 /*
@@ -663,12 +948,83 @@ public class WumpusWorldDungeon
             else
             {
                 /* Remove the pit, it's no good! */
-                dungeon_.replace(pitSpace, new DungeonTile(DungeonTileType.EMPTY, pitSpace));
+                terrain_.setTileType(pitSpace.getX(), pitSpace.getY(), DungeonTileType.EMPTY);
                 ++numPlacementRetries;
             }
         }
     }
 
+    /**
+     * Places pits many at a time, checking that the gold can still reach the
+     * ladder once per batch. Failed batches are rolled back and retried at
+     * half the size, down to a single pit.
+     *
+     * @param numPits
+     *            Number of pits to try to place
+     */
+    private void placePitsInBatches(final int numPits)
+    {
+        final Vector2 ladder = ladderSpace();
+        final Vector2 gold = goldSpace();
+        /* Spaces pitted by the current batch, so it can be rolled back */
+        final int [] batchXs = new int [numPits];
+        final int [] batchYs = new int [numPits];
+
+        int batchSize = numPits;
+        int numPlacementRetries = 0;
+        for(int pitCount = 0; pitCount < numPits
+                && numPlacementRetries < MAX_PIT_PLACEMENT_RETRIES;)
+        {
+            final int pitsInBatch = Math.min(batchSize, numPits - pitCount);
+            for(int pit = 0; pit < pitsInBatch; ++pit)
+            {
+                int x;
+                int y;
+                do
+                {
+                    x = probableXCoordinate();
+                    y = probableYCoordinate();
+                }
+                while(!canHoldPit(x, y, ladder));
+                terrain_.setTileType(x, y, DungeonTileType.PIT);
+                batchXs[pit] = x;
+                batchYs[pit] = y;
+            }
+
+            if(isCardinalPathBetween(gold, ladder))
+            {
+                pitCount += pitsInBatch;
+                numPlacementRetries = 0;
+            }
+            else
+            {
+                for(int pit = 0; pit < pitsInBatch; ++pit)
+                {
+                    terrain_.setTileType(batchXs[pit], batchYs[pit], DungeonTileType.EMPTY);
+                }
+                if(pitsInBatch == 1)
+                {
+                    ++numPlacementRetries;
+                }
+                batchSize = Math.max(1, pitsInBatch / 2);
+            }
+        }
+    }
+
+    /**
+     * @return Whether or not a pit may be dug at ($x, $y): the space must be
+     *         empty, unoccupied, and not adjacent to the ladder
+     */
+    private boolean canHoldPit(final int x, final int y, final Vector2 ladder)
+    {
+        if(Math.abs(x - ladder.getX()) <= 1 && Math.abs(y - ladder.getY()) <= 1)
+        {
+            return false;
+        }
+        return terrain_.tileTypeAt(x, y) == DungeonTileType.EMPTY
+                && !entitiesBySpace_.containsKey(new Vector2(x, y));
+    }
+
     /**
      * Places a single wumpus procedurally in the dungeon.
      *
@@ -681,8 +1037,8 @@ public class WumpusWorldDungeon
      */
     private void placeWumpus()
     {
-        Validate.isTrue(containsLadder() && containsGold() && hasEmptySpaces(), String.format(
-                "Cannot place a wumpus in a dungeon without gold, "
+        Validate.isTrue(containsLadder() && containsGold() && hasEmptySpaces(),
+                () -> String.format("Cannot place a wumpus in a dungeon without gold, "
                         + "without a ladder, or without empty spaces."
                         + " This dungeon already contains %s", dungeonContents()));
 
@@ -695,10 +1051,10 @@ public class WumpusWorldDungeon
             {
                 wumpusSpace = probableSpace();
             }
-            while(!dungeon_.containsKey(wumpusSpace) || isSpaceOccupied(wumpusSpace));
+            while(!contains(wumpusSpace) || isSpaceOccupied(wumpusSpace));
 
             final Wumpus wumpus = new Wumpus(wumpusSpace);
-            dungeonEntities_.add(wumpus);
+            addEntity(wumpus);
             if(canReachLadderFromGold())
             {
                 placedWumpus = true;
@@ -706,7 +1062,7 @@ public class WumpusWorldDungeon
             }
             else
             {
-                dungeonEntities_.remove(wumpus);
+                removeEntity(wumpus);
             }
         }
 
@@ -737,9 +1093,7 @@ public class WumpusWorldDungeon
      */
     private int probableXCoordinate()
     {
-        final int minX = minXCoordinate_;
-        final int maxX = maxXCoordinate_;
-        return RGEN.nextInt(maxX + 1 - minX) + minX;
+        return random_.nextInt(width());
     }
 
     /**
@@ -750,9 +1104,7 @@ public class WumpusWorldDungeon
      */
     private int probableYCoordinate()
     {
-        final int minY = minYCoordinate_;
-        final int maxY = maxYCoordinate_;
-        return RGEN.nextInt(maxY + 1 - minY) + minY;
+        return random_.nextInt(height());
     }
 
     /**
@@ -774,9 +1126,84 @@ public class WumpusWorldDungeon
         placePits();
     }
 
+    /**
+     * Zobrist hash of the dungeon: its terrain and entities, and where each
+     * explorer is, which way they face and what they carry. Terrain and
+     * static entities are hashed as they are placed, so this only costs a
+     * few operations per explorer.
+     *
+     * @return The dungeon's hash
+     */
+    public long getHash()
+    {
+        long hash = terrain_.hash() ^ entitiesHash_;
+        if(wumpus_ != null && wumpus_.isDead())
+        {
+            hash ^= ZobristKeys.keyOf(DEAD_WUMPUS_FEATURE);
+        }
+        for(final DungeonExplorer explorer : explorers_.values())
+        {
+            final long owner = explorer.getOwner().hashCode();
+            hash ^= ZobristKeys.keyOf(ZobristKeys.keyOf(owner, spaceFeature(explorer
+                    .getPosition())), spaceFeature(explorer.getDirection()));
+            /* Items are held in a stack, so where they are in it matters */
+            int depth = 0;
+            for(final Item item : explorer.getItems())
+            {
+                hash ^= ZobristKeys.keyOf(ZobristKeys.keyOf(owner, itemFeature(item)), depth++);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * @return Zobrist key for a static $entity on its space
+     */
+    private static long zobristKey(final DungeonEntity entity)
+    {
+        final long feature;
+        if(entity instanceof Ladder)
+        {
+            feature = LADDER_FEATURE;
+        }
+        else if(entity instanceof Wumpus)
+        {
+            feature = WUMPUS_FEATURE;
+        }
+        else if(entity instanceof Item)
+        {
+            feature = itemFeature((Item) entity);
+        }
+        else
+        {
+            feature = OTHER_ENTITY_FEATURE;
+        }
+        return ZobristKeys.keyOf(feature, spaceFeature(entity.getPosition()));
+    }
+
+    private static long itemFeature(final Item item)
+    {
+        if(item instanceof BowAndArrow)
+        {
+            return ((BowAndArrow) item).hasArrows() ? LOADED_BOW_FEATURE : EMPTY_BOW_FEATURE;
+        }
+        return (item instanceof Gold) ? GOLD_FEATURE : OTHER_ENTITY_FEATURE;
+    }
+
+    /**
+     * @return Both coordinates of $space packed into a single long
+     */
+    private static long spaceFeature(final Vector2 space)
+    {
+        return ((long) space.getX() << Integer.SIZE) | (space.getY() & 0xffffffffL);
+    }
+
+    /**
+     * @return The tile at $space, or null if $space is outside of the dungeon
+     */
     public DungeonTile tileForSpace(final Vector2 space)
     {
-        return dungeon_.get(space);
+        return terrain_.tileAt(space);
     }
 
     @Override
@@ -802,15 +1229,43 @@ public class WumpusWorldDungeon
         return builder.toString();
     }
 
-    public void putItem(final Item item)
+    /**
+     * Places a copy of an item on the floor of the space it is on
+     *
+     * @param item
+     *            Item to place
+     * @return The copy now on the floor
+     */
+    public Item putItem(final Item item)
     {
         Validate.notNull(item, "Cannot place a null item into the dungeon");
-        Validate.isTrue(dungeon_.containsKey(item.getPosition()),
+        Validate.isTrue(contains(item.getPosition()),
                 "Cannot place an item outside of the dungeon");
 
         final Vector2 position = item.getPosition();
         final DungeonTile tile = tileForSpace(position);
-        dungeonEntities_.add(((Item) item.copy()).withOwner(tile));
+        final Item placedItem = ((Item) item.copy()).withOwner(tile);
+        addEntity(placedItem);
+        return placedItem;
+    }
+
+    /**
+     * Takes an item off the floor, whether it was placed by putItem(...) or
+     * when the dungeon was generated
+     */
+    void removeItem(final Item item)
+    {
+        removeEntity(item);
+    }
+
+    /**
+     * Puts an item taken off the floor by removeItem(...) back where it was,
+     * for taking back the action that picked it up
+     */
+    void replaceItem(final Item item)
+    {
+        Validate.notNull(item, "Cannot replace a null item");
+        addEntity(item);
     }
 
     /**
@@ -819,6 +1274,6 @@ public class WumpusWorldDungeon
      */
     public int width()
     {
-        return (maxXCoordinate_ - minXCoordinate_) + 1;
+        return terrain_.width();
     }
 }
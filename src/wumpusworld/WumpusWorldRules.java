@@ -1,6 +1,5 @@
 package wumpusworld;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -9,7 +8,9 @@ import java.util.Objects;
 import java.util.stream.Collectors;
 
 import utils.ClosedRange;
+import utils.RandomStream;
 import utils.Validate;
+import utils.ValidationLevel;
 import utils.Vector2;
 import wumpusworld.entities.DungeonExplorer;
 import wumpusworld.entities.DungeonTile;
@@ -22,18 +23,48 @@ import wumpusworld.states.WumpusWorldInternalState;
 import wumpusworld.states.WumpusWorldPlayerState;
 import wumpusworld.states.WumpusWorldState;
 import core.Player;
-import core.Rules;
+import core.ReversibleRules;
 import core.Score;
+import core.StateHashing;
 import java.util.Set;
 
 /*
  * Full details found:
  * http://www.cis.temple.edu/~giorgio/cis587/readings/wumpus.shtml
  */
-public class WumpusWorldRules implements Rules<WumpusWorldState, WumpusWorldAction>
+public class WumpusWorldRules implements
+        ReversibleRules<WumpusWorldState, WumpusWorldAction, WumpusWorldUndo>,
+        StateHashing<WumpusWorldState>
 {
     private static final int NUMBER_OF_PLAYERS = 1;
 
+    /* Where initial states get their dungeons from; null to generate them on the spot */
+    private final DungeonSupply dungeons_;
+
+    /**
+     * Rules that generate a new dungeon for every game as it starts
+     */
+    public WumpusWorldRules()
+    {
+        dungeons_ = null;
+    }
+
+    /**
+     * Rules that start every game in the next dungeon from a supply, rather
+     * than generating one on the spot. The random streams given to
+     * generateInitialState(...) are then not used: dungeons come with their
+     * own seeds (WumpusWorldDungeon.getSeed()).
+     *
+     * @param dungeons
+     *            Supply of pre-generated dungeons; may be shared with other
+     *            Rules, and is not closed by them
+     */
+    public WumpusWorldRules(final DungeonSupply dungeons)
+    {
+        Validate.notNull(dungeons, "Cannot draw dungeons from a null supply");
+        dungeons_ = dungeons;
+    }
+
     @Override
     public WumpusWorldState copyState(final WumpusWorldState state)
     {
@@ -41,6 +72,17 @@ public class WumpusWorldRules implements Rules<WumpusWorldState, WumpusWorldActi
         return state.copy();
     }
 
+    /**
+     * Transitions always act on a copy of the dungeon, so a state can be
+     * viewed as it is, rather than copying its entities
+     */
+    @Override
+    public WumpusWorldState readOnlyView(final WumpusWorldState state)
+    {
+        Validate.notNull(state, "Cannot view a null WumpusWorldState!");
+        return state;
+    }
+
     @Override
     public WumpusWorldState filterState(final WumpusWorldState state, final Player player)
     {
@@ -51,13 +93,25 @@ public class WumpusWorldRules implements Rules<WumpusWorldState, WumpusWorldActi
 
     @Override
     public WumpusWorldState generateInitialState(final Set<Player> players)
+    {
+        return generateInitialState(players, new RandomStream());
+    }
+
+    @Override
+    public WumpusWorldState generateInitialState(final Set<Player> players,
+            final RandomStream random)
     {
         Validate.notEmpty(players, "Cannot create a WumpusWorldDungeon" + " without any players");
         Validate.isTrue(numberOfPlayers().isValueWithin(players.size()),
-                String.format("Cannot create a WumpusWorldDungeon with "
-                        + "%d players. Valid amounts: ", players.size(), numberOfPlayers()));
+                () -> String.format("Cannot create a WumpusWorldDungeon with "
+                        + "%d players. Valid amounts: %s", players.size(), numberOfPlayers()));
 
-        final WumpusWorldInternalState internalStartingState = new WumpusWorldInternalState(players);
+        if(dungeons_ != null)
+        {
+            return new WumpusWorldInternalState(players, dungeons_.take());
+        }
+        final WumpusWorldInternalState internalStartingState = new WumpusWorldInternalState(
+                players, random);
         return internalStartingState;
     }
 
@@ -107,9 +161,105 @@ public class WumpusWorldRules implements Rules<WumpusWorldState, WumpusWorldActi
         return state.scores();
     }
 
+    @Override
+    public long stateHash(final WumpusWorldState state)
+    {
+        Validate.notNull(state, "Cannot hash a null WumpusWorldState");
+        return state.getHash();
+    }
+
+    /**
+     * @return Whether or not $target lies ahead of $origin along the cardinal
+     *         $direction
+     */
+    private static boolean isInLineOfFire(final Vector2 origin, final Vector2 direction,
+            final Vector2 target)
+    {
+        final int deltaX = target.getX() - origin.getX();
+        final int deltaY = target.getY() - origin.getY();
+        if(direction.getX() != 0)
+        {
+            return deltaY == 0 && deltaX * direction.getX() > 0;
+        }
+        return deltaX == 0 && deltaY * direction.getY() > 0;
+    }
+
     @Override
     public WumpusWorldState transition(final WumpusWorldState state, final WumpusWorldAction action)
+    {
+        validateAction(state, action);
+        /* Make sure we don't modify the state that was passed in */
+        final WumpusWorldInternalState nextState = new WumpusWorldInternalState(
+                (WumpusWorldInternalState) state);
+        performAction(nextState, action);
+        return nextState;
+    }
+
+    @Override
+    public WumpusWorldUndo apply(final WumpusWorldState state, final WumpusWorldAction action)
+    {
+        validateAction(state, action);
+        return performAction((WumpusWorldInternalState) state, action);
+    }
+
+    @Override
+    public void undo(final WumpusWorldState state, final WumpusWorldUndo undo)
     {
+        Validate.isTrue(state instanceof WumpusWorldInternalState,
+                "Can not undo without a proper reference to our internal state. "
+                        + "Did you accidentally pass in a filtered state?");
+        Validate.notNull(undo, "Cannot undo an action without its undo token");
+        final WumpusWorldInternalState internalState = (WumpusWorldInternalState) state;
+        final WumpusWorldDungeon dungeon = internalState.getDungeon();
+        final DungeonExplorer explorer = dungeon.getDungeonExplorer(undo.action_.getPlayer());
+
+        /* Apply the inverse of whatever the action did */
+        switch(undo.action_.getAction())
+        {
+        case TURN_RIGHT:
+            explorer.turnLeft();
+            break;
+        case TURN_LEFT:
+            explorer.turnRight();
+            break;
+        case RELEASE:
+            if(undo.releasedItem_ != null)
+            {
+                dungeon.removeItem(undo.droppedItem_);
+                explorer.grab(undo.releasedItem_);
+            }
+            break;
+        case GRAB:
+            if(undo.grabbedItem_ != null)
+            {
+                explorer.release();
+                dungeon.replaceItem(undo.grabbedItem_);
+            }
+            break;
+        case MOVE_FORWARD:
+            if(undo.moved_)
+            {
+                explorer.moveBackward();
+            }
+            break;
+        case FIRE_ARROW:
+            if(undo.slewWumpus_)
+            {
+                dungeon.getWumpus().revive();
+            }
+            break;
+        default:
+            break;
+        }
+        internalState.restore(undo.previousPlayerStates_, undo.previousHash_);
+    }
+
+    private void validateAction(final WumpusWorldState state, final WumpusWorldAction action)
+    {
+        if(!Validate.isEnabled(ValidationLevel.BOUNDARY))
+        {
+            return;
+        }
         Validate.isTrue(state instanceof WumpusWorldInternalState,
                 "Can not transition without a proper reference to our internal state. "
                         + "Did you accidentally pass in a filtered state?");
@@ -117,20 +267,32 @@ public class WumpusWorldRules implements Rules<WumpusWorldState, WumpusWorldActi
         final Player player = action.getPlayer();
         Validate.isTrue(Objects.equals(state.getCurrentPlayer(), player),
                 "Cannot transition states for an " + "action made with an invalid player");
-        Validate.isTrue(getAvailableActions(player, state).contains(action),
-                "Cannot take an invalid action");
+        /* Working out every legal action again costs more than the move itself */
+        if(Validate.isEnabled(ValidationLevel.FULL))
+        {
+            Validate.isTrue(getAvailableActions(player, state).contains(action),
+                    "Cannot take an invalid action");
+        }
+    }
 
-        final WumpusWorldInternalState internalState = (WumpusWorldInternalState) state;
-        /* Make sure we don't modify the state that was passed in */
-        final WumpusWorldInternalState ourState = new WumpusWorldInternalState(internalState);
+    /**
+     * Carries out an action on $ourState in place
+     *
+     * @return Record of what the action changed, for undoing it
+     */
+    private WumpusWorldUndo performAction(final WumpusWorldInternalState ourState,
+            final WumpusWorldAction action)
+    {
+        final Player player = action.getPlayer();
         final WumpusWorldDungeon dungeon = ourState.getDungeon();
+        final WumpusWorldUndo undo = new WumpusWorldUndo(action, ourState.states(),
+                ourState.getHash());
 
         final DungeonExplorer explorer = dungeon.getDungeonExplorer(player);
         Validate.notNull(explorer, "Cannot transition a null DungeonExplorer");
         final Vector2 position = explorer.getPosition();
 
         PlayerState playerState = PlayerState.PLAYER_OK;
-        final Collection<Item> itemsDropped = new ArrayList<Item>();
         switch(action.getAction())
         {
         case TURN_RIGHT:
@@ -140,11 +302,7 @@ public class WumpusWorldRules implements Rules<WumpusWorldState, WumpusWorldActi
             explorer.turnLeft();
             break;
         case RELEASE:
-            final Item releasedItem = explorer.release();
-            if(releasedItem != null)
-            {
-                itemsDropped.add(releasedItem);
-            }
+            undo.releasedItem_ = explorer.release();
             break;
         case GRAB:
         {
@@ -153,7 +311,10 @@ public class WumpusWorldRules implements Rules<WumpusWorldState, WumpusWorldActi
                     .findFirst().orElse(null);
             if(item != null)
             {
+                /* The explorer carries a copy; the item leaves the floor */
                 explorer.grab(item);
+                dungeon.removeItem(item);
+                undo.grabbedItem_ = item;
             }
             break;
         }
@@ -171,6 +332,7 @@ public class WumpusWorldRules implements Rules<WumpusWorldState, WumpusWorldActi
             if(dungeon.contains(resultPosition))
             {
                 explorer.moveForward();
+                undo.moved_ = true;
                 playerState = dungeon
                         .getEntitiesOnSpace(resultPosition)
                         .stream()
@@ -201,17 +363,14 @@ public class WumpusWorldRules implements Rules<WumpusWorldState, WumpusWorldActi
         case FIRE_ARROW:
         {
             final Vector2 direction = explorer.getDirection();
-            for(Vector2 currentSpace = position.add(direction); dungeon.contains(currentSpace); currentSpace = currentSpace
-                    .add(direction))
+            /* Arrows fly in a straight line until they hit a wall */
+            final Wumpus wumpus = dungeon.getWumpus();
+            if(wumpus != null && !wumpus.isDead()
+                    && isInLineOfFire(position, direction, wumpus.getPosition()))
             {
-                dungeon.getEntitiesOnSpace(currentSpace).forEach(entity ->
-                {
-                    if(entity instanceof Wumpus)
-                    {
-                        ((Wumpus) entity).slay();
-                        /* How do we deal with freshly "slayed" wumpuses ..? */
-                    }
-                });
+                wumpus.slay();
+                undo.slewWumpus_ = true;
+                /* How do we deal with freshly "slayed" wumpuses ..? */
             }
             break;
         }
@@ -219,10 +378,13 @@ public class WumpusWorldRules implements Rules<WumpusWorldState, WumpusWorldActi
             throw new RuntimeException("Unexpected action: " + action.getAction());
         }
 
-        final WumpusWorldInternalState nextState = new WumpusWorldInternalState(ourState);
-        nextState.setPlayerState(player, playerState);
-        /* Add any items dropped back into the dungeon */
-        itemsDropped.forEach(item -> nextState.getDungeon().putItem(item));
-        return nextState;
+        ourState.setPlayerState(player, playerState);
+        /* Add any item dropped back into the dungeon */
+        if(undo.releasedItem_ != null)
+        {
+            undo.droppedItem_ = dungeon.putItem(undo.releasedItem_);
+        }
+        ourState.updateHash();
+        return undo;
     }
 }
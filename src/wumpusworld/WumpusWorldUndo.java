@@ -0,0 +1,39 @@
+package wumpusworld;
+
+import java.util.Map;
+
+import core.Player;
+import wumpusworld.entities.Item;
+import wumpusworld.states.PlayerState;
+
+/**
+ * What an action changed in a WumpusWorldInternalState, so that it can be
+ * taken back: each action only ever touches the acting explorer, at most one
+ * item and the wumpus, so it is undone by its inverse rather than by keeping
+ * a copy of the dungeon. Opaque outside of this package.
+ */
+public final class WumpusWorldUndo
+{
+    final WumpusWorldAction action_;
+    /* Player states before the action; a snapshot, as the state copies on write */
+    final Map<Player, PlayerState> previousPlayerStates_;
+    final long previousHash_;
+
+    /* Whether the explorer actually moved, rather than bumping into a wall */
+    boolean moved_ = false;
+    /* Item the explorer picked up off the floor, if any */
+    Item grabbedItem_ = null;
+    /* Item the explorer let go of, and the copy of it left on the floor */
+    Item releasedItem_ = null;
+    Item droppedItem_ = null;
+    /* Whether the action slew the wumpus */
+    boolean slewWumpus_ = false;
+
+    WumpusWorldUndo(final WumpusWorldAction action,
+            final Map<Player, PlayerState> previousPlayerStates, final long previousHash)
+    {
+        action_ = action;
+        previousPlayerStates_ = previousPlayerStates;
+        previousHash_ = previousHash;
+    }
+}
@@ -0,0 +1,61 @@
+package wumpusworld;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import utils.RandomStream;
+import wumpusworld.entities.DungeonEntity;
+import wumpusworld.entities.DungeonExplorer;
+import wumpusworld.states.WumpusWorldInternalState;
+import wumpusworld.states.WumpusWorldState;
+import core.Player;
+import core.ReversibleRulesTest;
+import core.policies.RandomPolicy;
+
+/**
+ * Play seeded games of Wumpus World at random, applying every action in place
+ * and checking it against transition(...), then undoing every action again.
+ */
+public class WumpusWorldUndoTest
+{
+    private static final int GAMES = 50;
+    private static final int MAX_ACTIONS = 500;
+
+    public static void main(final String [] args)
+    {
+        final Player explorer = new Player("Dungeon Explorer");
+        final Set<Player> players = Collections.singleton(explorer);
+        final WumpusWorldRules rules = new WumpusWorldRules();
+
+        int actions = 0;
+        for(int game = 0; game < GAMES; ++game)
+        {
+            actions += ReversibleRulesTest.playAndUndo(rules,
+                    rules.generateInitialState(players, new RandomStream(game)),
+                    new RandomPolicy<>(game), (state) -> describe(state, explorer), MAX_ACTIONS);
+        }
+        System.out.println(String.format("Applied and undid %d actions over %d games.",
+                actions, GAMES));
+    }
+
+    /*
+     * The terrain never changes, so only the entities that can move, be
+     * picked up or die are described, rather than the whole dungeon
+     */
+    private static String describe(final WumpusWorldState state, final Player explorer)
+    {
+        final WumpusWorldInternalState internalState = (WumpusWorldInternalState) state;
+        final WumpusWorldDungeon dungeon = internalState.getDungeon();
+        final DungeonExplorer dungeonExplorer = dungeon.getDungeonExplorer(explorer);
+        final String explorerDescription = (dungeonExplorer == null) ? "gone" : String.format(
+                "%s facing %s carrying %s among %s", dungeonExplorer.getPosition(),
+                dungeonExplorer.getDirection(), dungeonExplorer.getItems(),
+                dungeon.getEntitiesOnSpace(dungeonExplorer.getPosition()).stream()
+                        .map(DungeonEntity::shortToString).collect(Collectors.toList()));
+        return String.format("%s %s %s %s wumpus at %s dead: %s", state.states(),
+                internalState.getActivePlayers(), internalState.getCurrentPlayer(),
+                explorerDescription, dungeon.getWumpus().getPosition(),
+                dungeon.getWumpus().isDead());
+    }
+}
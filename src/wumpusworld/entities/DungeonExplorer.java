@@ -22,7 +22,7 @@ public class DungeonExplorer implements DungeonEntity
         Validate.notNull(owner, "Cannot create a DungeonExplorer for a null player");
         Validate.notNull(position, "Cannot create a DungeonExplorer with a null position");
         Validate.isTrue(Vector2.cardinalDirections().contains(direction),
-                "Cannot create a DungeonExplorer " + "with an invalid Direction");
+                "Cannot create a DungeonExplorer with an invalid Direction");
         owner_ = owner;
         position_ = position;
         direction_ = direction;
@@ -27,6 +27,14 @@ public final class Wumpus implements DungeonEntity
         dead_ = true;
     }
 
+    /**
+     * Brings the wumpus back to life, for taking back the shot that slew it
+     */
+    public void revive()
+    {
+        dead_ = false;
+    }
+
     @Override
     public DungeonEntity copy()
     {
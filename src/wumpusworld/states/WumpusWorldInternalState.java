@@ -3,21 +3,20 @@ package wumpusworld.states;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
-import java.util.stream.Collectors;
 
 import utils.Iterators;
+import utils.RandomStream;
 import utils.Validate;
-import utils.Vector2;
+import utils.ZobristKeys;
 import wumpusworld.Percept;
 import wumpusworld.WumpusWorldDungeon;
 import wumpusworld.entities.DungeonExplorer;
-import wumpusworld.entities.Gold;
 import core.Player;
+import core.PlayerIndex;
 import core.Score;
 
 public class WumpusWorldInternalState implements WumpusWorldState
@@ -27,36 +26,89 @@ public class WumpusWorldInternalState implements WumpusWorldState
 
     private final Player currentPlayer_;
     private final WumpusWorldDungeon dungeon_;
-    private final Collection<Player> players_;
-    private final Map<Player, PlayerState> playerStates_;
+    /* Numbering of the players, in turn order; immutable, so copies share it */
+    private final PlayerIndex players_;
+    /*
+     * Each player's state, by player index. Copies share this array;
+     * setPlayerState replaces it rather than modifying it in place. Players
+     * stop taking part once their state is terminal, or once anyone escapes
+     * with the gold, so that is all there is to keep.
+     */
+    private PlayerState [] playerStates_;
+    /* Zobrist hash, brought up to date by the rules after every transition */
+    private long hash_;
 
     public WumpusWorldInternalState(final Collection<Player> players)
     {
+        this(players, new RandomStream());
+    }
+
+    /**
+     * Creates the starting state of a game in a freshly generated dungeon
+     *
+     * @param players
+     *            Players exploring the dungeon
+     * @param random
+     *            Source of randomness for the dungeon; the same seed always
+     *            generates the same dungeon
+     */
+    public WumpusWorldInternalState(final Collection<Player> players, final RandomStream random)
+    {
+        this(players, generateDungeon(random));
+    }
+
+    /**
+     * Creates the starting state of a game in a dungeon generated beforehand,
+     * for example by a DungeonSupply
+     *
+     * @param players
+     *            Players exploring the dungeon
+     * @param dungeon
+     *            Freshly generated dungeon without any explorers in it; the
+     *            state takes it over, so it must not be used elsewhere
+     */
+    public WumpusWorldInternalState(final Collection<Player> players,
+            final WumpusWorldDungeon dungeon)
+    {
+        Validate.notNull(dungeon, "Cannot create a WumpusWorldInternalState with a null dungeon");
+        Validate.isTrue(dungeon.getPlayers().isEmpty(),
+                "Cannot create a WumpusWorldInternalState in a dungeon that is already explored");
         Validate.notEmpty(players, "Cannot create a WumpusWorldInternalState "
                 + "for a null/empty collection of players");
         Validate.isFalse(players.contains(null), "Cannot create a WumpusWorldInternalState with a "
                 + "Collection that contains a null player");
-        players_ = new ArrayList<>(players);
-        dungeon_ = new WumpusWorldDungeon();
-        playerStates_ = new HashMap<>();
+        players_ = new PlayerIndex(players);
+        dungeon_ = dungeon;
+        playerStates_ = new PlayerState [players_.size()];
 
-        players_.forEach(player ->
+        for(int index = 0; index < players_.size(); ++index)
         {
-            dungeon_.addDungeonExplorerForPlayer(player);
-            playerStates_.put(player, PlayerState.PLAYER_OK);
-        });
+            dungeon_.addDungeonExplorerForPlayer(players_.get(index));
+            playerStates_[index] = PlayerState.PLAYER_OK;
+        }
 
         /* Pick a player to be the first player */
-        currentPlayer_ = players_.iterator().next();
+        currentPlayer_ = players_.get(0);
+        updateHash();
+    }
+
+    private static WumpusWorldDungeon generateDungeon(final RandomStream random)
+    {
+        Validate.notNull(random, "Cannot create a WumpusWorldInternalState with a null RandomStream");
+        return new WumpusWorldDungeon(WumpusWorldDungeon.DEFAULT_DUNGEON_WIDTH,
+                WumpusWorldDungeon.DEFAULT_DUNGEON_HEIGHT, WumpusWorldDungeon.PitPlacement.BATCHED,
+                random.nextLong());
     }
 
     public WumpusWorldInternalState(final WumpusWorldInternalState copy)
     {
         Validate.notNull(copy, "Cannot create a copy of a null WumpusWorldInternalState");
         dungeon_ = new WumpusWorldDungeon(copy.dungeon_);
-        playerStates_ = new HashMap<>(copy.playerStates_);
-        players_ = new ArrayList<>(copy.players_);
+        /* Immutable or copy-on-write, so safe to share */
+        playerStates_ = copy.playerStates_;
+        players_ = copy.players_;
         currentPlayer_ = copy.currentPlayer_;
+        hash_ = copy.hash_;
     }
 
     @Override
@@ -72,12 +124,13 @@ public class WumpusWorldInternalState implements WumpusWorldState
 
     public Player getNextPlayer()
     {
+        final Collection<Player> activePlayers = getActivePlayers();
         /* TODO: Move these validation checks... higher */
-        Validate.isTrue(players_.contains(currentPlayer_), "Cannot determine next player - "
+        Validate.isTrue(activePlayers.contains(currentPlayer_), "Cannot determine next player - "
                 + "invalid current player");
-        Validate.notEmpty(players_, "Cannot determine next player - no players!");
+        Validate.notEmpty(activePlayers, "Cannot determine next player - no players!");
 
-        final Iterator<Player> cyclicIterator = Iterators.cycle(players_);
+        final Iterator<Player> cyclicIterator = Iterators.cycle(activePlayers);
         /*
          * Cycle iterator until we're at our current position (what if there are
          * duplicate players?)
@@ -100,7 +153,7 @@ public class WumpusWorldInternalState implements WumpusWorldState
             return Collections.emptySet();
         }
 
-        final PlayerState playerState = playerStates_.get(player);
+        final PlayerState playerState = getPlayerState(player);
         if(playerState == null || playerState.isTerminal())
         {
             return Collections.emptySet();
@@ -112,69 +165,132 @@ public class WumpusWorldInternalState implements WumpusWorldState
             return Collections.emptySet();
         }
 
-        final Vector2 explorerPosition = explorer.getPosition();
-
-        final Set<Percept> percepts = Vector2.cardinalDirections().stream()
-        /* Direction -> what dungeon tiles are adjacent */
-        .map(direction -> explorerPosition.add(direction))
-        /* Into everything on those tiles */
-        .flatMap(position -> dungeon_.getEntitiesOnSpace(position).stream())
-        /*
-         * Ignore gold, because gold you have to be standing on, not be adjacent
-         * to
-         */
-        .filter(entity -> !(entity instanceof Gold))
-        /* Into the percepts for those things */
-        .map(entity -> Percept.perceptFor(entity))
-        /* Only stuff that has percepts */
-        .filter(percept -> percept != null).collect(Collectors.toSet());
-
+        int percepts = dungeon_.perceptMaskForSpace(explorer.getPosition());
         /* lol */
         if(playerState == PlayerState.PLAYER_RAN_INTO_WALL)
         {
-            percepts.add(Percept.BUMP);
+            percepts |= Percept.BUMP.mask();
+        }
+        return Percept.setOf(percepts);
+    }
+
+    @Override
+    public long getHash()
+    {
+        return hash_;
+    }
+
+    /**
+     * Recomputes the hash from the dungeon, player states and current player.
+     * Must be called after modifying the state, which the rules do at the end
+     * of every transition.
+     */
+    public void updateHash()
+    {
+        long hash = dungeon_.getHash() ^ ZobristKeys.keyOf(Objects.hashCode(currentPlayer_));
+        for(int index = 0; index < playerStates_.length; ++index)
+        {
+            hash ^= ZobristKeys.keyOf(players_.get(index).hashCode(), playerStates_[index]
+                    .ordinal());
         }
+        hash_ = hash;
+    }
 
-        /* Do a gold check on current space */
-        dungeon_.getEntitiesOnSpace(explorerPosition).forEach(entity ->
+    /**
+     * @return Players still taking part in the game, in turn order
+     */
+    public Collection<Player> getActivePlayers()
+    {
+        final List<Player> activePlayers = new ArrayList<>(players_.size());
+        for(int index = 0; index < players_.size(); ++index)
         {
-            if(entity instanceof Gold)
+            if(isActive(index))
             {
-                percepts.add(Percept.perceptFor(entity));
+                activePlayers.add(players_.get(index));
             }
-        });
+        }
+        return activePlayers;
+    }
 
-        return percepts;
+    private boolean isActive(final int index)
+    {
+        if(playerStates_[index].isTerminal())
+        {
+            return false;
+        }
+        /* If a player has escaped with the gold, the game's over */
+        for(final PlayerState playerState : playerStates_)
+        {
+            if(playerState == PlayerState.PLAYER_ESCAPED_WITH_GOLD)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Numbering of the players, in turn order
+     */
+    public PlayerIndex getPlayerIndex()
+    {
+        return players_;
+    }
+
+    /**
+     * Puts back the player states and hash from before a move, for taking the
+     * move back. The dungeon must already have been restored.
+     *
+     * @param playerStates
+     *            Player states as returned by states() before the move
+     * @param hash
+     *            Hash before the move
+     */
+    public void restore(final Map<Player, PlayerState> playerStates, final long hash)
+    {
+        Validate.notNull(playerStates, "Cannot restore null player states");
+        final PlayerState [] restored = new PlayerState [players_.size()];
+        for(int index = 0; index < restored.length; ++index)
+        {
+            restored[index] = playerStates.get(players_.get(index));
+        }
+        playerStates_ = restored;
+        hash_ = hash;
     }
 
     public PlayerState getPlayerState(final Player player)
     {
-        return playerStates_.get(player);
+        final int index = players_.indexOf(player);
+        return (index < 0) ? null : playerStates_[index];
     }
 
     @Override
     public boolean isTerminal()
     {
-        return playerStates_.values().stream().allMatch(playerState -> playerState.isTerminal());
+        for(final PlayerState playerState : playerStates_)
+        {
+            if(!playerState.isTerminal())
+            {
+                return false;
+            }
+        }
+        return true;
     }
 
     public void setPlayerState(final Player player, final PlayerState state)
     {
         Validate.isTrue(Objects.equals(currentPlayer_, player),
                 "Cannot set the state of a player who is " + "not currently active");
-        Validate.notNull(state, "Cannot assign " + player + " a null state");
-        Validate.isTrue(players_.contains(player),
+        Validate.notNull(state, () -> "Cannot assign " + player + " a null state");
+        final int index = players_.indexOf(player);
+        Validate.isTrue(index >= 0 && isActive(index),
                 "Cannot set the player state for an unknown player!");
-        playerStates_.put(player, state);
-        if(state.isTerminal())
+        if(playerStates_[index] != state)
         {
-            players_.remove(player);
-        }
-
-        /* If a player has escaped with the gold, the game's over */
-        if(state == PlayerState.PLAYER_ESCAPED_WITH_GOLD)
-        {
-            players_.clear();
+            /* Player states may be shared with copies of this state; never modify them */
+            final PlayerState [] playerStates = playerStates_.clone();
+            playerStates[index] = state;
+            playerStates_ = playerStates;
         }
     }
 
@@ -187,30 +303,40 @@ public class WumpusWorldInternalState implements WumpusWorldState
     @Override
     public Map<Player, Score> scores()
     {
-        return playerStates_.entrySet().stream()
-                .collect(Collectors.toMap(entry -> entry.getKey(), entry ->
-                {
-                    switch(entry.getValue())
-                    {
-                    case PLAYER_ESCAPED_WITH_GOLD:
-                        return WINNING_SCORE;
-                    default:
-                        return DEFAULT_SCORE;
-                    }
-
-                }));
+        final double [] scores = new double [playerStates_.length];
+        for(int index = 0; index < scores.length; ++index)
+        {
+            scores[index] = scoreFor(playerStates_[index]).getValue();
+        }
+        return players_.asScores(scores);
     }
 
+    /**
+     * @return Read-only view of every player's state. Later changes to this
+     *         state do not show through.
+     */
     @Override
     public Map<Player, PlayerState> states()
     {
-        return new HashMap<>(playerStates_);
+        return players_.asMap(playerStates_);
     }
 
     @Override
     public Score getScoreForPlayer(final Player player)
     {
-        return scores().getOrDefault(player, DEFAULT_SCORE);
+        final PlayerState playerState = getPlayerState(player);
+        return (playerState == null) ? DEFAULT_SCORE : scoreFor(playerState);
+    }
+
+    private static Score scoreFor(final PlayerState playerState)
+    {
+        switch(playerState)
+        {
+        case PLAYER_ESCAPED_WITH_GOLD:
+            return WINNING_SCORE;
+        default:
+            return DEFAULT_SCORE;
+        }
     }
 
     @Override
@@ -8,6 +8,7 @@ import java.util.Map;
 import java.util.Objects;
 
 import utils.Validate;
+import utils.ZobristKeys;
 import wumpusworld.Percept;
 import core.Player;
 import core.Score;
@@ -78,4 +79,17 @@ public class WumpusWorldPlayerState implements WumpusWorldState
     {
         return Collections.emptyMap();
     }
+
+    @Override
+    public long getHash()
+    {
+        /* Only a handful of percepts, so not worth maintaining incrementally */
+        final long player = player_.hashCode();
+        long hash = ZobristKeys.keyOf(player);
+        for(final Percept percept : new HashSet<>(percepts_))
+        {
+            hash ^= ZobristKeys.keyOf(player, percept.ordinal());
+        }
+        return hash;
+    }
 }
@@ -22,4 +22,9 @@ public interface WumpusWorldState
     public Map<Player, Score> scores();
 
     public Map<Player, PlayerState> states();
+
+    /**
+     * @return Zobrist hash of this state, in constant time
+     */
+    public long getHash();
 }